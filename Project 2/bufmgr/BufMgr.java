@@ -9,6 +9,7 @@ import global.GlobalConst;
 import global.Minibase;
 import global.Page;
 import global.PageId;
+import global.ResourceCleaner;
 import java.util.HashMap;
 
 /**
@@ -23,7 +24,13 @@ import java.util.HashMap;
  * <li>Getting relevant data
  * </ol>
  * The buffer manager is used by access methods, heap files, and relational
- * operators.
+ * operators. <br>
+ * <br>
+ * The buffer manager is thread safe: its methods hold its monitor, so pins,
+ * unpins, and the disk I/O they cause are serialized, but the contents of a
+ * pinned page may be read by many threads at once. Threads that modify pinned
+ * pages must coordinate among themselves (i.e. a heap file is not modified
+ * while it is being scanned).
  */
 
 public class BufMgr implements GlobalConst {
@@ -83,7 +90,11 @@ public class BufMgr implements GlobalConst {
 	 * @throws IllegalStateException
 	 *           if all pages are pinned (i.e. pool is full)
 	 */
-	public void pinPage(PageId pageno, Page mempage, int contents) {
+	public synchronized void pinPage(PageId pageno, Page mempage, int contents) {
+		if (ResourceCleaner.hasLeaked()) { // release leaked scans and files, before the pool is searched
+			ResourceCleaner.releaseLeaked();
+		}
+
 		if (bufMap.containsKey(pageno)) {
 			if (bufMap.get(pageno).pinCount != 0 && contents == PIN_MEMCPY) {
 				throw new IllegalArgumentException("Pinned and memcpy");
@@ -102,7 +113,9 @@ public class BufMgr implements GlobalConst {
 		if (bufPool[victim].valid && bufPool[victim].dirty) {
 			flushPage(bufPool[victim]);
 		}
-		bufMap.remove(bufPool[victim].pageNo);
+		if (bufPool[victim].valid) { // A freed frame's page may have been reallocated elsewhere
+			bufMap.remove(bufPool[victim].pageNo);
+		}
 
 		switch (contents) {
 			case PIN_DISKIO:
@@ -132,7 +145,7 @@ public class BufMgr implements GlobalConst {
 	 * @throws IllegalArgumentException
 	 *           if the page is not in the buffer pool or not pinned
 	 */
-	public void unpinPage(PageId pageno, boolean dirty) {
+	public synchronized void unpinPage(PageId pageno, boolean dirty) {
 		if (!bufMap.containsKey(pageno)) {
 			throw new IllegalArgumentException("Page: " + pageno + " not found");
 		}
@@ -159,7 +172,10 @@ public class BufMgr implements GlobalConst {
 	 * @throws IllegalStateException
 	 *           if all pages are pinned (i.e. pool exceeded)
 	 */
-	public PageId newPage(Page firstpg, int run_size) {
+	public synchronized PageId newPage(Page firstpg, int run_size) {
+		if (ResourceCleaner.hasLeaked()) { // release leaked scans and files, before allocating
+			ResourceCleaner.releaseLeaked();
+		}
 		if (getNumUnpinned() == 0) {
 			throw new IllegalStateException("All pages are pinned");
 		}
@@ -180,7 +196,7 @@ public class BufMgr implements GlobalConst {
 	 * @throws IllegalArgumentException
 	 *           if the page is pinned
 	 */
-	public void freePage(PageId pageno) {
+	public synchronized void freePage(PageId pageno) {
 		if (bufMap.containsKey(pageno)) {
 			if (bufMap.get(pageno).valid && bufMap.get(pageno).pinCount > 0) { // Added valid check
 				throw new IllegalArgumentException(pageno + " is pinned");
@@ -197,7 +213,7 @@ public class BufMgr implements GlobalConst {
 	 * writing, not unpinning or freeing or the like.
 	 * 
 	 */
-	public void flushAllFrames() {
+	public synchronized void flushAllFrames() {
 		for (int i = 0; i < bufPool.length; i++) {
 			if (bufPool[i].valid && bufPool[i].dirty) {
 				flushPage(bufPool[i]);
@@ -208,7 +224,7 @@ public class BufMgr implements GlobalConst {
 	/**
 	 * Writes the provided frame to disk if dirty
 	 */
-	public void flushPage(FrameDesc curFrame) {
+	public synchronized void flushPage(FrameDesc curFrame) {
 		flushPage(curFrame.pageNo);
 	}
 
@@ -218,7 +234,7 @@ public class BufMgr implements GlobalConst {
 	 * @throws IllegalArgumentException
 	 *           if the page is not in the buffer pool
 	 */
-	public void flushPage(PageId pageno) {
+	public synchronized void flushPage(PageId pageno) {
 		if (!bufMap.containsKey(pageno)) {
 			throw new IllegalArgumentException(pageno + " is not in memory");
 		}
@@ -237,7 +253,7 @@ public class BufMgr implements GlobalConst {
 	/**
 	 * Gets the total number of unpinned buffer frames.
 	 */
-	public int getNumUnpinned() {
+	public synchronized int getNumUnpinned() {
 		int count = 0;
 		for (int i = 0; i < bufPool.length; i++) {
 			if (bufPool[i].pinCount == 0) {
@@ -0,0 +1,349 @@
+package diskmgr;
+
+import global.Convert;
+import global.Minibase;
+import global.PageId;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A disk manager that compresses pages as they are written (i.e. when they are
+ * flushed from the buffer pool) and decompresses them as they are read, so that
+ * pages of repetitive data take less space and I/O. Each page is stored as an
+ * extent of fixed-size sectors in the OS file, and a page translation table
+ * maps page ids to their extents; a page that doesn't compress by at least a
+ * sector is stored as is. Header pages (i.e. the first page, the space map, and
+ * the file library) are always stored as is, and the first page always at the
+ * start of the OS file, so any disk manager can read the format of the database
+ * from it.<br>
+ * <br>
+ * The table is kept in memory, and also in a second OS file (the database name
+ * plus TABLE_SUFFIX), whose entry for a page is rewritten each time the page is
+ * written or deallocated; the table on disk thus matches the pages on disk even
+ * if the database is never closed.<br>
+ * <br>
+ * The statistics of the bytes actually read and written, and of the time spent
+ * compressing and decompressing, show the savings against the CPU cost.
+ */
+public class CompressedDiskMgr extends DiskMgr {
+
+	/** Unit of space in the OS file (in bytes). */
+	protected static final int SECTOR_SIZE = 64;
+
+	/** Number of sectors in an uncompressed page. */
+	protected static final int MAX_SECTORS = PAGE_SIZE / SECTOR_SIZE;
+
+	/** Suffix of the OS file holding the page translation table. */
+	public static final String TABLE_SUFFIX = ".ptt";
+
+	/** Size of the table file's header; the number of pages and of sectors. */
+	protected static final int TABLE_HEADER = 8;
+
+	/** Size of a table entry; the extent, length, and header flag of a page. */
+	protected static final int ENTRY_SIZE = 7;
+
+	// --------------------------------------------------------------------------
+
+	/** Reference to the OS file holding the page translation table. */
+	protected RandomAccessFile table;
+
+	/** First sector of each page's extent. */
+	protected int[] extents;
+
+	/** Stored length of each page; PAGE_SIZE if not compressed, 0 if not written. */
+	protected short[] lengths;
+
+	/** Whether each page is a header page, which is never compressed. */
+	protected boolean[] headers;
+
+	/** Buffer for a table entry. */
+	protected byte[] entry = new byte[ENTRY_SIZE];
+
+	/** Number of sectors in the OS file. */
+	protected int sector_cnt;
+
+	/** Free extents, by number of sectors (less one). */
+	protected ArrayList<ArrayDeque<Integer>> free_extents;
+
+	/** Buffer for compressed pages. */
+	protected byte[] buffer = new byte[PageCompressor.maxLength(PAGE_SIZE)];
+
+	/** Number of bytes actually read since database construction. */
+	protected long bytes_read;
+
+	/** Number of bytes actually written since database construction. */
+	protected long bytes_written;
+
+	/** Time spent compressing and decompressing pages (in nanoseconds). */
+	protected long codec_time;
+
+	// ------Manage the DB--------------------
+
+	/**
+	 * Open the database with the given OS file name, loading its page translation
+	 * table.
+	 *
+	 * @throws IllegalStateException
+	 *           if the database is not compressed
+	 */
+	public void openDB(String fname) {
+		File tfile = new File(fname + TABLE_SUFFIX);
+		if (!tfile.exists()) {
+			throw new IllegalStateException("File " + fname + " is not compressed");
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tfile)))) {
+			int num_pages = in.readInt();
+			sector_cnt = in.readInt();
+			extents = new int[num_pages];
+			lengths = new short[num_pages];
+			headers = new boolean[num_pages];
+			for (int i = 0; i < num_pages; i++) {
+				extents[i] = in.readInt();
+				lengths[i] = in.readShort();
+				headers[i] = in.readBoolean();
+			}
+			table = new RandomAccessFile(tfile, "rw");
+		} catch (IOException exc) {
+			throw new IllegalStateException("File " + tfile + " can't be read");
+		}
+
+		// the gaps between the extents are free
+		boolean[] used = new boolean[sector_cnt];
+		for (int i = 0; i < lengths.length; i++) {
+			if (lengths[i] != 0) {
+				Arrays.fill(used, extents[i], extents[i] + sectors(lengths[i]), true);
+			}
+		}
+		initFreeExtents();
+		for (int i = 0; i < sector_cnt; i++) {
+			if (!used[i]) {
+				int start = i;
+				while (i + 1 < sector_cnt && !used[i + 1] && i + 1 - start < MAX_SECTORS) {
+					i++;
+				}
+				free_extents.get(i - start).push(start);
+			}
+		}
+
+		super.openDB(fname);
+
+	} // public void openDB(String fname)
+
+	/**
+	 * Close the database file and its page translation table (which is already up
+	 * to date).
+	 */
+	public void closeDB() {
+		super.closeDB();
+		try {
+			table.close();
+		} catch (IOException exc) {
+			Minibase.haltSystem(exc);
+		}
+	}
+
+	/**
+	 * Pages are compressed on disk.
+	 */
+	public boolean isCompressed() {
+		return true;
+	}
+
+	/**
+	 * Destroy the database, removing the files that store it.
+	 */
+	public void destroyDB() {
+		super.destroyDB();
+		new File(name + TABLE_SUFFIX).delete();
+	}
+
+	// -----Manage Logical File Layer -------------------
+
+	/**
+	 * Starts with an empty page translation table, and an OS file holding just the
+	 * first page.
+	 */
+	protected void initFile() throws IOException {
+		extents = new int[num_db_pages];
+		lengths = new short[num_db_pages];
+		headers = new boolean[num_db_pages];
+		initFreeExtents();
+
+		// reserve the start of the file for the first page
+		fp.setLength(PAGE_SIZE);
+		sector_cnt = MAX_SECTORS;
+		lengths[FIRST_PAGEID] = PAGE_SIZE;
+		headers[FIRST_PAGEID] = true;
+
+		// the table file starts with every page not written
+		table = new RandomAccessFile(name + TABLE_SUFFIX, "rw");
+		table.setLength(0);
+		table.writeInt(num_db_pages);
+		table.writeInt(sector_cnt);
+		table.setLength(TABLE_HEADER + (long) num_db_pages * ENTRY_SIZE);
+		saveEntry(FIRST_PAGEID);
+
+	} // protected void initFile()
+
+	/**
+	 * Stores the given page uncompressed from now on.
+	 */
+	protected void setHeaderPage(int pid) throws IOException {
+		headers[pid] = true;
+		saveEntry(pid);
+	}
+
+	/**
+	 * Reads and decompresses a page; a page never written reads as zeros.
+	 */
+	protected void readPage(int pid, byte[] data) throws IOException {
+		int length = lengths[pid];
+		if (length == 0) {
+			Arrays.fill(data, (byte) 0);
+			return;
+		}
+
+		fp.seek((long) extents[pid] * SECTOR_SIZE);
+		bytes_read += length;
+		if (length == PAGE_SIZE) {
+			fp.readFully(data);
+			return;
+		}
+		fp.readFully(buffer, 0, length);
+		long start = System.nanoTime();
+		PageCompressor.decompress(buffer, length, data);
+		codec_time += System.nanoTime() - start;
+
+	} // protected void readPage(int pid, byte[] data)
+
+	/**
+	 * Compresses and writes a page, moving it to another extent if its size in
+	 * sectors changed.
+	 */
+	protected void writePage(int pid, byte[] data) throws IOException {
+		int length = PAGE_SIZE;
+		byte[] image = data;
+		if (!headers[pid]) {
+			long start = System.nanoTime();
+			int clength = PageCompressor.compress(data, buffer);
+			codec_time += System.nanoTime() - start;
+			if (sectors(clength) < MAX_SECTORS) { // else not worth it
+				length = clength;
+				image = buffer;
+			}
+		}
+
+		// find an extent of the right size
+		int sectors = sectors(length);
+		if (lengths[pid] == 0 || sectors(lengths[pid]) != sectors) {
+			freeExtent(pid);
+			ArrayDeque<Integer> free = free_extents.get(sectors - 1);
+			if (free.isEmpty()) {
+				extents[pid] = sector_cnt;
+				sector_cnt += sectors;
+			} else {
+				extents[pid] = free.pop();
+			}
+		}
+		lengths[pid] = (short) length;
+
+		// write the page before the table entry that refers to it
+		fp.seek((long) extents[pid] * SECTOR_SIZE);
+		fp.write(image, 0, length);
+		bytes_written += length;
+		saveEntry(pid);
+
+	} // protected void writePage(int pid, byte[] data)
+
+	/**
+	 * Saves the table entry of the given page, and the number of sectors in the
+	 * OS file, to the table file.
+	 */
+	protected void saveEntry(int pid) throws IOException {
+		table.seek(4);
+		table.writeInt(sector_cnt);
+		Convert.setIntValue(extents[pid], 0, entry);
+		Convert.setShortValue(lengths[pid], 4, entry);
+		entry[6] = (byte) (headers[pid] ? 1 : 0);
+		table.seek(TABLE_HEADER + (long) pid * ENTRY_SIZE);
+		table.write(entry);
+	}
+
+	/**
+	 * Gets the number of bytes actually read since database construction.
+	 */
+	public long getBytesRead() {
+		return bytes_read;
+	}
+
+	/**
+	 * Gets the number of bytes actually written since database construction.
+	 */
+	public long getBytesWritten() {
+		return bytes_written;
+	}
+
+	/**
+	 * Gets the time spent compressing and decompressing pages (in nanoseconds).
+	 */
+	public long getCodecTime() {
+		return codec_time;
+	}
+
+	// -----Manage allocation and deallocation of pages -------------------
+
+	/**
+	 * Deallocates a run of pages on disk, also freeing their extents.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if firstid or run_size is invalid
+	 */
+	public void deallocate_page(PageId firstid, int run_size) {
+		super.deallocate_page(firstid, run_size);
+		try {
+			for (int i = 0; i < run_size && firstid.pid + i < num_db_pages; i++) {
+				freeExtent(firstid.pid + i);
+				headers[firstid.pid + i] = false;
+				saveEntry(firstid.pid + i);
+			}
+		} catch (IOException exc) {
+			Minibase.haltSystem(exc);
+		}
+	}
+
+	/**
+	 * Frees the extent of the given page, if any.
+	 */
+	protected void freeExtent(int pid) {
+		if (lengths[pid] != 0) {
+			free_extents.get(sectors(lengths[pid]) - 1).push(extents[pid]);
+			lengths[pid] = 0;
+		}
+	}
+
+	/**
+	 * Creates the (empty) free extent lists.
+	 */
+	protected void initFreeExtents() {
+		free_extents = new ArrayList<ArrayDeque<Integer>>();
+		for (int i = 0; i < MAX_SECTORS; i++) {
+			free_extents.add(new ArrayDeque<Integer>());
+		}
+	}
+
+	/**
+	 * Gets the number of sectors needed for the given number of bytes.
+	 */
+	protected static int sectors(int length) {
+		return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+	}
+
+} // public class CompressedDiskMgr extends DiskMgr
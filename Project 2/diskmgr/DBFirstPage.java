@@ -10,6 +10,12 @@ class DBFirstPage extends DBHeaderPage {
 	/** Offest for the total number of pages. */
 	protected static final int NUM_DB_PAGE = PAGE_SIZE - 4;
 
+	/** Offset for the format flags of the DB. */
+	protected static final int FORMAT = PAGE_SIZE - 8;
+
+	/** Format flag set if pages are compressed on disk. */
+	protected static final int COMPRESSED = 1;
+
 	// --------------------------------------------------------------------------
 
 	/**
@@ -40,4 +46,19 @@ class DBFirstPage extends DBHeaderPage {
 		return getIntValue(NUM_DB_PAGE);
 	}
 
+	/**
+	 * Sets whether pages are compressed on disk (see CompressedDiskMgr).
+	 */
+	public void setCompressed(boolean compressed) {
+		setIntValue(compressed ? COMPRESSED : 0, FORMAT);
+	}
+
+	/**
+	 * Gets whether pages are compressed on disk; older databases, whose format is
+	 * zero, aren't.
+	 */
+	public boolean isCompressed() {
+		return (getIntValue(FORMAT) & COMPRESSED) != 0;
+	}
+
 } // class DBFirstPage extends DBHeaderPage
@@ -63,11 +63,16 @@ public class DiskMgr implements GlobalConst {
 		File DBfile = new File(name);
 		DBfile.delete();
 
+		// calculate how many pages are needed for the space map
+		int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
+
 		// create the database file, num_pages pages long
 		try {
 			fp = new RandomAccessFile(fname, "rw");
-			fp.seek((long) (num_db_pages * PAGE_SIZE - 1));
-			fp.writeByte(0);
+			initFile();
+			for (int pid = FIRST_PAGEID; pid <= num_map_pages; pid++) {
+				setHeaderPage(pid);
+			}
 		} catch (IOException exc) {
 			Minibase.haltSystem(exc);
 		}
@@ -77,17 +82,20 @@ public class DiskMgr implements GlobalConst {
 		DBFirstPage firstpg = new DBFirstPage();
 		Minibase.BufferManager.pinPage(pageId, firstpg, PIN_MEMCPY);
 		firstpg.setNumDBPages(num_db_pages);
+		firstpg.setCompressed(isCompressed());
 		Minibase.BufferManager.unpinPage(pageId, UNPIN_DIRTY);
 
-		// calculate how many pages are needed for the space map; reserve
-		// page 0 plus room for the space map
-		int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
+		// reserve page 0 plus room for the space map
 		set_bits(pageId, 1 + num_map_pages, 1);
 
 	} // public void createDB(String fname, int num_pgs)
 
 	/**
 	 * Open the database with the given OS file name.
+	 *
+	 * @throws IllegalStateException
+	 *           if the file doesn't exist, or its pages are (or aren't) compressed
+	 *           unlike this disk manager's
 	 */
 	public void openDB(String fname) {
 
@@ -102,15 +110,21 @@ public class DiskMgr implements GlobalConst {
 			Minibase.haltSystem(exc);
 		}
 
-		// read the first page
+		// read the first page (which must be valid before the size is known)
+		num_db_pages = FIRST_PAGEID + 1;
 		PageId pageId = new PageId(FIRST_PAGEID);
 		Page apage = new Page();
 		Minibase.BufferManager.pinPage(pageId, apage, PIN_DISKIO);
 
-		// get the total number of pages
+		// get the total number of pages, and check the format
 		DBFirstPage firstpg = new DBFirstPage(apage);
 		num_db_pages = firstpg.getNumDBPages();
+		boolean compressed = firstpg.isCompressed();
 		Minibase.BufferManager.unpinPage(pageId, UNPIN_CLEAN);
+		if (compressed != isCompressed()) {
+			closeDB();
+			throw new IllegalStateException("File " + name + (compressed ? " is compressed" : " is not compressed"));
+		}
 
 	} // public void openDB(String fname)
 
@@ -136,6 +150,13 @@ public class DiskMgr implements GlobalConst {
 		DBfile.delete();
 	}
 
+	/**
+	 * Tells whether pages are compressed on disk; by default they aren't.
+	 */
+	public boolean isCompressed() {
+		return false;
+	}
+
 	// -----Manage Logical File Layer -------------------
 	/**
 	 * Reads the contents of the specified page from disk.
@@ -155,10 +176,9 @@ public class DiskMgr implements GlobalConst {
 			throw new IllegalArgumentException("Invalid page number; read aborted");
 		}
 
-		// seek to the correct page on disk and read it
+		// read the page from the file
 		try {
-			fp.seek((long) (pageno.pid * PAGE_SIZE));
-			fp.read(mempage.getData());
+			readPage(pageno.pid, mempage.getData());
 			read_cnt++;
 		} catch (IOException exc) {
 			Minibase.haltSystem(exc);
@@ -183,10 +203,9 @@ public class DiskMgr implements GlobalConst {
 			throw new IllegalArgumentException("Invalid page number; write aborted");
 		}
 
-		// seek to the correct page on disk and write it
+		// write the page to the file
 		try {
-			fp.seek((long) (pageno.pid * PAGE_SIZE));
-			fp.write(mempage.getData());
+			writePage(pageno.pid, mempage.getData());
 			write_cnt++;
 		} catch (IOException exc) {
 			Minibase.haltSystem(exc);
@@ -194,6 +213,39 @@ public class DiskMgr implements GlobalConst {
 
 	} // public void write_page(PageId pageno, Page mempage)
 
+	/**
+	 * Sizes the newly created database file; by default the file is an array of
+	 * num_db_pages pages.
+	 */
+	protected void initFile() throws IOException {
+		fp.seek((long) num_db_pages * PAGE_SIZE - 1);
+		fp.writeByte(0);
+	}
+
+	/**
+	 * Notes that the page with the given (valid) id is a header page, i.e. the
+	 * first page, a space map page, or a file library page; by default header
+	 * pages are stored like any other.
+	 */
+	protected void setHeaderPage(int pid) throws IOException {
+	}
+
+	/**
+	 * Reads the page with the given (valid) id from the file into the buffer.
+	 */
+	protected void readPage(int pid, byte[] data) throws IOException {
+		fp.seek((long) pid * PAGE_SIZE);
+		fp.read(data);
+	}
+
+	/**
+	 * Writes the page with the given (valid) id from the buffer to the file.
+	 */
+	protected void writePage(int pid, byte[] data) throws IOException {
+		fp.seek((long) pid * PAGE_SIZE);
+		fp.write(data);
+	}
+
 	/**
 	 * Gets the number of disk reads since database construction.
 	 */
@@ -595,6 +647,11 @@ public class DiskMgr implements GlobalConst {
 
 			// allocate the new header page
 			nexthpid = allocate_page();
+			try {
+				setHeaderPage(nexthpid.pid);
+			} catch (IOException exc) {
+				Minibase.haltSystem(exc);
+			}
 
 			// set the next-page pointer on the previous library page
 			hpage.setNextPage(nexthpid);
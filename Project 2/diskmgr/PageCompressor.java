@@ -0,0 +1,169 @@
+package diskmgr;
+
+/**
+ * A small LZ77 block compressor in the style of LZ4, for page images. The
+ * compressed block is a sequence of tokens; each has a literal run and a match
+ * (a copy of earlier output), except the last, which has only literals.<br>
+ * <br>
+ * A token byte holds the literal length in its high nibble and the match
+ * length (minus MIN_MATCH) in its low nibble; a nibble of 15 is continued in
+ * extra bytes, each adding up to 255. The literals follow the token (and the
+ * extra literal length bytes), then the two byte little-endian match offset,
+ * then the extra match length bytes.
+ */
+class PageCompressor {
+
+	/** Shortest match worth encoding. */
+	protected static final int MIN_MATCH = 4;
+
+	/** Log2 of the number of hash table entries. */
+	protected static final int HASH_LOG = 10;
+
+	/** Largest offset a match can have. */
+	protected static final int MAX_OFFSET = 0xFFFF;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Gets the largest possible compressed length of a block of the given length,
+	 * i.e. the size of the destination buffer compress needs.
+	 */
+	public static int maxLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	/**
+	 * Compresses the given block into the destination buffer, which must have at
+	 * least maxLength(src.length) bytes.
+	 *
+	 * @return the compressed length
+	 */
+	public static int compress(byte[] src, byte[] dest) {
+		int[] table = new int[1 << HASH_LOG];
+		int length = src.length;
+		int anchor = 0;
+		int out = 0;
+
+		// find the longest match at each position (via a hash of its first bytes)
+		for (int i = 0; i + MIN_MATCH <= length;) {
+			int seq = readInt(src, i);
+			int hash = (seq * -1640531535) >>> (32 - HASH_LOG);
+			int ref = table[hash] - 1;
+			table[hash] = i + 1;
+			if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+				i++;
+				continue;
+			}
+			int match = MIN_MATCH;
+			while (i + match < length && src[ref + match] == src[i + match]) {
+				match++;
+			}
+
+			// emit the literals before the match, then the match
+			out = writeLiterals(src, anchor, i - anchor, match - MIN_MATCH, dest, out);
+			dest[out++] = (byte) (i - ref);
+			dest[out++] = (byte) ((i - ref) >>> 8);
+			out = writeLength(match - MIN_MATCH, dest, out);
+			i += match;
+			anchor = i;
+		}
+
+		// emit the remaining literals
+		return writeLiterals(src, anchor, length - anchor, 0, dest, out);
+
+	} // public static int compress(byte[] src, byte[] dest)
+
+	/**
+	 * Decompresses the given block into the destination buffer.
+	 *
+	 * @param src
+	 *          buffer holding the compressed block
+	 * @param srcLen
+	 *          length of the compressed block
+	 * @param dest
+	 *          output buffer for the decompressed block
+	 * @return the decompressed length
+	 * @throws IllegalStateException
+	 *           if the block is corrupt
+	 */
+	public static int decompress(byte[] src, int srcLen, byte[] dest) {
+		int in = 0;
+		int out = 0;
+		try {
+			while (true) {
+				int token = src[in++] & 0xFF;
+
+				// copy the literals
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = src[in++] & 0xFF;
+						literals += b;
+					} while (b == 255);
+				}
+				System.arraycopy(src, in, dest, out, literals);
+				in += literals;
+				out += literals;
+				if (in >= srcLen) { // the last token has no match
+					return out;
+				}
+
+				// copy the match, byte by byte since it may overlap its own output
+				int offset = (src[in++] & 0xFF) | ((src[in++] & 0xFF) << 8);
+				int match = token & 0x0F;
+				if (match == 15) {
+					int b;
+					do {
+						b = src[in++] & 0xFF;
+						match += b;
+					} while (b == 255);
+				}
+				match += MIN_MATCH;
+				for (int ref = out - offset; match > 0; match--) {
+					dest[out++] = dest[ref++];
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException exc) {
+			throw new IllegalStateException("Corrupt compressed page");
+		}
+
+	} // public static int decompress(byte[] src, int srcLen, byte[] dest)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Writes a token with the given literals and match length, and the literals.
+	 *
+	 * @return the new output position
+	 */
+	protected static int writeLiterals(byte[] src, int start, int literals, int match, byte[] dest, int out) {
+		dest[out++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(match, 15));
+		out = writeLength(literals, dest, out);
+		System.arraycopy(src, start, dest, out, literals);
+		return out + literals;
+	}
+
+	/**
+	 * Writes the extra bytes of a length whose nibble overflowed, if any.
+	 *
+	 * @return the new output position
+	 */
+	protected static int writeLength(int length, byte[] dest, int out) {
+		if (length >= 15) {
+			for (length -= 15; length >= 255; length -= 255) {
+				dest[out++] = (byte) 255;
+			}
+			dest[out++] = (byte) length;
+		}
+		return out;
+	}
+
+	/**
+	 * Reads four bytes as an int (in no particular byte order).
+	 */
+	protected static int readInt(byte[] buf, int pos) {
+		return (buf[pos] & 0xFF) | (buf[pos + 1] & 0xFF) << 8 | (buf[pos + 2] & 0xFF) << 16 | buf[pos + 3] << 24;
+	}
+
+} // class PageCompressor
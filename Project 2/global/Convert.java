@@ -1,5 +1,7 @@
 package global;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Provides conversion routines for getting and setting data in byte arrays.
  */
@@ -104,7 +106,7 @@ public class Convert {
 		}
 
 		// is there any way in Java to avoid these mem copies?
-		return new String(data, pos, length).trim();
+		return new String(data, pos, length, StandardCharsets.UTF_8).trim();
 
 	} // public static String getStringValue(int pos, byte[] data, int length)
 
@@ -114,7 +116,7 @@ public class Convert {
 	public static void setStringValue(String value, int pos, byte[] data) {
 
 		// is there any way in Java to avoid these mem copies?
-		byte[] ba = value.getBytes();
+		byte[] ba = value.getBytes(StandardCharsets.UTF_8);
 		System.arraycopy(ba, 0, data, pos, ba.length);
 
 	} // public static void setStringValue(String value, int pos, byte[] data)
@@ -1,6 +1,7 @@
 package global;
 
 import bufmgr.BufMgr;
+import diskmgr.CompressedDiskMgr;
 import diskmgr.DiskMgr;
 
 /**
@@ -35,7 +36,28 @@ public class Minibase {
 	public Minibase(String dbname, int num_pgs, int bufpoolsize, boolean exists) {
 
 		// simply initialize the database
-		init(dbname, num_pgs, bufpoolsize, exists);
+		init(dbname, num_pgs, bufpoolsize, exists, false);
+
+	} // constructor
+
+	/**
+	 * Constructs and starts an instance of Minibase, given the configuration.
+	 * 
+	 * @param dbname
+	 *          Name of the data file
+	 * @param num_pgs
+	 *          Number of pages to allocate
+	 * @param bufpoolsize
+	 *          Buffer pool size (in pages)
+	 * @param exists
+	 *          If the database already exists on disk
+	 * @param compress
+	 *          If pages are compressed on disk (see CompressedDiskMgr)
+	 */
+	public Minibase(String dbname, int num_pgs, int bufpoolsize, boolean exists, boolean compress) {
+
+		// simply initialize the database
+		init(dbname, num_pgs, bufpoolsize, exists, compress);
 
 	} // constructor
 
@@ -50,15 +72,17 @@ public class Minibase {
 	 *          Buffer pool size (in pages)
 	 * @param exists
 	 *          If the database already exists on disk
+	 * @param compress
+	 *          If pages are compressed on disk (see CompressedDiskMgr)
 	 */
-	public void init(String dbname, int num_pgs, int bufpoolsize, boolean exists) {
+	public void init(String dbname, int num_pgs, int bufpoolsize, boolean exists, boolean compress) {
 
 		// save the file name
 		DatabaseName = dbname;
 
 		// load the static layers
 		try {
-			DiskManager = new DiskMgr();
+			DiskManager = compress ? new CompressedDiskMgr() : new DiskMgr();
 			BufferManager = new BufMgr(bufpoolsize);
 		} catch (Exception exc) {
 			haltSystem(exc);
@@ -0,0 +1,157 @@
+package global;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Safety net for resources that should have been closed, such as the pages
+ * pinned by a scan or the pages of a temporary file. An object registers the
+ * action that releases its resources, and closes its handle when it releases
+ * them itself. If the object becomes unreachable while still open, the leak is
+ * reported and its release action is queued.<br>
+ * <br>
+ * The actions unpin and free pages, so they must not run in the middle of a pin
+ * (e.g. while pinPage or newPage is choosing a frame). They are therefore not
+ * run by the cleaner's thread, but by releaseLeaked(), which the buffer manager
+ * calls at the start of a pin (before it looks for the page or a frame) once a
+ * leak is queued. An action's own pins don't run the other actions again; and
+ * an action that fails is reported and dropped, so it doesn't fail every later
+ * pin.
+ */
+public class ResourceCleaner {
+
+	/** If true, handles record where they were opened, for leak reports. */
+	public static boolean TrackLeaks = false;
+
+	/** The cleaner that watches for unreachable objects. */
+	protected static final Cleaner cleaner = Cleaner.create();
+
+	/** Release actions of leaked objects, waiting to be run. */
+	protected static final ConcurrentLinkedQueue<Runnable> leaked = new ConcurrentLinkedQueue<Runnable>();
+
+	/** Number of leaks detected since startup. */
+	protected static final AtomicInteger leakCnt = new AtomicInteger();
+
+	/** Set while release actions are running. */
+	protected static final AtomicBoolean releasing = new AtomicBoolean();
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Registers an object's release action, which must not refer to the object.
+	 *
+	 * @param owner
+	 *          the object holding the resources
+	 * @param release
+	 *          releases the resources, if the object is never closed
+	 * @param what
+	 *          describes the object in leak reports
+	 */
+	public static Handle register(Object owner, Runnable release, String what) {
+		Handle handle = new Handle(release, what);
+		handle.cleanable = cleaner.register(owner, handle);
+		return handle;
+	}
+
+	/**
+	 * Tells whether any release actions are waiting to be run.
+	 */
+	public static boolean hasLeaked() {
+		return !leaked.isEmpty();
+	}
+
+	/**
+	 * Runs the release actions of the leaked objects found so far, unless they are
+	 * already running (i.e. this is called by an action, or another thread).
+	 *
+	 * @return the number of actions run
+	 */
+	public static int releaseLeaked() {
+		if (!releasing.compareAndSet(false, true)) {
+			return 0;
+		}
+		int count = 0;
+		try {
+			for (Runnable release = leaked.poll(); release != null; release = leaked.poll()) {
+				try {
+					release.run();
+					count++;
+				} catch (RuntimeException exc) {
+					System.err.println("Release of a leaked object failed");
+					exc.printStackTrace();
+				}
+			}
+		} finally {
+			releasing.set(false);
+		}
+		return count;
+
+	} // public static int releaseLeaked()
+
+	/**
+	 * Gets the number of leaks detected since startup.
+	 */
+	public static int getLeakCnt() {
+		return leakCnt.get();
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * The registration of an object's release action.
+	 */
+	public static class Handle implements Runnable {
+
+		/** Releases the object's resources. */
+		protected final Runnable release;
+
+		/** Describes the object. */
+		protected final String what;
+
+		/** Where the object was opened, if tracked. */
+		protected final Throwable origin;
+
+		/** Registration with the cleaner. */
+		protected Cleaner.Cleanable cleanable;
+
+		/** Set once the object has released its own resources. */
+		protected volatile boolean closed;
+
+		/**
+		 * Constructs a handle for the given release action.
+		 */
+		protected Handle(Runnable release, String what) {
+			this.release = release;
+			this.what = what;
+			this.origin = TrackLeaks ? new Throwable(what + " opened here") : null;
+		}
+
+		/**
+		 * Records that the object released its own resources, and unregisters it.
+		 */
+		public void close() {
+			closed = true;
+			cleanable.clean();
+		}
+
+		/**
+		 * Called (once) when the object is closed or unreachable; reports the leak
+		 * and queues the release action in the latter case.
+		 */
+		public void run() {
+			if (closed) {
+				return;
+			}
+			leakCnt.incrementAndGet();
+			System.err.println("Leaked " + what + " was never closed");
+			if (origin != null) {
+				origin.printStackTrace();
+			}
+			leaked.add(release);
+		}
+
+	} // public static class Handle implements Runnable
+
+} // public class ResourceCleaner
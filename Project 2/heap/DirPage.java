@@ -3,7 +3,10 @@ package heap;
 import global.PageId;
 
 /**
- * A heap file directory page; contains DirEntry records.
+ * A heap file directory page; contains DirEntry records. The head directory
+ * page also keeps the total number of records and data pages in the file, and
+ * its previous page id (otherwise unused) refers to a page of file metadata, if
+ * any (i.e. the column widths of a PAX file).
  */
 class DirPage extends HFPage {
 
@@ -22,7 +25,13 @@ class DirPage extends HFPage {
 	// --------------------------------------------------------------------------
 
 	/** The size of the footer data (in bytes). */
-	protected static final int FOOTER_SIZE = 2;
+	protected static final int FOOTER_SIZE = 10;
+
+	/** Page offset for the file's total number of records (head page only). */
+	protected static final int REC_TOTAL = PAGE_SIZE - 10;
+
+	/** Page offset for the file's total number of data pages (head page only). */
+	protected static final int PAGE_TOTAL = PAGE_SIZE - 6;
 
 	/** Page offset for the total number of entries. */
 	protected static final int ENTRY_COUNT = PAGE_SIZE - 2;
@@ -39,6 +48,8 @@ class DirPage extends HFPage {
 		super();
 		setType(HeapFile.DIR_PAGE);
 		setEntryCnt((short) 0);
+		setRecTotal(0);
+		setPageTotal(0);
 	}
 
 	/**
@@ -55,6 +66,34 @@ class DirPage extends HFPage {
 		setShortValue(entryCnt, ENTRY_COUNT);
 	}
 
+	/**
+	 * Gets the total number of records in the file (head page only).
+	 */
+	public int getRecTotal() {
+		return getIntValue(REC_TOTAL);
+	}
+
+	/**
+	 * Sets the total number of records in the file (head page only).
+	 */
+	public void setRecTotal(int recTotal) {
+		setIntValue(recTotal, REC_TOTAL);
+	}
+
+	/**
+	 * Gets the total number of data pages in the file (head page only).
+	 */
+	public int getPageTotal() {
+		return getIntValue(PAGE_TOTAL);
+	}
+
+	/**
+	 * Sets the total number of data pages in the file (head page only).
+	 */
+	public void setPageTotal(int pageTotal) {
+		setIntValue(pageTotal, PAGE_TOTAL);
+	}
+
 	/**
 	 * Gets the PageId at the given index.
 	 */
@@ -97,6 +136,24 @@ class DirPage extends HFPage {
 		setShortValue(freeCnt, HEADER_SIZE + slotno * ENTRY_SIZE + IX_FREE_CNT);
 	}
 
+	/**
+	 * Moves the given number of entries from the front of this page to the end of
+	 * the given page, shifting the remaining entries down.
+	 */
+	public void moveEntries(DirPage dest, int count) {
+
+		// append the entries to the destination page
+		int destCnt = dest.getEntryCnt();
+		System.arraycopy(data, HEADER_SIZE, dest.data, HEADER_SIZE + destCnt * ENTRY_SIZE, count * ENTRY_SIZE);
+		dest.setEntryCnt((short) (destCnt + count));
+
+		// shift the remaining entries down
+		int entryCnt = getEntryCnt();
+		System.arraycopy(data, HEADER_SIZE + count * ENTRY_SIZE, data, HEADER_SIZE, (entryCnt - count) * ENTRY_SIZE);
+		setEntryCnt((short) (entryCnt - count));
+
+	} // public void moveEntries(DirPage dest, int count)
+
 	/**
 	 * Logically deletes an entry at the given slot number by shifting any
 	 * successive entries down.
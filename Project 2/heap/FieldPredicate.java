@@ -0,0 +1,200 @@
+package heap;
+
+import global.AttrOperator;
+import global.AttrType;
+import global.Convert;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A selection predicate over a fixed-offset field of a record, of the form
+ * "field op constant". Predicates are evaluated directly against the bytes of a
+ * pinned data page, so that records which don't qualify are never copied. Field
+ * values are read the same way Convert stores them; string fields are compared
+ * byte by byte in UTF-8, ignoring leading and trailing blanks on both sides
+ * (like Convert.getStringValue).
+ */
+public class FieldPredicate {
+
+	/** Offset of the field within the record. */
+	protected int offset;
+
+	/** Length of the field (in bytes). */
+	protected int length;
+
+	/** AttrType of the field. */
+	protected int type;
+
+	/** AttrOperator comparing the field to the constant. */
+	protected int op;
+
+	/** The constant, if an integer. */
+	protected int ival;
+
+	/** The constant, if a float. */
+	protected float fval;
+
+	/** The constant, if a string (UTF-8, without leading or trailing blanks). */
+	protected byte[] sval;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Constructs a predicate over an integer field.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the operator is invalid
+	 */
+	public FieldPredicate(int offset, int attrOp, int value) {
+		this(offset, 4, AttrType.INTEGER, attrOp);
+		ival = value;
+	}
+
+	/**
+	 * Constructs a predicate over a float field; floats are ordered like
+	 * Float.compare, so NaN equals itself and is greater than any other value.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the operator is invalid
+	 */
+	public FieldPredicate(int offset, int attrOp, float value) {
+		this(offset, 4, AttrType.FLOAT, attrOp);
+		fval = value;
+	}
+
+	/**
+	 * Constructs a predicate over a string field of the given length; strings are
+	 * stored in fixed-length fields.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the operator is invalid or the value is null
+	 */
+	public FieldPredicate(int offset, int length, int attrOp, String value) {
+		this(offset, length, AttrType.STRING, attrOp);
+		if (value == null) {
+			throw new IllegalArgumentException("Value is null");
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int start = trimStart(bytes, 0, bytes.length);
+		int end = trimEnd(bytes, start, bytes.length);
+		sval = new byte[end - start];
+		System.arraycopy(bytes, start, sval, 0, sval.length);
+	}
+
+	/**
+	 * Saves the field and operator common to all types.
+	 */
+	private FieldPredicate(int offset, int length, int attrType, int attrOp) {
+		if (attrOp < AttrOperator.EQ || attrOp > AttrOperator.LTE) {
+			throw new IllegalArgumentException("Invalid operator " + attrOp);
+		}
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("Invalid field [" + offset + ", " + length + "]");
+		}
+		this.offset = offset;
+		this.length = length;
+		this.type = attrType;
+		this.op = attrOp;
+	}
+
+	/**
+	 * Evaluates the predicate against the record at the given location.
+	 *
+	 * @return true if the record qualifies, false otherwise (or if it is too short
+	 *         to hold the field)
+	 */
+	public boolean eval(byte[] data, int recOffset, int recLength) {
+
+		// the record must contain the field
+		if (offset + length > recLength) {
+			return false;
+		}
+		int pos = recOffset + offset;
+
+		// compare the field to the constant
+		int cmp;
+		switch (type) {
+			case AttrType.INTEGER:
+				cmp = Integer.compare(Convert.getIntValue(pos, data), ival);
+				break;
+			case AttrType.FLOAT:
+				cmp = Float.compare(Convert.getFloatValue(pos, data), fval);
+				break;
+			default:
+				cmp = compareString(data, pos);
+				break;
+		}
+
+		// apply the operator
+		switch (op) {
+			case AttrOperator.EQ:
+				return cmp == 0;
+			case AttrOperator.NEQ:
+				return cmp != 0;
+			case AttrOperator.GT:
+				return cmp > 0;
+			case AttrOperator.GTE:
+				return cmp >= 0;
+			case AttrOperator.LT:
+				return cmp < 0;
+			default:
+				return cmp <= 0;
+		}
+
+	} // public boolean eval(byte[] data, int recOffset, int recLength)
+
+	/**
+	 * Compares the string field at the given position to the constant, without
+	 * decoding the field.
+	 */
+	protected int compareString(byte[] data, int pos) {
+
+		// ignore blanks and padding, as for the constant
+		int start = trimStart(data, pos, pos + length);
+		int end = trimEnd(data, start, pos + length);
+
+		// then compare lexicographically
+		int len = end - start;
+		int n = Math.min(len, sval.length);
+		for (int i = 0; i < n; i++) {
+			int diff = (data[start + i] & 0xff) - (sval[i] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return len - sval.length;
+
+	} // protected int compareString(byte[] data, int pos)
+
+	/**
+	 * Gets the position of the first byte in the range that isn't a blank or
+	 * control character (i.e. as String.trim() sees them).
+	 */
+	protected static int trimStart(byte[] data, int start, int end) {
+		while (start < end && (data[start] & 0xff) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Gets the position past the last byte in the range that isn't a blank or
+	 * control character.
+	 */
+	protected static int trimEnd(byte[] data, int start, int end) {
+		while (end > start && (data[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Returns a string representation of the predicate.
+	 */
+	public String toString() {
+		String value = (type == AttrType.STRING) ? "'" + new String(sval, StandardCharsets.UTF_8) + "'"
+				: (type == AttrType.FLOAT) ? Float.toString(fval) : Integer.toString(ival);
+		return "[" + offset + "] " + AttrOperator.toString(op) + " " + value;
+	}
+
+} // public class FieldPredicate
@@ -0,0 +1,286 @@
+package heap;
+
+import global.AttrOperator;
+import global.AttrType;
+import global.Convert;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics about a heap file and one of its integer or float fields, for
+ * query planning, estimated from a block sample of the file (see
+ * HeapFile.sample): the number of records, their average length, an equi-depth
+ * histogram of the field's values, and the number of distinct values.<br>
+ * <br>
+ * Distinct values are counted with a KMV sketch (the k smallest hashes of the
+ * sampled values, with their counts), and scaled up from the sample to the
+ * whole file with the GEE estimator, using the sketch's share of values seen
+ * only once. Statistics may be saved with the file (see HeapFile.saveStats).
+ */
+public class FieldStats {
+
+	/** Number of buckets in the histogram. */
+	public static final int BUCKETS = 16;
+
+	/** Number of hashes kept in the distinct value sketch. */
+	protected static final int SKETCH_SIZE = 256;
+
+	// --------------------------------------------------------------------------
+
+	/** Offset of the field within the record. */
+	protected int offset;
+
+	/** AttrType of the field. */
+	protected int type;
+
+	/** Number of records in the file. */
+	protected int recCnt;
+
+	/** Average length of a record (in bytes). */
+	protected double avgLength;
+
+	/** Bucket boundaries of the histogram (BUCKETS + 1, or none if no values). */
+	protected double[] bounds;
+
+	/** Estimated number of distinct values. */
+	protected long distinct;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Constructs empty statistics for the given field.
+	 */
+	protected FieldStats(int offset, int attrType) {
+		this.offset = offset;
+		this.type = attrType;
+		this.bounds = new double[0];
+	}
+
+	/**
+	 * Estimates statistics for the given field from a sample of the file's data
+	 * pages.
+	 *
+	 * @param fraction
+	 *          probability of each data page being sampled
+	 * @param seed
+	 *          seed of the random page choice
+	 * @throws IllegalArgumentException
+	 *           if the field is not an integer or float
+	 */
+	public static FieldStats build(HeapFile hf, int offset, int attrType, double fraction, long seed) {
+		if (attrType != AttrType.INTEGER && attrType != AttrType.FLOAT) {
+			throw new IllegalArgumentException("Invalid field type " + AttrType.toString(attrType));
+		}
+		FieldStats stats = new FieldStats(offset, attrType);
+		stats.recCnt = hf.getRecCnt();
+
+		// collect the sampled values, and sketch their hashes
+		double[][] values = { new double[256] };
+		long[] counts = new long[3]; // records, bytes, values
+		TreeMap<Long, Integer> sketch = new TreeMap<Long, Integer>();
+		hf.sample(fraction, seed).forEach(record -> {
+			counts[0]++;
+			counts[1] += record.length;
+			if (record.length < offset + 4) {
+				return;
+			}
+			int bits = Convert.getIntValue(offset, record);
+			double value = (attrType == AttrType.INTEGER) ? bits : Float.intBitsToFloat(bits);
+			if (counts[2] == values[0].length) {
+				values[0] = Arrays.copyOf(values[0], values[0].length * 2);
+			}
+			values[0][(int) counts[2]++] = value;
+			sketch(sketch, hash(bits));
+		});
+		if (counts[0] == 0) {
+			return stats;
+		}
+		stats.avgLength = (double) counts[1] / counts[0];
+
+		// the histogram bounds are the quantiles of the sample
+		int n = (int) counts[2];
+		if (n > 0) {
+			double[] sorted = Arrays.copyOf(values[0], n);
+			Arrays.sort(sorted);
+			stats.bounds = new double[BUCKETS + 1];
+			for (int i = 0; i <= BUCKETS; i++) {
+				stats.bounds[i] = sorted[(int) ((long) i * (n - 1) / BUCKETS)];
+			}
+		}
+
+		// distinct values in the sample, then (by GEE) in the file
+		double sampled = sketch.size();
+		if (sketch.size() == SKETCH_SIZE) {
+			sampled = (SKETCH_SIZE - 1) / (sketch.lastKey() / (double) Long.MAX_VALUE);
+		}
+		int singles = 0;
+		for (Map.Entry<Long, Integer> entry : sketch.entrySet()) {
+			if (entry.getValue() == 1) {
+				singles++;
+			}
+		}
+		double once = (sketch.isEmpty()) ? 0 : sampled * singles / sketch.size();
+		double scale = Math.sqrt(Math.max(1.0, (double) stats.recCnt / counts[0]));
+		double estimate = scale * once + (sampled - once);
+		stats.distinct = Math.round(Math.min(Math.max(estimate, sketch.size()), Math.max(stats.recCnt, 1)));
+		return stats;
+
+	} // public static FieldStats build(HeapFile, int, int, double, long)
+
+	/**
+	 * Gets the offset of the field within the record.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the AttrType of the field.
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the number of records in the file.
+	 */
+	public int getRecCnt() {
+		return recCnt;
+	}
+
+	/**
+	 * Gets the estimated average length of a record (in bytes).
+	 */
+	public double getAvgLength() {
+		return avgLength;
+	}
+
+	/**
+	 * Gets the estimated number of distinct values of the field.
+	 */
+	public long getDistinct() {
+		return distinct;
+	}
+
+	/**
+	 * Gets the bucket boundaries of the equi-depth histogram; each of the BUCKETS
+	 * buckets holds about the same number of records. Empty if no values were
+	 * sampled.
+	 */
+	public double[] getBounds() {
+		return bounds.clone();
+	}
+
+	/**
+	 * Estimates the fraction of records satisfying "field op value".
+	 */
+	public double estimateSelectivity(int attrOp, double value) {
+		double eq = (distinct > 0) ? 1.0 / distinct : 0;
+		switch (attrOp) {
+			case AttrOperator.EQ:
+				return eq;
+			case AttrOperator.NEQ:
+				return 1 - eq;
+			case AttrOperator.LT:
+				return fractionBelow(value);
+			case AttrOperator.LTE:
+				return Math.min(1, fractionBelow(value) + eq);
+			case AttrOperator.GT:
+				return Math.max(0, 1 - fractionBelow(value) - eq);
+			case AttrOperator.GTE:
+				return 1 - fractionBelow(value);
+			default:
+				throw new IllegalArgumentException("Invalid operator " + attrOp);
+		}
+	} // public double estimateSelectivity(int attrOp, double value)
+
+	/**
+	 * Returns a string representation of the statistics.
+	 */
+	public String toString() {
+		return "FieldStats(offset " + offset + " " + AttrType.toString(type) + ", " + recCnt + " records of "
+				+ String.format("%.1f", avgLength) + " bytes, " + distinct + " distinct, bounds "
+				+ Arrays.toString(bounds) + ")";
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Estimates the fraction of values less than the given one, interpolating
+	 * within its bucket.
+	 */
+	protected double fractionBelow(double value) {
+		if (bounds.length == 0 || value <= bounds[0]) {
+			return 0;
+		}
+		if (value > bounds[BUCKETS]) {
+			return 1;
+		}
+		int b = 0;
+		while (b < BUCKETS - 1 && value > bounds[b + 1]) {
+			b++;
+		}
+		double width = bounds[b + 1] - bounds[b];
+		double within = (width > 0) ? (value - bounds[b]) / width : 1;
+		return Math.min(1, (b + within) / BUCKETS);
+	}
+
+	/**
+	 * Adds a hash to a KMV sketch, keeping the SKETCH_SIZE smallest.
+	 */
+	protected static void sketch(TreeMap<Long, Integer> sketch, long hash) {
+		Integer count = sketch.get(hash);
+		if (count != null) {
+			sketch.put(hash, count + 1);
+		} else if (sketch.size() < SKETCH_SIZE) {
+			sketch.put(hash, 1);
+		} else if (hash < sketch.lastKey()) {
+			sketch.pollLastEntry();
+			sketch.put(hash, 1);
+		}
+	}
+
+	/**
+	 * Hashes a field value to a uniformly distributed non-negative long.
+	 */
+	protected static long hash(int bits) {
+		long h = bits * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		h *= 0xD6E8FEB86659FD93L;
+		h ^= h >>> 32;
+		return h >>> 1;
+	}
+
+	/**
+	 * Serializes the statistics, to be saved with the file.
+	 */
+	protected byte[] toBytes() {
+		ByteBuffer buf = ByteBuffer.allocate(4 * 4 + 8 * 2 + 8 * bounds.length);
+		buf.putInt(offset).putInt(type).putInt(recCnt).putInt(bounds.length);
+		buf.putDouble(avgLength).putLong(distinct);
+		for (double bound : bounds) {
+			buf.putDouble(bound);
+		}
+		return buf.array();
+	}
+
+	/**
+	 * Deserializes statistics saved with a file.
+	 */
+	protected static FieldStats fromBytes(byte[] data) {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		FieldStats stats = new FieldStats(buf.getInt(), buf.getInt());
+		stats.recCnt = buf.getInt();
+		stats.bounds = new double[buf.getInt()];
+		stats.avgLength = buf.getDouble();
+		stats.distinct = buf.getLong();
+		for (int i = 0; i < stats.bounds.length; i++) {
+			stats.bounds[i] = buf.getDouble();
+		}
+		return stats;
+	}
+
+} // public class FieldStats
@@ -4,12 +4,25 @@ import global.Page;
 import global.PageId;
 import global.RID;
 
+import java.util.Arrays;
+
 /**
  * Heap file data pages are implemented as slotted pages, with the slots at the
  * front and the records in the back, both growing into the free space in the
- * middle of the page. This design assumes that records are kept compacted when
- * deletions are performed. Each slot contains the length and offset of its
- * corresponding record.
+ * middle of the page. Each slot contains the length and offset of its
+ * corresponding record.<br>
+ * <br>
+ * Deleting a record only empties its slot and leaves a hole in the record
+ * space; the records are compacted lazily, when an insert needs more contiguous
+ * space than the middle of the page has. The free space therefore counts both
+ * the middle of the page and the holes. Empty slots are chained into a free
+ * list through their offsets, so that an insert can reuse one without
+ * searching the slot directory.<br>
+ * <br>
+ * A record that outgrows its page is moved to another page, leaving behind a
+ * forwarding stub that holds the RID of the moved record. The moved record is
+ * flagged so that scans skip it, and find it through the stub instead. Records
+ * take at least as much space as a stub, so they can always be forwarded.
  */
 class HFPage extends Page {
 
@@ -22,8 +35,14 @@ class HFPage extends Page {
 	/** Offset of the amount of free space. */
 	protected static final int FREE_SPACE = 4;
 
-	/** Offset of the arbitrary page type. */
-	protected static final int PAGE_TYPE = 6;
+	/**
+	 * Offset of the first empty slot plus one, or zero if none (one byte, which
+	 * holds any slot number below MAX_SLOTS).
+	 */
+	protected static final int FREE_SLOT = 6;
+
+	/** Offset of the arbitrary page type (one byte, from -128 to 127). */
+	protected static final int PAGE_TYPE = 7;
 
 	/** Offset of the previous page id. */
 	protected static final int PREV_PAGE = 8;
@@ -42,6 +61,25 @@ class HFPage extends Page {
 	/** Size of a record slot. */
 	protected static final int SLOT_SIZE = 4;
 
+	/** Most slots a page can have; i.e. if they fill the page. */
+	protected static final int MAX_SLOTS = (PAGE_SIZE - HEADER_SIZE) / SLOT_SIZE;
+
+	/** Slot length of a forwarding stub (i.e. its record moved to another page). */
+	protected static final short FORWARD_SLOT = -2;
+
+	/** Space taken by a forwarding stub, which holds the RID of the moved record. */
+	protected static final int FORWARD_SIZE = 8;
+
+	/** Slot length flag for a record that was moved here from its home page. */
+	protected static final short MOVED_FLAG = 0x4000;
+
+	static {
+		// the free list head is one byte
+		if (MAX_SLOTS >= 0xff) {
+			throw new IllegalStateException("Slot numbers do not fit the free list head");
+		}
+	}
+
 	// --------------------------------------------------------------------------
 
 	/**
@@ -73,8 +111,11 @@ class HFPage extends Page {
 		// free space doesn't count headers
 		setShortValue((short) (PAGE_SIZE - HEADER_SIZE), FREE_SPACE);
 
+		// no empty slots yet
+		data[FREE_SLOT] = 0;
+
 		// optional type field may be used by sub classes
-		setShortValue((short) 0, PAGE_TYPE);
+		data[PAGE_TYPE] = 0;
 
 		// set all page ids to invalid
 		setIntValue(INVALID_PAGEID, PREV_PAGE);
@@ -101,14 +142,20 @@ class HFPage extends Page {
 	 * Gets the arbitrary type of the page.
 	 */
 	public short getType() {
-		return getShortValue(PAGE_TYPE);
+		return data[PAGE_TYPE];
 	}
 
 	/**
 	 * Sets the arbitrary type of the page.
+	 * 
+	 * @throws IllegalArgumentException
+	 *           if the type does not fit in one byte
 	 */
 	public void setType(short type) {
-		setShortValue(type, PAGE_TYPE);
+		if (type < Byte.MIN_VALUE || type > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Page type " + type + " does not fit in one byte");
+		}
+		data[PAGE_TYPE] = (byte) type;
 	}
 
 	/**
@@ -154,10 +201,12 @@ class HFPage extends Page {
 	}
 
 	/**
-	 * Gets the length of the record referenced by the given slot.
+	 * Gets the length of the record referenced by the given slot; EMPTY_SLOT if
+	 * the slot is empty, or FORWARD_SLOT if it is a forwarding stub.
 	 */
 	public short getSlotLength(int slotno) {
-		return getShortValue(HEADER_SIZE + slotno * SLOT_SIZE);
+		short length = getShortValue(HEADER_SIZE + slotno * SLOT_SIZE);
+		return (length < 0) ? length : (short) (length & ~MOVED_FLAG);
 	}
 
 	/**
@@ -168,71 +217,130 @@ class HFPage extends Page {
 	}
 
 	/**
-	 * Inserts a new record into the page.
+	 * True if the given slot holds a record moved here from another page.
+	 */
+	public boolean isMoved(int slotno) {
+		short length = getShortValue(HEADER_SIZE + slotno * SLOT_SIZE);
+		return (length >= 0) && ((length & MOVED_FLAG) != 0);
+	}
+
+	/**
+	 * Gets the number of bytes the given slot takes in the records space.
+	 */
+	protected int getSlotSpace(int slotno) {
+		short length = getSlotLength(slotno);
+		return (length == FORWARD_SLOT) ? FORWARD_SIZE : (length == EMPTY_SLOT) ? 0 : recordSpace(length);
+	}
+
+	/**
+	 * Gets the number of bytes a record of the given length takes in the records
+	 * space; i.e. at least enough for a forwarding stub.
+	 */
+	protected static int recordSpace(int length) {
+		return (length < FORWARD_SIZE) ? FORWARD_SIZE : length;
+	}
+
+	/**
+	 * Sets the length and offset of the given slot.
+	 */
+	protected void setSlot(int slotno, short length, short offset) {
+		int slotpos = HEADER_SIZE + slotno * SLOT_SIZE;
+		setShortValue(length, slotpos);
+		setShortValue(offset, slotpos + 2);
+	}
+
+	/**
+	 * True if no slots on the page are in use (including stubs and moved
+	 * records).
+	 */
+	public boolean isEmpty() {
+		short slotCnt = getShortValue(SLOT_CNT);
+		for (int i = 0; i < slotCnt; i++) {
+			if (getSlotLength(i) != EMPTY_SLOT)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * True if any slot on the page holds a record moved here from another page.
+	 */
+	public boolean hasMoved() {
+		short slotCnt = getShortValue(SLOT_CNT);
+		for (int i = 0; i < slotCnt; i++) {
+			if (isMoved(i))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts a new record into the page, reusing an empty slot if there is one.
 	 * 
 	 * @return RID of new record, or null if insufficient space
 	 */
 	public RID insertRecord(byte[] record) {
+		return insertRecord(record, false);
+	}
 
-		// first check for sufficient space
+	/**
+	 * Inserts a new record into the page, optionally flagged as moved here from
+	 * its home page.
+	 * 
+	 * @return RID of new record, or null if insufficient space
+	 */
+	protected RID insertRecord(byte[] record, boolean moved) {
+
+		// first check for sufficient space (a new slot needs room too)
 		short recLength = (short) record.length;
-		int spaceNeeded = recLength + SLOT_SIZE;
+		int space = recordSpace(recLength);
+		int slotno = getFreeSlot();
+		int slotGrowth = (slotno == EMPTY_SLOT) ? SLOT_SIZE : 0;
 		short freeSpace = getShortValue(FREE_SPACE);
-		if (spaceNeeded > freeSpace)
+		if (space + slotGrowth > freeSpace)
 			return null;
 
-		// linear search for an empty slot
-		short slotCnt = getShortValue(SLOT_CNT);
-		short i, length;
-		for (i = 0; i < slotCnt; i++) {
-			length = getSlotLength(i);
-			if (length == EMPTY_SLOT)
-				break;
-		}
+		// reserve the record space before the slot directory grows into it
+		short offset = reserve(space, slotGrowth);
 
 		// if using a new slot
-		if (i == slotCnt) {
-
-			// adjust the free space
-			freeSpace -= spaceNeeded;
-			setShortValue(freeSpace, FREE_SPACE);
+		if (slotno == EMPTY_SLOT) {
 
 			// adjust the slot count
-			slotCnt++;
+			short slotCnt = getShortValue(SLOT_CNT);
+			slotno = slotCnt++;
 			setShortValue(slotCnt, SLOT_CNT);
 
 		} else {
 
-			// otherwise, reusing an existing slot
-			freeSpace -= recLength;
-			setShortValue(freeSpace, FREE_SPACE);
+			// otherwise, unlink the empty slot from the free list
+			setFreeSlot(getSlotOffset(slotno));
 
 		} // else
 
-		// update the used space offset
-		short usedPtr = getShortValue(USED_PTR);
-		usedPtr -= recLength;
-		setShortValue(usedPtr, USED_PTR);
+		// adjust the free space
+		freeSpace -= space + slotGrowth;
+		setShortValue(freeSpace, FREE_SPACE);
 
 		// update the slot, copy the record, and return the RID
-		int slotpos = HEADER_SIZE + i * SLOT_SIZE;
-		setShortValue(recLength, slotpos);
-		setShortValue(usedPtr, slotpos + 2);
-		System.arraycopy(record, 0, data, usedPtr, recLength);
-		return new RID(new PageId(getIntValue(CUR_PAGE)), i);
+		setSlot(slotno, moved ? (short) (recLength | MOVED_FLAG) : recLength, offset);
+		System.arraycopy(record, 0, data, offset, recLength);
+		return new RID(new PageId(getIntValue(CUR_PAGE)), slotno);
 
-	} // public RID insertRecord(byte[] record)
+	} // protected RID insertRecord(byte[] record, boolean moved)
 
 	/**
 	 * Selects a record from the page.
 	 * 
 	 * @throws IllegalArgumentException
-	 *           if the rid is invalid
+	 *           if the rid is invalid or refers to a forwarding stub
 	 */
 	public byte[] selectRecord(RID rid) {
 
 		// get and validate the record information
 		short length = checkRID(rid);
+		if (length == FORWARD_SLOT)
+			throw new IllegalArgumentException("Forwarded record");
 		short offset = getSlotOffset(rid.slotno);
 
 		// finally, get and return the record
@@ -243,72 +351,202 @@ class HFPage extends Page {
 	} // public byte[] selectRecord(RID rid)
 
 	/**
-	 * Updates a record on the page. Must update with a record of the same length.
+	 * Gets the RID a forwarding stub refers to, or null if the given record was
+	 * not forwarded.
 	 * 
 	 * @throws IllegalArgumentException
-	 *           if the rid is invalid or input record's length is different.
+	 *           if the rid is invalid
 	 */
-	public void updateRecord(RID rid, byte[] record) {
+	public RID getForward(RID rid) {
+		if (checkRID(rid) != FORWARD_SLOT)
+			return null;
+		return new RID(data, getSlotOffset(rid.slotno));
+	}
+
+	/**
+	 * Updates a record on the page; the new record may be shorter or longer than
+	 * the old one. A shorter record is updated in place, and a longer one is
+	 * moved within the page if there is enough free space.
+	 * 
+	 * @return true if updated, false if the page has insufficient space
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid or refers to a forwarding stub
+	 */
+	public boolean updateRecord(RID rid, byte[] record) {
 
 		// get and validate the record information
 		short length = checkRID(rid);
-		if (record.length != length)
-			throw new IllegalArgumentException("Invalid record size");
+		if (length == FORWARD_SLOT)
+			throw new IllegalArgumentException("Forwarded record");
+		short recLength = (short) record.length;
+		short newLength = isMoved(rid.slotno) ? (short) (recLength | MOVED_FLAG) : recLength;
+		int oldSpace = recordSpace(length);
+		int newSpace = recordSpace(recLength);
+		short freeSpace = getShortValue(FREE_SPACE);
 
-		// finally, update the record in place
-		short offset = getSlotOffset(rid.slotno);
-		System.arraycopy(record, 0, data, offset, length);
+		// if not growing, update the record in place (the rest becomes a hole)
+		if (newSpace <= oldSpace) {
+			short offset = getSlotOffset(rid.slotno);
+			System.arraycopy(record, 0, data, offset, recLength);
+			setSlot(rid.slotno, newLength, offset);
+			setShortValue((short) (freeSpace + oldSpace - newSpace), FREE_SPACE);
+			return true;
+		}
+
+		// otherwise check for sufficient space, given the old record's space
+		if (newSpace - oldSpace > freeSpace)
+			return false;
+
+		// release the old space, then reserve the new space
+		release(rid.slotno);
+		short offset = reserve(newSpace, 0);
+		freeSpace = getShortValue(FREE_SPACE);
+		setShortValue((short) (freeSpace - newSpace), FREE_SPACE);
+
+		// finally, update the slot and copy the record
+		setSlot(rid.slotno, newLength, offset);
+		System.arraycopy(record, 0, data, offset, recLength);
+		return true;
 
-	} // public void updateRecord(RID rid, byte[] record)
+	} // public boolean updateRecord(RID rid, byte[] record)
 
 	/**
-	 * Deletes a record from the page, compacting the records space. RIDs of other
-	 * records must not change.
+	 * Replaces a record on the page with a forwarding stub to the given RID, or
+	 * redirects an existing stub. The stub reuses the record's space.
 	 * 
 	 * @throws IllegalArgumentException
 	 *           if the rid is invalid
 	 */
-	public void deleteRecord(RID rid) {
+	public void forwardRecord(RID rid, RID target) {
 
 		// get and validate the record information
 		short length = checkRID(rid);
-		short offset = getSlotOffset(rid.slotno);
+		if (length != FORWARD_SLOT) {
+
+			// the rest of the record's space becomes a hole
+			short freeSpace = getShortValue(FREE_SPACE);
+			freeSpace += recordSpace(length) - FORWARD_SIZE;
+			setShortValue(freeSpace, FREE_SPACE);
+			setSlot(rid.slotno, FORWARD_SLOT, getSlotOffset(rid.slotno));
+
+		} // if
+
+		// finally, write the target RID into the stub
+		target.writeData(data, getSlotOffset(rid.slotno));
+
+	} // public void forwardRecord(RID rid, RID target)
+
+	/**
+	 * Deletes a record (or forwarding stub) from the page, leaving a hole in the
+	 * records space to be compacted later. RIDs of other records must not change.
+	 * 
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid
+	 */
+	public void deleteRecord(RID rid) {
+
+		// validate the record id, and release the record's space
+		checkRID(rid);
+		release(rid.slotno);
+
+		// link the empty slot into the free list
+		setSlot(rid.slotno, (short) EMPTY_SLOT, (short) getFreeSlot());
+		setFreeSlot(rid.slotno);
+
+	} // public void deleteRecord(RID rid)
+
+	/**
+	 * Adds the space of the given slot's record to the free space, and marks the
+	 * slot empty (without linking it into the free list).
+	 */
+	protected void release(int slotno) {
+
+		// if the record is at the used space offset, the hole can simply be skipped
+		int space = getSlotSpace(slotno);
+		short offset = getSlotOffset(slotno);
+		short usedPtr = getShortValue(USED_PTR);
+		if (offset == usedPtr) {
+			setShortValue((short) (usedPtr + space), USED_PTR);
+		}
+
+		// increase freespace by size of hole
+		short freeSpace = getShortValue(FREE_SPACE);
+		freeSpace += space;
+		setShortValue(freeSpace, FREE_SPACE);
+		setSlot(slotno, (short) EMPTY_SLOT, (short) 0);
+
+	} // protected void release(int slotno)
+
+	/**
+	 * Takes the given number of bytes from the middle of the page (leaving room
+	 * for the slot directory to grow by the given amount), compacting the records
+	 * first if the middle of the page is too small. The caller is responsible for
+	 * checking and adjusting the free space.
+	 * 
+	 * @return offset of the reserved bytes
+	 */
+	protected short reserve(int length, int slotGrowth) {
 
-		// calculate the compacting values
+		// if the middle of the page is too small, first squeeze out the holes
+		int slotEnd = HEADER_SIZE + getShortValue(SLOT_CNT) * SLOT_SIZE + slotGrowth;
+		if (getShortValue(USED_PTR) - slotEnd < length)
+			compact();
+
+		// update the used space offset
 		short usedPtr = getShortValue(USED_PTR);
-		short newSpot = (short) (usedPtr + length);
-		short size = (short) (offset - usedPtr);
+		usedPtr -= length;
+		setShortValue(usedPtr, USED_PTR);
+		return usedPtr;
+
+	} // protected short reserve(int length, int slotGrowth)
 
-		// shift all bytes to the right
-		System.arraycopy(data, usedPtr, data, newSpot, size);
+	/**
+	 * Moves all the records to the back of the page, so that the free space in the
+	 * middle of the page includes any holes left by deletions. Slot numbers (and
+	 * therefore RIDs) do not change.
+	 */
+	protected void compact() {
 
-		// adjust offsets of all valid slots that refer
-		// to the left of the record being removed
+		// sort the live slots by offset once, packing each offset above its slot
 		short slotCnt = getShortValue(SLOT_CNT);
-		for (int i = 0, n = HEADER_SIZE; i < slotCnt; i++, n += SLOT_SIZE) {
+		int[] order = new int[slotCnt];
+		int liveCnt = 0;
+		for (int i = 0; i < slotCnt; i++) {
 			if (getSlotLength(i) != EMPTY_SLOT) {
-				short chkoffset = getSlotOffset(i);
-				if (chkoffset < offset) {
-					chkoffset += length;
-					setShortValue(chkoffset, n + 2);
-				}
+				order[liveCnt++] = getSlotOffset(i) << 16 | i;
 			}
 		}
+		Arrays.sort(order, 0, liveCnt);
+
+		// slide the records back in place, from the highest offset down; a record
+		// never moves below its old offset, so it can't overwrite one not yet moved
+		int usedPtr = PAGE_SIZE;
+		for (int i = liveCnt - 1; i >= 0; i--) {
+			int slotno = order[i] & 0xFFFF;
+			int space = getSlotSpace(slotno);
+			usedPtr -= space;
+			System.arraycopy(data, order[i] >>> 16, data, usedPtr, space);
+			setShortValue((short) usedPtr, HEADER_SIZE + slotno * SLOT_SIZE + 2);
+		}
 
-		// move the used space offset forward
-		setShortValue(newSpot, USED_PTR);
+		// then move the used space offset
+		setShortValue((short) usedPtr, USED_PTR);
 
-		// increase freespace by size of hole
-		short freeSpace = getShortValue(FREE_SPACE);
-		freeSpace += length;
-		setShortValue(freeSpace, FREE_SPACE);
+	} // protected void compact()
 
-		// mark the slot as empty
-		int slotpos = HEADER_SIZE + rid.slotno * SLOT_SIZE;
-		setShortValue((short) EMPTY_SLOT, slotpos);
-		setShortValue((short) 0, slotpos + 2);
+	/**
+	 * Gets the first slot in the free list, or EMPTY_SLOT if none.
+	 */
+	protected int getFreeSlot() {
+		return (data[FREE_SLOT] & 0xff) - 1;
+	}
 
-	} // public void deleteRecord(RID rid)
+	/**
+	 * Sets the first slot in the free list (EMPTY_SLOT if none).
+	 */
+	protected void setFreeSlot(int slotno) {
+		data[FREE_SLOT] = (byte) (slotno + 1);
+	}
 
 	/**
 	 * Gets the RID of the first record on the page, or null if none.
@@ -316,16 +554,10 @@ class HFPage extends Page {
 	public RID firstRecord() {
 
 		// find the first non-empty slot
-		short slotCnt = getShortValue(SLOT_CNT);
-		int i = 0;
-		for (; i < slotCnt; i++) {
-			short length = getSlotLength(i);
-			if (length != EMPTY_SLOT)
-				break;
-		}
+		int i = nextSlot(-1);
 
 		// if all slots are empty, there are no records
-		if (i == slotCnt)
+		if (i == EMPTY_SLOT)
 			return null;
 
 		// otherwise, found a non-empty slot
@@ -348,22 +580,38 @@ class HFPage extends Page {
 			throw new IllegalArgumentException("Invalid RID");
 
 		// find the next non-empty slot
-		int i = curRid.slotno + 1;
-		for (; i < slotCnt; i++) {
-			short length = getSlotLength(i);
-			if (length != EMPTY_SLOT)
-				break;
-		}
+		int i = nextSlot(curRid.slotno);
 
 		// if remaining slots were empty, there are no more records
-		if (i == slotCnt)
+		if (i == EMPTY_SLOT)
 			return null;
 
 		// otherwise, found a non-empty slot
-		return new RID(new PageId(getIntValue(CUR_PAGE)), i);
+		return new RID(new PageId(curPid), i);
 
 	} // public RID nextRecord(RID curRid)
 
+	/**
+	 * Gets the number of the next nonempty slot after the given one (use -1 for
+	 * the first slot), skipping records moved here from other pages. Unlike
+	 * nextRecord, this allocates nothing, so it is suitable for tight scan loops.
+	 * 
+	 * @return the slot number, or EMPTY_SLOT if no more
+	 */
+	public int nextSlot(int slotno) {
+
+		// find the next non-empty slot
+		short slotCnt = getShortValue(SLOT_CNT);
+		for (int i = slotno + 1; i < slotCnt; i++) {
+			if (getSlotLength(i) != EMPTY_SLOT && !isMoved(i))
+				return i;
+		}
+
+		// remaining slots were empty
+		return EMPTY_SLOT;
+
+	} // public int nextSlot(int slotno)
+
 	/**
 	 * Prints the contents of a heap file page.
 	 */
@@ -379,7 +627,8 @@ class HFPage extends Page {
 		System.out.println("  slotCnt   = " + slotCnt);
 		System.out.println("  usedPtr   = " + getShortValue(USED_PTR));
 		System.out.println("  freeSpace = " + getShortValue(FREE_SPACE));
-		System.out.println("  pageType  = " + getShortValue(PAGE_TYPE));
+		System.out.println("  freeSlot  = " + getFreeSlot());
+		System.out.println("  pageType  = " + getType());
 		System.out.println("-------");
 
 		for (int i = 0, n = HEADER_SIZE; i < slotCnt; i++, n += SLOT_SIZE) {
@@ -392,7 +641,7 @@ class HFPage extends Page {
 	/**
 	 * Validates a record id exists on this page.
 	 * 
-	 * @return the record length (if valid)
+	 * @return the record length (if valid), or FORWARD_SLOT for a stub
 	 * @throws IllegalArgumentException
 	 *           if the slot is empty or the RID is invalid
 	 */
@@ -6,10 +6,20 @@
 
 package heap;
 
+import global.Convert;
 import global.GlobalConst;
 import global.Minibase;
 import global.PageId;
 import global.RID;
+import global.ResourceCleaner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <h3>Minibase Heap Files</h3> A heap file is the simplest database file
@@ -19,11 +29,12 @@ import global.RID;
  * Normally each heap file has an entry in the database's file library.
  * Temporary heap files are used for external sorting and in other relational
  * operators. A temporary heap file does not have an entry in the file library
- * and is deleted when there are no more references to it. <br>
+ * and is deleted when it is closed, or else (as a safety net) after there are
+ * no more references to it. <br>
  * A sequential scan of a heap file (via the HeapScan class) is the most basic
  * access method.
  */
-public class HeapFile implements GlobalConst {
+public class HeapFile implements GlobalConst, AutoCloseable {
 
 	/** HFPage type for directory pages. */
 	protected static final short DIR_PAGE = 10;
@@ -31,6 +42,19 @@ public class HeapFile implements GlobalConst {
 	/** HFPage type for data pages. */
 	protected static final short DATA_PAGE = 11;
 
+	/** HFPage type for PAX data pages. */
+	protected static final short PAX_PAGE = 12;
+
+	/** HFPage type for the head directory page of a PAX file. */
+	protected static final short PAX_DIR_PAGE = 13;
+
+	/** Suffix of the name of the heap file holding a file's statistics. */
+	protected static final String STATS_SUFFIX = ".stats";
+
+	/** Orders RIDs by page, then by slot. */
+	protected static final Comparator<RID> RID_ORDER = Comparator.comparingInt((RID rid) -> rid.pageno.pid)
+			.thenComparingInt(rid -> rid.slotno);
+
 	// --------------------------------------------------------------------------
 
 	/** Is this a temporary heap file, meaning it has no entry in the library? */
@@ -45,52 +69,103 @@ public class HeapFile implements GlobalConst {
 	/** First page of the directory for this heap file. */
 	protected PageId headId;
 
+	/** Registration of a temporary file with the resource cleaner, or null. */
+	protected ResourceCleaner.Handle handle;
+
+	/** Do inserts go straight to the last data page? */
+	protected boolean appendMode;
+
+	/** Directory page of the last data page in append mode, or null if unknown. */
+	protected PageId tailDirId;
+
+	/** Index of the last data page's entry on tailDirId, or -1 if none. */
+	protected int tailIndex;
+
 	// --------------------------------------------------------------------------
 
 	/**
 	 * If the given name is in the library, this opens the corresponding heapfile;
 	 * otherwise, this creates a new empty heapfile. A null name produces a
 	 * temporary file which requires no file library entry.
+	 * 
+	 * @throws IllegalArgumentException
+	 *           if the named file is of another format (i.e. a PAX file)
 	 */
 	public HeapFile(String name) {
-		if (name != null) {
+		fileName = name;
+		isTemp = (name == null);
+		if (!isTemp) {
 			headId = Minibase.DiskManager.get_file_entry(name); // Attempts to open the corresponding heapfile
-			isTemp = false;
+		}
 
-			if (headId == null) { // New page
-				DirPage newPage = new DirPage();
-				headId = Minibase.BufferManager.newPage(newPage, 1);
-				newPage.setCurPage(headId);
-				Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		if (headId != null) { // Check the format of the existing file
+			DirPage headPage = new DirPage();
+			Minibase.BufferManager.pinPage(headId, headPage, PIN_DISKIO);
+			short headType = headPage.getType();
+			Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+			if (headType != getHeadType()) {
+				throw new IllegalArgumentException("File " + name + " is of another format");
+			}
+		} else { // New page
+			DirPage newPage = new DirPage();
+			newPage.setType(getHeadType());
+			headId = Minibase.BufferManager.newPage(newPage, 1);
+			newPage.setCurPage(headId);
+			Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+			if (isTemp) {
+				handle = ResourceCleaner.register(this, new TempFile(headId), "temporary HeapFile");
+			} else {
 				Minibase.BufferManager.flushPage(headId); // Do we need this?
 				Minibase.DiskManager.add_file_entry(name, headId);
 			}
-		} else {
-			isTemp = true;
 		}
 	} // public HeapFile(String name)
 
 	/**
-	 * Called by the garbage collector when there are no more references to the
-	 * object; deletes the heap file if it's temporary.
+	 * Closes the heap file; a temporary file is deleted.
 	 */
-	protected void finalize() throws Throwable {
-		if (isTemp) {
+	public void close() {
+		if (isTemp && handle != null) {
 			deleteFile();
 		}
-	} // protected void finalize() throws Throwable
+	} // public void close()
 
 	/**
 	 * Deletes the heap file from the database, freeing all of its pages and its
 	 * library entry if appropriate.
 	 */
 	public void deleteFile() {
+		if (handle != null) {
+			handle.close();
+			handle = null;
+		}
+		freePages(headId);
+		if (!isTemp) {
+			Minibase.DiskManager.delete_file_entry(fileName);
+			if (Minibase.DiskManager.get_file_entry(fileName + STATS_SUFFIX) != null) {
+				new HeapFile(fileName + STATS_SUFFIX).deleteFile();
+			}
+		}
+	} // public void deleteFile()
+
+	/**
+	 * Frees all of the pages of the heap file with the given head directory page.
+	 */
+	protected static void freePages(PageId headId) {
 		PageId pageno = new PageId(headId.pid);
 		DirPage dirPage = new DirPage();
 
+		// The head page may refer to a page of metadata
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		PageId metaId = dirPage.getPrevPage();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+		if (metaId.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.freePage(metaId);
+		}
+
 		// For all pages
 		while (pageno.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_NOOP);
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
 			for (int i = 0; i < dirPage.getEntryCnt(); i++) {
 				Minibase.BufferManager.freePage(dirPage.getPageId(i));
 			}
@@ -99,11 +174,7 @@ public class HeapFile implements GlobalConst {
 			Minibase.BufferManager.freePage(pageno);
 			pageno.copyPageId(dirPage.getNextPage());
 		}
-
-		if (!isTemp) {
-			Minibase.DiskManager.delete_file_entry(fileName);
-		}
-	} // public void deleteFile()
+	} // protected static void freePages(PageId headId)
 
 	/**
 	 * Inserts a new record into the file and returns its RID. Should be efficient
@@ -118,9 +189,12 @@ public class HeapFile implements GlobalConst {
 		if (record.length > MAX_TUPSIZE) {
 			throw new IllegalArgumentException("Record is too large");
 		}
+		if (appendMode) {
+			return appendRecord(record);
+		}
 		PageId pageno = getAvailPage(record.length);
-		DataPage page = new DataPage();
-		Minibase.BufferManager.pinPage(pageno, page, PIN_MEMCPY); // Should this be NOOP?
+		HFPage page = newDataPage();
+		Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
 		RID rid = page.insertRecord(record);
 		updateDirEntry(pageno, 1, page.getFreeSpace());
 		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
@@ -128,7 +202,8 @@ public class HeapFile implements GlobalConst {
 	} // public RID insertRecord(byte[] record)
 
 	/**
-	 * Reads a record from the file, given its rid.
+	 * Reads a record from the file, given its rid. If the record was moved to
+	 * another page, this follows its forwarding stub.
 	 * 
 	 * @throws IllegalArgumentException
 	 *           if the rid is invalid
@@ -137,15 +212,95 @@ public class HeapFile implements GlobalConst {
 		if (rid.pageno.pid == INVALID_PAGEID) {
 			throw new IllegalArgumentException("Invalid Record Id");
 		}
-		DataPage page = new DataPage();
-		Minibase.BufferManager.pinPage(rid.pageno, page, PIN_DISKIO);
-		byte ret[] = page.selectRecord(rid);
+		HFPage page = newDataPage();
+		RID fwdRid = pinHome(rid, page);
+		if (fwdRid == null) {
+			byte ret[] = page.selectRecord(rid);
+			Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_CLEAN);
+			return ret;
+		}
+
+		// Moved, so read it from the page it was moved to
 		Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_CLEAN);
+		Minibase.BufferManager.pinPage(fwdRid.pageno, page, PIN_DISKIO);
+		byte ret[] = page.selectRecord(fwdRid);
+		Minibase.BufferManager.unpinPage(fwdRid.pageno, UNPIN_CLEAN);
 		return ret;
 	} // public byte[] selectRecord(RID rid)
 
 	/**
-	 * Updates the specified record in the heap file.
+	 * Turns append mode on or off. In append mode, inserts go straight to the
+	 * last data page, or to a new page after it, instead of searching the
+	 * directory for free space; so space freed by deletes is not reused. The last
+	 * page's directory entry is cached by id, so that for insert-only (i.e. log)
+	 * files the cost of an insert doesn't depend on the size of the file.
+	 */
+	public void setAppendMode(boolean append) {
+		appendMode = append;
+		tailDirId = null;
+	}
+
+	/**
+	 * Reads the records with the given rids, in page order rather than in the
+	 * given order, so that each data page is pinned only once, and the pages are
+	 * read (if not buffered) in order. Each record is passed to the action with
+	 * its rid; forwarded records are read last, in order of the pages they were
+	 * moved to.
+	 * 
+	 * @throws IllegalArgumentException
+	 *           if a rid is invalid
+	 */
+	public void selectRecords(RID[] rids, BiConsumer<RID, byte[]> action) {
+
+		// pair each rid with itself as where to find its record
+		RID[][] targets = new RID[rids.length][];
+		for (int i = 0; i < rids.length; i++) {
+			if (rids[i].pageno.pid == INVALID_PAGEID) {
+				throw new IllegalArgumentException("Invalid Record Id");
+			}
+			targets[i] = new RID[] { rids[i], rids[i] };
+		}
+
+		// read the records at home, then the ones moved elsewhere
+		ArrayList<RID[]> moved = new ArrayList<RID[]>();
+		selectTargets(targets, action, moved);
+		selectTargets(moved.toArray(new RID[moved.size()][]), action, null);
+
+	} // public void selectRecords(RID[] rids, BiConsumer<RID, byte[]> action)
+
+	/**
+	 * Sorts the given (location, rid) pairs by location, and reads each page's
+	 * records with one pin. Forwarding stubs found are added to moved as pairs of
+	 * the moved record's location and its rid. The page is unpinned even if a rid
+	 * is invalid (or the action throws).
+	 */
+	protected void selectTargets(RID[][] targets, BiConsumer<RID, byte[]> action, ArrayList<RID[]> moved) {
+		Arrays.sort(targets, (a, b) -> RID_ORDER.compare(a[0], b[0]));
+		HFPage page = newDataPage();
+
+		for (int i = 0; i < targets.length;) {
+			PageId pageno = targets[i][0].pageno;
+			Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+			try {
+				for (; i < targets.length && targets[i][0].pageno.pid == pageno.pid; i++) {
+					RID fwdRid = (moved == null) ? null : page.getForward(targets[i][0]);
+					if (fwdRid == null) {
+						action.accept(targets[i][1], page.selectRecord(targets[i][0]));
+					} else {
+						moved.add(new RID[] { fwdRid, targets[i][1] });
+					}
+				}
+			} finally {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			}
+		}
+
+	} // protected void selectTargets(RID[][], BiConsumer<RID, byte[]>, ArrayList<RID[]>)
+
+	/**
+	 * Updates the specified record in the heap file. The new record may have a
+	 * different length; if it no longer fits on its page, it is moved to another
+	 * page and a forwarding stub is left behind, so the rid remains valid.
 	 * 
 	 * @throws IllegalArgumentException
 	 *           if the rid or new record is invalid
@@ -154,10 +309,36 @@ public class HeapFile implements GlobalConst {
 		if (rid.pageno.pid == INVALID_PAGEID) {
 			throw new IllegalArgumentException("Invalid Record Id");
 		}
-		DataPage page = new DataPage();
-		Minibase.BufferManager.pinPage(rid.pageno, page, PIN_NOOP);
-		page.updateRecord(rid, newRecord);
+		if (newRecord.length > MAX_TUPSIZE) {
+			throw new IllegalArgumentException("Record is too large");
+		}
+		HFPage page = newDataPage();
+		RID fwdRid = pinHome(rid, page);
+
+		if (fwdRid == null) { // Record is on its home page
+			if (!page.updateRecord(rid, newRecord)) { // Move it, leaving a stub
+				page.forwardRecord(rid, insertMoved(newRecord));
+			}
+			Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_DIRTY);
+			updateDirEntry(rid.pageno, 0, page.getFreeSpace());
+			return;
+		}
+
+		// Record was moved, so try to update it where it is
+		DataPage fwdPage = new DataPage();
+		Minibase.BufferManager.pinPage(fwdRid.pageno, fwdPage, PIN_DISKIO);
+		if (fwdPage.updateRecord(fwdRid, newRecord)) {
+			Minibase.BufferManager.unpinPage(fwdRid.pageno, UNPIN_DIRTY);
+			Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_CLEAN);
+			updateDirEntry(fwdRid.pageno, 0, fwdPage.getFreeSpace());
+			return;
+		}
+
+		// Otherwise move it again and redirect the stub (never chain stubs)
+		Minibase.BufferManager.unpinPage(fwdRid.pageno, UNPIN_CLEAN);
+		page.forwardRecord(rid, insertMoved(newRecord));
 		Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_DIRTY);
+		deleteMoved(fwdRid);
 	} // public void updateRecord(RID rid, byte[] newRecord)
 
 	/**
@@ -171,35 +352,39 @@ public class HeapFile implements GlobalConst {
 		if (rid.pageno.pid == INVALID_PAGEID) {
 			throw new IllegalArgumentException("Invalid Record Id");
 		}
-		DataPage page = new DataPage();
-		Minibase.BufferManager.pinPage(rid.pageno, page, PIN_NOOP);
+		HFPage page = newDataPage();
+		RID fwdRid = pinHome(rid, page);
 		page.deleteRecord(rid);
 		Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_DIRTY);
 		updateDirEntry(rid.pageno, -1, page.getFreeSpace());
+		if (fwdRid != null) {
+			deleteMoved(fwdRid);
+		}
 	} // public void deleteRecord(RID rid)
 
 	/**
-	 * Gets the number of records in the file.
+	 * Gets the number of records in the file, as kept on the head directory page.
 	 */
 	public int getRecCnt() {
-		PageId pageno = new PageId(headId.pid);
 		DirPage dirPage = new DirPage();
-		int count = 0;
-
-		// For all pages
-		while (pageno.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_NOOP);
-			for (int i = 0; i < dirPage.getEntryCnt(); i++) {
-				count += dirPage.getRecCnt(i);
-			}
-
-			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
-			pageno.copyPageId(dirPage.getNextPage());
-		}
-
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		int count = dirPage.getRecTotal();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
 		return count;
 	} // public int getRecCnt()
 
+	/**
+	 * Gets the number of data pages in the file, as kept on the head directory
+	 * page.
+	 */
+	public int getPageCnt() {
+		DirPage dirPage = new DirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		int count = dirPage.getPageTotal();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+		return count;
+	} // public int getPageCnt()
+
 	/**
 	 * Initiates a sequential scan of the heap file.
 	 */
@@ -207,6 +392,243 @@ public class HeapFile implements GlobalConst {
 		return new HeapScan(this);
 	}
 
+	/**
+	 * Initiates a sequential scan of the heap file that only returns records
+	 * satisfying the given predicate; the predicate is evaluated on the data pages
+	 * so that other records are never copied.
+	 */
+	public HeapScan openScan(FieldPredicate pred) {
+		return new HeapScan(this, pred);
+	}
+
+	/**
+	 * Creates a spliterator over copies of the file's records, which splits the
+	 * file's data pages into ranges that can be scanned independently.
+	 */
+	public Spliterator<byte[]> spliterator() {
+		return new HeapSpliterator(this);
+	}
+
+	/**
+	 * Creates a stream over copies of the file's records; if parallel, the data
+	 * pages are scanned concurrently by the common fork/join pool (or the pool
+	 * that runs the terminal operation).
+	 */
+	public Stream<byte[]> stream(boolean parallel) {
+		return StreamSupport.stream(spliterator(), parallel);
+	}
+
+	/**
+	 * Creates a stream over copies of the records on a random sample of the
+	 * file's data pages, each chosen with the given probability (at least one
+	 * page is chosen, if any). Reading whole pages costs about the given fraction
+	 * of a full scan; see FieldStats for statistics estimated from a sample.
+	 */
+	public Stream<byte[]> sample(double fraction, long seed) {
+		HeapSpliterator pages = new HeapSpliterator(this);
+		pages.sample(fraction, seed);
+		return StreamSupport.stream(pages, false);
+	}
+
+	/**
+	 * Saves statistics with the heap file (in another heap file, named after it),
+	 * replacing any previous statistics for the same field.
+	 * 
+	 * @throws IllegalStateException
+	 *           if the file is temporary
+	 */
+	public void saveStats(FieldStats stats) {
+		if (isTemp) {
+			throw new IllegalStateException("Temporary files have no statistics");
+		}
+		HeapFile statsFile = new HeapFile(fileName + STATS_SUFFIX);
+		RID rid = findStats(statsFile, stats.getOffset());
+		if (rid != null) {
+			statsFile.deleteRecord(rid);
+		}
+		statsFile.insertRecord(stats.toBytes());
+	} // public void saveStats(FieldStats stats)
+
+	/**
+	 * Loads the statistics saved with the heap file for the field at the given
+	 * offset, or returns null if there are none.
+	 */
+	public FieldStats loadStats(int offset) {
+		if (isTemp || Minibase.DiskManager.get_file_entry(fileName + STATS_SUFFIX) == null) {
+			return null;
+		}
+		HeapFile statsFile = new HeapFile(fileName + STATS_SUFFIX);
+		RID rid = findStats(statsFile, offset);
+		return (rid == null) ? null : FieldStats.fromBytes(statsFile.selectRecord(rid));
+	} // public FieldStats loadStats(int offset)
+
+	/**
+	 * Finds the record holding the statistics for the given field, or returns
+	 * null if none.
+	 */
+	protected static RID findStats(HeapFile statsFile, int offset) {
+		try (HeapScan scan = statsFile.openScan()) {
+			RID rid = new RID();
+			while (scan.next()) {
+				if (Convert.getIntValue(scan.getRecordOffset(), scan.getPageData()) == offset) {
+					scan.getRID(rid);
+					return rid;
+				}
+			}
+		}
+		return null;
+	} // protected static RID findStats(HeapFile statsFile, int offset)
+
+	/**
+	 * Runs one batch of an online vacuum. Working back from the end of the
+	 * directory, the records of each sparse data page are moved into free space
+	 * on earlier pages, so that the emptied data pages (and any directory pages
+	 * left empty) are freed. Moved records get new RIDs, so each move is reported
+	 * to remap (old RID, new RID) for updating indexes in bulk. Forwarded records
+	 * found on sparse pages are brought home along the way, while pages holding
+	 * records forwarded from elsewhere are skipped. No scans may be open during a
+	 * batch, but the file may be used normally between batches.
+	 * 
+	 * @param fill
+	 *          pages less full than this fraction are considered sparse
+	 * @param maxPages
+	 *          maximum number of sparse pages to empty in this batch
+	 * @param remap
+	 *          receives the old and new RID of each moved record
+	 * @return true if the batch ended early and there may be more to do, false if
+	 *         the file is as packed as it can get
+	 */
+	public boolean vacuum(float fill, int maxPages, BiConsumer<RID, RID> remap) {
+		int count = 0;
+		int[] pids = new int[DirPage.MAX_ENTRIES];
+		int[] free = new int[DirPage.MAX_ENTRIES];
+		PageId dirId = new PageId(headId.pid);
+		DirPage dirPage = new DirPage();
+
+		// Take a snapshot of the directory
+		while (dirId.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_DISKIO);
+			int entryCnt = dirPage.getEntryCnt();
+			if (count + entryCnt > pids.length) {
+				pids = Arrays.copyOf(pids, (count + entryCnt) * 2);
+				free = Arrays.copyOf(free, (count + entryCnt) * 2);
+			}
+			for (int i = 0; i < entryCnt; i++, count++) {
+				pids[count] = dirPage.getPageId(i).pid;
+				free[count] = dirPage.getFreeCnt(i);
+			}
+			Minibase.BufferManager.unpinPage(dirId, UNPIN_CLEAN);
+			dirId.copyPageId(dirPage.getNextPage());
+		}
+
+		HFPage srcPage = newDataPage();
+		HFPage dstPage = newDataPage();
+		int sparseFree = (int) ((1 - fill) * srcPage.getFreeSpace());
+		int[] added = new int[count];
+		int dst = 0;
+		int emptied = 0;
+		boolean more = false;
+
+		// Empty sparse pages from the back into free space from the front
+		for (int src = count - 1; src > dst; src--) {
+			if (free[src] <= sparseFree) { // Dense enough
+				continue;
+			}
+			if (emptied == maxPages) {
+				more = true;
+				break;
+			}
+
+			PageId srcId = new PageId(pids[src]);
+			Minibase.BufferManager.pinPage(srcId, srcPage, PIN_DISKIO);
+			if (srcPage.hasMoved()) { // Can't be freed, since we can't find the stubs
+				Minibase.BufferManager.unpinPage(srcId, UNPIN_CLEAN);
+				continue;
+			}
+
+			int first = dst;
+			int moved = 0;
+			RID oldRid = new RID(srcId, 0);
+			for (int slot = srcPage.nextSlot(EMPTY_SLOT); slot != EMPTY_SLOT; slot = srcPage.nextSlot(slot)) {
+				oldRid.slotno = slot;
+				RID fwdRid = srcPage.getForward(oldRid);
+				byte[] record = (fwdRid == null) ? srcPage.selectRecord(oldRid) : selectRecord(oldRid);
+
+				// Copy the record to the first earlier page with room
+				int need = getSpaceNeeded(record.length);
+				RID newRid = null;
+				while (newRid == null) {
+					while (dst < src && free[dst] < need) {
+						dst++;
+					}
+					if (dst == src) {
+						break;
+					}
+					PageId dstId = new PageId(pids[dst]);
+					Minibase.BufferManager.pinPage(dstId, dstPage, PIN_DISKIO);
+					newRid = dstPage.insertRecord(record);
+					free[dst] = dstPage.getFreeSpace(); // Less than needed, if it didn't fit
+					Minibase.BufferManager.unpinPage(dstId, (newRid != null) ? UNPIN_DIRTY : UNPIN_CLEAN);
+				}
+				if (newRid == null) {
+					break;
+				}
+
+				// Then delete the original (and the moved copy it was forwarded to)
+				srcPage.deleteRecord(oldRid);
+				added[dst]++;
+				moved++;
+				remap.accept(new RID(oldRid), newRid);
+				if (fwdRid != null) {
+					deleteMoved(fwdRid);
+					refreshEntry(fwdRid.pageno, pids, free, count);
+				}
+			}
+
+			// Update the directory, freeing the source page if emptied
+			for (int i = first; i <= dst && i < src; i++) {
+				if (added[i] > 0) {
+					updateDirEntry(new PageId(pids[i]), added[i], free[i]);
+					added[i] = 0;
+				}
+			}
+			Minibase.BufferManager.unpinPage(srcId, UNPIN_DIRTY);
+			if (moved > 0) {
+				updateDirEntry(srcId, -moved, srcPage.getFreeSpace());
+			}
+			if (dst < src) {
+				emptied++;
+			}
+		}
+
+		packDirectory();
+		return more;
+	} // public boolean vacuum(float fill, int maxPages, BiConsumer<RID, RID> remap)
+
+	/**
+	 * Refreshes a data page's free space in a vacuum's directory snapshot, after
+	 * a moved record was deleted from it. If that emptied and freed the page, its
+	 * snapshot entry is marked so it is neither filled nor emptied.
+	 */
+	protected void refreshEntry(PageId pageno, int[] pids, int[] free, int count) {
+		for (int i = 0; i < count; i++) {
+			if (pids[i] != pageno.pid) {
+				continue;
+			}
+			PageId dirId = new PageId();
+			DirPage dirPage = new DirPage();
+			int index = findDirEntry(pageno, dirId, dirPage);
+			if (index == INVALID_PAGEID) {
+				pids[i] = INVALID_PAGEID;
+				free[i] = -1;
+			} else {
+				free[i] = dirPage.getFreeCnt(index);
+				Minibase.BufferManager.unpinPage(dirId, UNPIN_CLEAN);
+			}
+			return;
+		}
+	} // protected void refreshEntry(PageId pageno, int[] pids, int[] free, int count)
+
 	/**
 	 * Returns the name of the heap file.
 	 */
@@ -214,6 +636,135 @@ public class HeapFile implements GlobalConst {
 		return fileName;
 	}
 
+	/**
+	 * Inserts a record into the last data page, appending a new data page (and
+	 * directory page) if it is full.
+	 * 
+	 * @return the RID of the new record
+	 */
+	protected RID appendRecord(byte[] record) {
+		if (tailDirId == null) {
+			findTail();
+		}
+		DirPage dirPage = new DirPage();
+		Minibase.BufferManager.pinPage(tailDirId, dirPage, PIN_DISKIO);
+
+		// Try the last data page
+		HFPage page = newDataPage();
+		PageId pageno = null;
+		RID rid = null;
+		if (tailIndex >= 0) {
+			pageno = dirPage.getPageId(tailIndex);
+			Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+			rid = page.insertRecord(record);
+			if (rid == null) {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			}
+		}
+
+		// Otherwise append a new one, on a new directory page if this one is full
+		int newPages = 0;
+		if (rid == null) {
+			if (dirPage.getEntryCnt() == DirPage.MAX_ENTRIES) {
+				DirPage newDirPage = new DirPage();
+				PageId newDirId = Minibase.BufferManager.newPage(newDirPage, 1);
+				newDirPage.setCurPage(newDirId);
+				newDirPage.setPrevPage(tailDirId);
+				newDirPage.setNextPage(dirPage.getNextPage());
+				if (dirPage.getNextPage().pid != INVALID_PAGEID) {
+					DirPage nextPage = new DirPage();
+					Minibase.BufferManager.pinPage(dirPage.getNextPage(), nextPage, PIN_DISKIO);
+					nextPage.setPrevPage(newDirId);
+					Minibase.BufferManager.unpinPage(nextPage.getCurPage(), UNPIN_DIRTY);
+				}
+				dirPage.setNextPage(newDirId);
+				Minibase.BufferManager.unpinPage(tailDirId, UNPIN_DIRTY);
+				tailDirId = newDirId;
+				dirPage = newDirPage;
+			}
+			page = newDataPage();
+			pageno = Minibase.BufferManager.newPage(page, 1);
+			page.setCurPage(pageno);
+			tailIndex = dirPage.getEntryCnt();
+			dirPage.setPageId(tailIndex, pageno);
+			dirPage.setRecCnt(tailIndex, (short) 0);
+			dirPage.setEntryCnt((short) (tailIndex + 1));
+			rid = page.insertRecord(record);
+			newPages = 1;
+		}
+
+		// Update the directory entry in place
+		dirPage.setRecCnt(tailIndex, (short) (dirPage.getRecCnt(tailIndex) + 1));
+		dirPage.setFreeCnt(tailIndex, page.getFreeSpace());
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		Minibase.BufferManager.unpinPage(tailDirId, UNPIN_DIRTY);
+		updateTotals(1, newPages);
+		return rid;
+	} // protected RID appendRecord(byte[] record)
+
+	/**
+	 * Finds the last directory page, and the last data page's entry on it.
+	 */
+	protected void findTail() {
+		PageId dirId = new PageId(headId.pid);
+		DirPage dirPage = new DirPage();
+		while (true) {
+			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_DISKIO);
+			PageId nextId = dirPage.getNextPage();
+			tailIndex = dirPage.getEntryCnt() - 1;
+			Minibase.BufferManager.unpinPage(dirId, UNPIN_CLEAN);
+			if (nextId.pid == INVALID_PAGEID) {
+				break;
+			}
+			dirId = nextId;
+		}
+		tailDirId = dirId;
+	} // protected void findTail()
+
+	/**
+	 * Inserts a record being moved from its home page. A moved record doesn't
+	 * count in its new page's directory entry, since its stub already counts.
+	 * 
+	 * @return the RID of the moved record
+	 */
+	protected RID insertMoved(byte[] record) {
+		PageId pageno = getAvailPage(record.length);
+		DataPage page = new DataPage();
+		Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+		RID rid = page.insertRecord(record, true);
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		updateDirEntry(pageno, 0, page.getFreeSpace());
+		return rid;
+	} // protected RID insertMoved(byte[] record)
+
+	/**
+	 * Pins the home page of the given record, and gets the RID its forwarding
+	 * stub refers to (or null if the record wasn't moved).
+	 * 
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid, in which case the page is left unpinned
+	 */
+	protected RID pinHome(RID rid, HFPage page) {
+		Minibase.BufferManager.pinPage(rid.pageno, page, PIN_DISKIO);
+		try {
+			return page.getForward(rid);
+		} catch (IllegalArgumentException e) {
+			Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_CLEAN);
+			throw e;
+		}
+	} // protected RID pinHome(RID rid, HFPage page)
+
+	/**
+	 * Deletes a moved record, whose stub has been deleted or redirected.
+	 */
+	protected void deleteMoved(RID rid) {
+		DataPage page = new DataPage();
+		Minibase.BufferManager.pinPage(rid.pageno, page, PIN_DISKIO);
+		page.deleteRecord(rid);
+		Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_DIRTY);
+		updateDirEntry(rid.pageno, 0, page.getFreeSpace());
+	} // protected void deleteMoved(RID rid)
+
 	/**
 	 * Searches the directory for the first data page with enough free space to
 	 * store a record of the given size. If no suitable page is found, this creates
@@ -227,9 +778,9 @@ public class HeapFile implements GlobalConst {
 
 		// For all pages
 		while (pageno.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_NOOP);
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
 			for (int i = 0; i < dirPage.getEntryCnt(); i++) {
-				if (dirPage.getFreeCnt(i) < reclen + DirPage.IX_REC_CNT) {
+				if (dirPage.getFreeCnt(i) < getSpaceNeeded(reclen)) {
 					continue;
 				}
 				freePid = dirPage.getPageId(i);
@@ -247,6 +798,29 @@ public class HeapFile implements GlobalConst {
 		return freePid;
 	} // protected PageId getAvailPage(int reclen)
 
+	/**
+	 * Gets the page type of the file's head directory page, which tells the file
+	 * formats apart.
+	 */
+	protected short getHeadType() {
+		return DIR_PAGE;
+	}
+
+	/**
+	 * Gets the free space (as counted in directory entries) a data page needs to
+	 * store a record of the given size.
+	 */
+	protected int getSpaceNeeded(int reclen) {
+		return HFPage.recordSpace(reclen) + HFPage.SLOT_SIZE;
+	}
+
+	/**
+	 * Creates an empty data page of the file's page format.
+	 */
+	protected HFPage newDataPage() {
+		return new DataPage();
+	}
+
 	/**
 	 * Helper method for finding directory entries of data pages. A more efficient
 	 * implementation would start with a directory page that is in the buffer pool.
@@ -264,7 +838,7 @@ public class HeapFile implements GlobalConst {
 
 		// For all pages
 		while (dirId.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_NOOP);
+			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_DISKIO);
 			for (int i = 0; i < dirPage.getEntryCnt(); i++) {
 				if (pageno.pid == dirPage.getPageId(i).pid) {
 					return i;
@@ -279,7 +853,9 @@ public class HeapFile implements GlobalConst {
 
 	/**
 	 * Updates the directory entry for the given data page. If the data page becomes
-	 * empty, remove it. If this causes a dir page to become empty, remove it
+	 * empty, remove it. If this causes a dir page to become empty, remove it. A
+	 * page whose records were all deleted may still hold records moved there from
+	 * other pages (which aren't counted), so it is checked before being removed.
 	 * 
 	 * @param pageno
 	 *          identifies the data page whose directory entry will be updated
@@ -292,9 +868,13 @@ public class HeapFile implements GlobalConst {
 		PageId dirId = new PageId();
 		DirPage dirPage = new DirPage();
 
+		if (deltaRec != 0) {
+			updateTotals(deltaRec, 0);
+		}
+
 		int index = findDirEntry(pageno, dirId, dirPage);
 		int reccnt = dirPage.getRecCnt(index) + deltaRec;
-		if (reccnt < 1) {
+		if (reccnt < 1 && isEmptyPage(pageno)) {
 			deletePage(pageno, dirId, dirPage, index);
 		} else {
 			dirPage.setRecCnt(index, (short)reccnt);
@@ -303,6 +883,76 @@ public class HeapFile implements GlobalConst {
 		}
 	} // protected void updateEntry(PageId pageno, int deltaRec, int deltaFree)
 
+	/**
+	 * Adjusts the file's total record and data page counts on the head directory
+	 * page.
+	 */
+	protected void updateTotals(int deltaRec, int deltaPages) {
+		DirPage dirPage = new DirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		dirPage.setRecTotal(dirPage.getRecTotal() + deltaRec);
+		dirPage.setPageTotal(dirPage.getPageTotal() + deltaPages);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+	} // protected void updateTotals(int deltaRec, int deltaPages)
+
+	/**
+	 * Packs the directory entries into as few directory pages as possible, freeing
+	 * the directory pages left empty.
+	 */
+	protected void packDirectory() {
+		tailDirId = null; // Directory entries move
+		PageId curId = new PageId(headId.pid);
+		DirPage curPage = new DirPage();
+		DirPage nextPage = new DirPage();
+		Minibase.BufferManager.pinPage(curId, curPage, PIN_DISKIO);
+		boolean dirty = false;
+
+		while (curPage.getNextPage().pid != INVALID_PAGEID) {
+			PageId nextId = curPage.getNextPage();
+			Minibase.BufferManager.pinPage(nextId, nextPage, PIN_DISKIO);
+
+			// Fill the current page from the next one
+			int room = DirPage.MAX_ENTRIES - curPage.getEntryCnt();
+			int moving = Math.min(room, nextPage.getEntryCnt());
+			if (moving > 0) {
+				nextPage.moveEntries(curPage, moving);
+				dirty = true;
+			}
+
+			if (nextPage.getEntryCnt() == 0) { // Unlink and free the next page
+				PageId afterId = nextPage.getNextPage();
+				curPage.setNextPage(afterId);
+				if (afterId.pid != INVALID_PAGEID) {
+					DirPage afterPage = new DirPage();
+					Minibase.BufferManager.pinPage(afterId, afterPage, PIN_DISKIO);
+					afterPage.setPrevPage(curId);
+					Minibase.BufferManager.unpinPage(afterId, UNPIN_DIRTY);
+				}
+				Minibase.BufferManager.unpinPage(nextId, UNPIN_CLEAN);
+				Minibase.BufferManager.freePage(nextId);
+				dirty = true;
+			} else { // Move on to the next page
+				Minibase.BufferManager.unpinPage(curId, dirty ? UNPIN_DIRTY : UNPIN_CLEAN);
+				curId = nextId;
+				curPage.setPage(nextPage);
+				dirty = moving > 0;
+			}
+		}
+
+		Minibase.BufferManager.unpinPage(curId, dirty ? UNPIN_DIRTY : UNPIN_CLEAN);
+	} // protected void packDirectory()
+
+	/**
+	 * Checks whether the given data page has no records at all.
+	 */
+	protected boolean isEmptyPage(PageId pageno) {
+		HFPage page = newDataPage();
+		Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+		boolean empty = page.isEmpty();
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+		return empty;
+	} // protected boolean isEmptyPage(PageId pageno)
+
 	/**
 	 * Inserts a new empty data page and its directory entry into the heap file. If
 	 * necessary, this also inserts a new directory page. Leaves all data and
@@ -316,7 +966,7 @@ public class HeapFile implements GlobalConst {
 		int index = 0;
 
 		while (dirId.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_NOOP);
+			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_DISKIO);
 
 			if (dirPage.getEntryCnt() < DirPage.MAX_ENTRIES) { // There is space
 				index = dirPage.getEntryCnt();
@@ -334,15 +984,18 @@ public class HeapFile implements GlobalConst {
 					dirId = newDirId;
 					nextId = newDirId;
 					dirPage = newDirPage;
-				}
 
-				Minibase.BufferManager.unpinPage(dirId, UNPIN_CLEAN);
+					// the new page was pinned clean, so it must be unpinned dirty
+					Minibase.BufferManager.unpinPage(dirId, UNPIN_DIRTY);
+				} else {
+					Minibase.BufferManager.unpinPage(dirId, UNPIN_CLEAN);
+				}
 				dirId = nextId;
 			}
 		}
 
 		// Insert a new page & update the directory
-		DataPage dataPage = new DataPage();
+		HFPage dataPage = newDataPage();
 		PageId dataId = Minibase.BufferManager.newPage(dataPage, 1);
 		dataPage.setCurPage(dataId);
 
@@ -353,6 +1006,7 @@ public class HeapFile implements GlobalConst {
 
 		Minibase.BufferManager.unpinPage(dataId, UNPIN_DIRTY);
 		Minibase.BufferManager.unpinPage(dirId, UNPIN_DIRTY);
+		updateTotals(0, 1);
 		return dataId;
 	} // protected PageId insertPage()
 
@@ -370,7 +1024,9 @@ public class HeapFile implements GlobalConst {
 	 *          input the data page's entry on the directory page
 	 */
 	protected void deletePage(PageId pageno, PageId dirId, DirPage dirPage, int index) {
+		tailDirId = null; // Directory entries move
 		Minibase.BufferManager.freePage(pageno);
+		updateTotals(0, -1);
 		dirPage.compact(index);
 
 		int count = dirPage.getEntryCnt();
@@ -380,7 +1036,7 @@ public class HeapFile implements GlobalConst {
 			PageId prevId = dirPage.getPrevPage();
 			PageId nextId = dirPage.getNextPage();
 
-			Minibase.BufferManager.pinPage(prevId, page, PIN_NOOP);
+			Minibase.BufferManager.pinPage(prevId, page, PIN_DISKIO);
 			page.setNextPage(nextId);
 			Minibase.BufferManager.unpinPage(prevId, UNPIN_DIRTY);
 
@@ -392,4 +1048,30 @@ public class HeapFile implements GlobalConst {
 		}
 	} // protected void deletePage(PageId, PageId, DirPage, int)
 
-} // public class HeapFile implements GlobalConst
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Frees the pages of a temporary file after it leaks.
+	 */
+	protected static class TempFile implements Runnable {
+
+		/** First page of the file's directory. */
+		protected final PageId headId;
+
+		/**
+		 * Constructs the release action for the given file.
+		 */
+		protected TempFile(PageId headId) {
+			this.headId = new PageId(headId.pid);
+		}
+
+		/**
+		 * Frees the file's pages.
+		 */
+		public void run() {
+			freePages(headId);
+		}
+
+	} // protected static class TempFile implements Runnable
+
+} // public class HeapFile implements GlobalConst, AutoCloseable
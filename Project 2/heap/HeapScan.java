@@ -4,13 +4,31 @@ import global.GlobalConst;
 import global.Minibase;
 import global.PageId;
 import global.RID;
+import global.ResourceCleaner;
 
 /**
  * A HeapScan object is created only through the function openScan() in the
  * HeapFile class. It supports the getNext interface which will simply retrieve
- * the next record in the file.
+ * the next record in the file.<br>
+ * <br>
+ * For tight loops, the scan may also be used as a cursor: next() positions the
+ * scan on the next record without copying it, and the record is then read in
+ * place from the pinned page via getPageData(), getRecordOffset() and
+ * getRecordLength(). Callers copy the record (i.e. via getRecord()) only if
+ * they keep it past the next call to next().<br>
+ * <br>
+ * A scan may be given a FieldPredicate, in which case records that don't
+ * qualify are skipped on the data page itself, without being copied.<br>
+ * <br>
+ * Records moved to another page are returned where their forwarding stubs are,
+ * with their original RIDs; the moved record's page is pinned (as one extra
+ * page) while the scan is positioned on it.<br>
+ * <br>
+ * A scan should be closed (e.g. with try-with-resources) as soon as it is no
+ * longer needed. If it becomes unreachable while still open, its pages are
+ * unpinned later and the leak is reported (see ResourceCleaner).
  */
-public class HeapScan implements GlobalConst {
+public class HeapScan implements GlobalConst, AutoCloseable {
 
 	/** Currently pinned directory page (outer loop). */
 	protected DirPage dirPage;
@@ -22,10 +40,31 @@ public class HeapScan implements GlobalConst {
 	protected int index;
 
 	/** Currently pinned data page (inner loop). */
-	protected DataPage dataPage;
+	protected HFPage dataPage;
 
-	/** RID of the current record on the data page. */
-	protected RID curRid;
+	/** Slot number of the current record on the data page (EMPTY_SLOT if none). */
+	protected int curSlot;
+
+	/** Selection predicate records must satisfy, or null for all records. */
+	protected FieldPredicate pred;
+
+	/** Currently pinned page of a forwarded record, or null if none. */
+	protected DataPage fwdPage;
+
+	/** Buffer holding the current record (i.e. of dataPage or fwdPage). */
+	protected byte[] recData;
+
+	/** Offset of the current record within recData. */
+	protected int recOffset;
+
+	/** Length of the current record. */
+	protected int recLength;
+
+	/** Ids of the pinned pages. */
+	protected Pins pins;
+
+	/** Registration of the scan's pins with the resource cleaner. */
+	protected ResourceCleaner.Handle handle;
 
 	// --------------------------------------------------------------------------
 
@@ -34,31 +73,30 @@ public class HeapScan implements GlobalConst {
 	 * iterator fields.
 	 */
 	protected HeapScan(HeapFile hf) {
+		this(hf, null);
+	}
+
+	/**
+	 * Constructs a file scan that only returns records satisfying the given
+	 * predicate (or all records, if null).
+	 */
+	protected HeapScan(HeapFile hf, FieldPredicate pred) {
 
 		// pin the head page and get the count
 		dirPage = new DirPage();
 		Minibase.BufferManager.pinPage(hf.headId, dirPage, PIN_DISKIO);
 		count = dirPage.getEntryCnt();
+		pins = new Pins();
+		pins.dirId = new PageId(hf.headId.pid);
+		handle = ResourceCleaner.register(this, pins, "HeapScan");
 
 		// initialize other data fields
 		index = -1;
-		dataPage = null;
-		curRid = null;
-
-	} // protected HeapScan(HeapFile hf)
+		dataPage = hf.newDataPage();
+		curSlot = EMPTY_SLOT;
+		this.pred = pred;
 
-	/**
-	 * Called by the garbage collector when there are no more references to the
-	 * object; closes the scan if it's still open.
-	 */
-	protected void finalize() throws Throwable {
-
-		// close the scan, if open
-		if (dirPage != null) {
-			close();
-		}
-
-	} // protected void finalize() throws Throwable
+	} // protected HeapScan(HeapFile hf, FieldPredicate pred)
 
 	/**
 	 * Closes the file scan, releasing any pinned pages.
@@ -66,19 +104,16 @@ public class HeapScan implements GlobalConst {
 	public void close() {
 
 		// unpin the pages where applicable
-		if (dataPage != null) {
-			Minibase.BufferManager.unpinPage(dataPage.getCurPage(), UNPIN_CLEAN);
-			dataPage = null;
-		}
-		if (dirPage != null) {
-			Minibase.BufferManager.unpinPage(dirPage.getCurPage(), UNPIN_CLEAN);
-			dirPage = null;
-		}
+		handle.close();
+		pins.run();
+		fwdPage = null;
+		dataPage = null;
+		dirPage = null;
 
 		// invalidate the other fields
 		count = -1;
 		index = -1;
-		curRid = null;
+		curSlot = EMPTY_SLOT;
 
 	} // public void close()
 
@@ -93,80 +128,248 @@ public class HeapScan implements GlobalConst {
 	 */
 	public byte[] getNext(RID rid) {
 
-		// If we are starting the scan, index = -1; dataPage = null; curRid = null;
-		// If we are iterating within a data page, curRid != null
-		// If we have just finished a data page, dataPage !=null and is pinned, curRid =
-		// null
-
-		// If we are iterating within the data page, increment curRid
-		// If it is nonnull, return a record
-		if (curRid != null) {
-			curRid = dataPage.nextRecord(curRid);
-			if (curRid != null) {
-				rid.copyRID(curRid);
-				return dataPage.selectRecord(rid);
-			}
+		// advance the cursor, and copy out the record it lands on
+		if (!next()) {
+			return null;
 		}
+		rid.pageno = dataPage.getCurPage();
+		rid.slotno = curSlot;
+		return getRecord();
 
-		// Here curRid is null, either because we just began the scan, because we
-		// just finished scanning a directory and data page, or because
-		// we just finished a data page within a dir page. In the first case dataPage ==
-		// null.
-		// If dataPage !=null, we must unpin it only if we move on to another data page.
-
-		// Look for the next data page.
-		// If there is another data entry in this dir page, process its data page
-		if (index < count - 1) {
-
-			// minor optimization
-			if (dataPage == null) {// we just started the scan
-				dataPage = new DataPage();
-			} else {// we are moving on to a new data page, so unpin the old one
-				Minibase.BufferManager.unpinPage(dataPage.getCurPage(), UNPIN_CLEAN);
-			}
+	} // public byte[] getNext(RID rid)
+
+	/**
+	 * Advances the scan to the next (qualifying) record in the file without
+	 * copying it. No objects are allocated while the scan stays on the same data
+	 * page.
+	 * 
+	 * @return true if the scan is positioned on a record, false if there are no
+	 *         more records
+	 * @throws IllegalStateException
+	 *           if it encounters an empty data page
+	 */
+	public boolean next() {
 
-			// pin the next data page
-			index++;
-			Minibase.BufferManager.pinPage(dirPage.getPageId(index), dataPage, PIN_DISKIO);
-
-			// reset the current record rid, get the first record and return it.
-			// The scan is iterating within a data page.
-			curRid = dataPage.firstRecord();
-			if (curRid != null) {
-				rid.copyRID(curRid);
-				return dataPage.selectRecord(rid);
-			} else {
-				int pageno = dataPage.getCurPage().pid;
-				throw new IllegalStateException("Data page " + pageno + " is empty.");
+		// skip records that don't satisfy the predicate, if any
+		while (advance()) {
+			locate();
+			if (pred == null || pred.eval(recData, recOffset, recLength)) {
+				return true;
 			}
-			// control never gets here
+		}
+		unpinForward();
+		return false;
 
-		} // if more entries
+	} // public boolean next()
+
+	/**
+	 * Advances the scan to the next record in the file, qualifying or not.
+	 * 
+	 * @return true if the scan is positioned on a record, false if there are no
+	 *         more records
+	 * @throws IllegalStateException
+	 *           if it encounters an empty data page
+	 */
+	protected boolean advance() {
 
-		// Here curRid is null, either because we just began the scan or because
-		// we just finished a data page and it was the last data page in a directory
-		// page. In in the former case dataPage == null.
-		// If dataPage !=null, we must unpin it only if we move on to another data page.
+		// If we are iterating within a data page, curSlot != EMPTY_SLOT
+		// If we have just finished a data page, dataPage != null and is pinned
 
-		// move on to the next directory page
-		PageId nextId = dirPage.getNextPage();
-		if (nextId.pid != INVALID_PAGEID) {
+		// if iterating within the data page, try the next slot
+		if (curSlot != EMPTY_SLOT) {
+			curSlot = dataPage.nextSlot(curSlot);
+			if (curSlot != EMPTY_SLOT) {
+				return true;
+			}
+		}
 
-			// unpin the current dir page, pin the next dir page
-			Minibase.BufferManager.unpinPage(dirPage.getCurPage(), UNPIN_CLEAN);
-			Minibase.BufferManager.pinPage(nextId, dirPage, PIN_DISKIO);
+		// otherwise look for the next data page (a closed scan has no more)
+		while (dirPage != null) {
+
+			// if there is another data entry in this dir page, process its data page
+			if (index < count - 1) {
+
+				// if moving on to a new data page, unpin the old one
+				if (pins.dataId != null) {
+					Minibase.BufferManager.unpinPage(pins.dataId, UNPIN_CLEAN);
+				}
+
+				// pin the next data page and position on its first record
+				index++;
+				pins.dataId = dirPage.getPageId(index);
+				Minibase.BufferManager.pinPage(pins.dataId, dataPage, PIN_DISKIO);
+				// (a page may hold only records moved from other pages)
+				curSlot = dataPage.nextSlot(EMPTY_SLOT);
+				if (curSlot != EMPTY_SLOT) {
+					return true;
+				}
+				if (dataPage.isEmpty()) {
+					int pageno = dataPage.getCurPage().pid;
+					throw new IllegalStateException("Data page " + pageno + " is empty.");
+				}
+				continue;
+
+			} // if more entries
+
+			// otherwise move on to the next directory page, if any
+			PageId nextId = dirPage.getNextPage();
+			if (nextId.pid == INVALID_PAGEID) {
+				break;
+			}
 
-			// reset the counters and try again
+			// unpin the current dir page, pin the next dir page, and reset the counters
+			Minibase.BufferManager.unpinPage(pins.dirId, UNPIN_CLEAN);
+			pins.dirId = nextId;
+			Minibase.BufferManager.pinPage(pins.dirId, dirPage, PIN_DISKIO);
 			count = dirPage.getEntryCnt();
 			index = -1;
-			curRid = null;
-			return getNext(rid);
 
-		} // if more dir pages
+		} // while
 
 		// otherwise, no more records
-		return null;
+		return false;
 
-	} // public byte[] getNext(RID rid)
+	} // protected boolean advance()
+
+	/**
+	 * Locates the current record, following its forwarding stub if necessary.
+	 */
+	protected void locate() {
+
+		// release the previous forwarded record's page, if any
+		unpinForward();
+
+		// if the record is on the current data page
+		recLength = dataPage.getSlotLength(curSlot);
+		if (recLength != HFPage.FORWARD_SLOT) {
+			recData = dataPage.getData();
+			recOffset = dataPage.getSlotOffset(curSlot);
+			return;
+		}
+
+		// otherwise pin the page it was moved to
+		RID fwdRid = new RID(dataPage.getData(), dataPage.getSlotOffset(curSlot));
+		fwdPage = new DataPage();
+		pins.fwdId = fwdRid.pageno;
+		Minibase.BufferManager.pinPage(pins.fwdId, fwdPage, PIN_DISKIO);
+		recData = fwdPage.getData();
+		recOffset = fwdPage.getSlotOffset(fwdRid.slotno);
+		recLength = fwdPage.getSlotLength(fwdRid.slotno);
+
+	} // protected void locate()
+
+	/**
+	 * Unpins the page of the current forwarded record, if any.
+	 */
+	protected void unpinForward() {
+		if (fwdPage != null) {
+			Minibase.BufferManager.unpinPage(pins.fwdId, UNPIN_CLEAN);
+			pins.fwdId = null;
+			fwdPage = null;
+		}
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Gets the buffer of the pinned page holding the current record. The
+	 * buffer belongs to the buffer pool; it must not be modified, and is only
+	 * valid until the next call to next() or close().
+	 * 
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public byte[] getPageData() {
+		checkCursor();
+		return recData;
+	}
+
+	/**
+	 * Gets the offset of the current record within getPageData().
+	 * 
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public int getRecordOffset() {
+		checkCursor();
+		return recOffset;
+	}
+
+	/**
+	 * Gets the length of the current record (in bytes).
+	 * 
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public int getRecordLength() {
+		checkCursor();
+		return recLength;
+	}
+
+	/**
+	 * Copies the id of the current record into the given RID, reusing its PageId.
+	 * 
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public void getRID(RID rid) {
+		checkCursor();
+		rid.pageno.pid = dataPage.getIntValue(HFPage.CUR_PAGE);
+		rid.slotno = curSlot;
+	}
+
+	/**
+	 * Gets a copy of the current record; use this to keep the record.
+	 * 
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public byte[] getRecord() {
+		checkCursor();
+		byte[] record = new byte[recLength];
+		System.arraycopy(recData, recOffset, record, 0, recLength);
+		return record;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	protected void checkCursor() {
+		if (curSlot == EMPTY_SLOT) {
+			throw new IllegalStateException("Scan is not positioned on a record");
+		}
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Ids of the pages a scan has pinned (or null), kept apart from the scan so
+	 * that the pages can be unpinned after the scan leaks.
+	 */
+	protected static class Pins implements Runnable {
+
+		/** Id of the pinned directory page. */
+		protected PageId dirId;
+
+		/** Id of the pinned data page. */
+		protected PageId dataId;
+
+		/** Id of the pinned page of a forwarded record. */
+		protected PageId fwdId;
+
+		/**
+		 * Unpins the pages.
+		 */
+		public void run() {
+			for (PageId pageno : new PageId[] { fwdId, dataId, dirId }) {
+				if (pageno != null) {
+					Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+				}
+			}
+			fwdId = dataId = dirId = null;
+		}
+
+	} // protected static class Pins implements Runnable
 
-} // public class HeapScan implements GlobalConst
+} // public class HeapScan implements GlobalConst, AutoCloseable
@@ -0,0 +1,223 @@
+package heap;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.PageId;
+import global.RID;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the records of a heap file, created only through the
+ * function spliterator() in the HeapFile class. The data pages listed in the
+ * directory are divided into ranges that can be scanned independently (i.e. by
+ * parallel streams or a fork/join pool). <br>
+ * <br>
+ * Only pinning and unpinning is serialized, by the buffer manager; the records
+ * are copied out of pinned pages and consumed concurrently. Each data page is
+ * pinned only while its records are being copied out, so no pages are left
+ * pinned if a stream is abandoned. The heap file must not be modified while it
+ * is being scanned.
+ */
+class HeapSpliterator implements Spliterator<byte[]>, GlobalConst {
+
+	/** The file being scanned. */
+	protected HeapFile hf;
+
+	/** Ids of all the data pages in the file, in directory order. */
+	protected int[] pids;
+
+	/** Running record counts; the records before pids[i] number recCnts[i]. */
+	protected long[] recCnts;
+
+	/** Index of the next data page to scan. */
+	protected int lo;
+
+	/** Index past the last data page to scan. */
+	protected int hi;
+
+	/** Records copied from the current data page but not yet consumed. */
+	protected ArrayDeque<byte[]> pending;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Constructs a spliterator over every data page in the file, by reading the
+	 * data page ids and record counts from its directory.
+	 */
+	protected HeapSpliterator(HeapFile hf) {
+
+		// collect the directory entries of each data page
+		int size = 0;
+		pids = new int[DirPage.MAX_ENTRIES];
+		recCnts = new long[DirPage.MAX_ENTRIES + 1];
+		PageId dirId = new PageId(hf.headId.pid);
+		DirPage dirPage = new DirPage();
+		while (dirId.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(dirId, dirPage, PIN_DISKIO);
+			int entryCnt = dirPage.getEntryCnt();
+			if (size + entryCnt > pids.length) {
+				pids = Arrays.copyOf(pids, (size + entryCnt) * 2);
+				recCnts = Arrays.copyOf(recCnts, (size + entryCnt) * 2 + 1);
+			}
+			for (int i = 0; i < entryCnt; i++, size++) {
+				pids[size] = dirPage.getPageId(i).pid;
+				recCnts[size + 1] = recCnts[size] + dirPage.getRecCnt(i);
+			}
+			Minibase.BufferManager.unpinPage(dirId, UNPIN_CLEAN);
+			dirId.copyPageId(dirPage.getNextPage());
+		}
+
+		// initially covers all the data pages
+		this.hf = hf;
+		lo = 0;
+		hi = size;
+		pending = new ArrayDeque<byte[]>();
+
+	} // protected HeapSpliterator(HeapFile hf)
+
+	/**
+	 * Constructs a spliterator over the given range of another's data pages.
+	 */
+	protected HeapSpliterator(HeapSpliterator parent, int lo, int hi) {
+		this.hf = parent.hf;
+		this.pids = parent.pids;
+		this.recCnts = parent.recCnts;
+		this.lo = lo;
+		this.hi = hi;
+		this.pending = new ArrayDeque<byte[]>();
+	}
+
+	/**
+	 * Narrows a new spliterator to a random sample of its data pages, each chosen
+	 * with the given probability (but at least one, if any), keeping them in
+	 * directory order.
+	 */
+	protected void sample(double fraction, long seed) {
+		Random random = new Random(seed);
+		long[] sampled = new long[hi + 1];
+		int size = 0;
+		for (int i = 0; i < hi; i++) {
+			if (random.nextDouble() < fraction) {
+				pids[size] = pids[i];
+				sampled[size + 1] = sampled[size] + recCnts[i + 1] - recCnts[i];
+				size++;
+			}
+		}
+		if (size == 0 && hi > 0) {
+			int i = random.nextInt(hi);
+			pids[0] = pids[i];
+			sampled[1] = recCnts[i + 1] - recCnts[i];
+			size = 1;
+		}
+		recCnts = sampled;
+		hi = size;
+	} // protected void sample(double fraction, long seed)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Consumes the next record, copying the next data page's records if needed.
+	 */
+	public boolean tryAdvance(Consumer<? super byte[]> action) {
+		if (pending.isEmpty()) {
+			if (lo == hi) {
+				return false;
+			}
+			scanPage(pids[lo++], pending::add);
+		}
+		action.accept(pending.poll());
+		return true;
+	}
+
+	/**
+	 * Consumes all the remaining records, one data page at a time.
+	 */
+	public void forEachRemaining(Consumer<? super byte[]> action) {
+		while (!pending.isEmpty()) {
+			action.accept(pending.poll());
+		}
+		while (lo < hi) {
+			scanPage(pids[lo++], action);
+		}
+	}
+
+	/**
+	 * Splits off the first half of the remaining data pages, or returns null if
+	 * the current page has already been started or too few pages remain.
+	 */
+	public Spliterator<byte[]> trySplit() {
+		int mid = (lo + hi) >>> 1;
+		if (!pending.isEmpty() || mid == lo) {
+			return null;
+		}
+		HeapSpliterator prefix = new HeapSpliterator(this, lo, mid);
+		lo = mid;
+		return prefix;
+	}
+
+	/**
+	 * Gets the exact number of remaining records, according to the directory.
+	 */
+	public long estimateSize() {
+		return recCnts[hi] - recCnts[lo] + pending.size();
+	}
+
+	/**
+	 * Records are never null, and counts are exact for every split.
+	 */
+	public int characteristics() {
+		return NONNULL | SIZED | SUBSIZED;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Pins the given data page, passes a copy of each of its records to the
+	 * action, and unpins the page.
+	 */
+	protected void scanPage(int pid, Consumer<? super byte[]> action) {
+
+		// copy the records while holding the pin
+		PageId pageno = new PageId(pid);
+		HFPage dataPage = hf.newDataPage();
+		byte[][] records;
+		Minibase.BufferManager.pinPage(pageno, dataPage, PIN_DISKIO);
+		try {
+			int n = 0;
+			RID rid = new RID(pageno, EMPTY_SLOT);
+			records = new byte[dataPage.getSlotCount()][];
+			for (int slot = dataPage.nextSlot(EMPTY_SLOT); slot != EMPTY_SLOT; slot = dataPage.nextSlot(slot)) {
+				rid.slotno = slot;
+				RID fwdRid = dataPage.getForward(rid);
+				records[n++] = (fwdRid == null) ? dataPage.selectRecord(rid) : selectForward(fwdRid);
+			}
+		} finally {
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+		}
+
+		// then consume them without any pages pinned
+		for (int i = 0; i < records.length && records[i] != null; i++) {
+			action.accept(records[i]);
+		}
+
+	} // protected void scanPage(int pid, Consumer<? super byte[]> action)
+
+	/**
+	 * Gets a copy of a record that was moved to another page.
+	 */
+	protected byte[] selectForward(RID rid) {
+		DataPage page = new DataPage();
+		Minibase.BufferManager.pinPage(rid.pageno, page, PIN_DISKIO);
+		try {
+			return page.selectRecord(rid);
+		} finally {
+			Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_CLEAN);
+		}
+	}
+
+} // class HeapSpliterator implements Spliterator<byte[]>, GlobalConst
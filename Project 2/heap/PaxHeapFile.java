@@ -0,0 +1,190 @@
+package heap;
+
+import global.Convert;
+import global.Minibase;
+import global.PageId;
+import global.RID;
+
+import java.util.Arrays;
+
+/**
+ * A heap file whose records all have the same fixed-width columns, stored on
+ * PAX data pages (see PaxPage) instead of slotted pages. The directory works as
+ * for other heap files, except that its free counts are in record slots. Since
+ * records never change size, they are never forwarded.<br>
+ * <br>
+ * The column widths are saved on a metadata page that the head directory page
+ * refers to, and the head page has its own type, so the file can't be opened
+ * with other widths or as a HeapFile of slotted pages (nor can a HeapFile be
+ * opened as a PAX file). Besides the usual scans, which gather whole records, a
+ * PaxScan reads only the requested columns.
+ */
+public class PaxHeapFile extends HeapFile {
+
+	/** Width of each column (in bytes). */
+	protected final int[] widths;
+
+	/** Length of a whole record (in bytes). */
+	protected final int recLength;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Opens or creates the named PAX heap file (see HeapFile), whose records have
+	 * the given column widths.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if a width is not positive, a record doesn't fit on a page, or the
+	 *           named file has other widths or is not a PAX file
+	 */
+	public PaxHeapFile(String name, int[] widths) {
+		super(checkWidths(name, widths));
+		this.recLength = new PaxPage(widths).recLength;
+		this.widths = widths.clone();
+
+		// save the widths with a new file, or check them against an existing one
+		DirPage headPage = new DirPage();
+		Minibase.BufferManager.pinPage(headId, headPage, PIN_DISKIO);
+		PageId metaId = headPage.getPrevPage();
+		if (metaId.pid == INVALID_PAGEID) {
+			DataPage metaPage = new DataPage();
+			metaId = Minibase.BufferManager.newPage(metaPage, 1);
+			metaPage.setCurPage(metaId);
+			metaPage.insertRecord(toBytes(widths));
+			Minibase.BufferManager.unpinPage(metaId, UNPIN_DIRTY);
+			headPage.setPrevPage(metaId);
+			Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+			return;
+		}
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+		DataPage metaPage = new DataPage();
+		Minibase.BufferManager.pinPage(metaId, metaPage, PIN_DISKIO);
+		byte[] saved = metaPage.selectRecord(metaPage.firstRecord());
+		Minibase.BufferManager.unpinPage(metaId, UNPIN_CLEAN);
+		if (!Arrays.equals(saved, toBytes(widths))) {
+			throw new IllegalArgumentException("File " + name + " has columns of other widths");
+		}
+
+	} // public PaxHeapFile(String name, int[] widths)
+
+	/**
+	 * Validates the column widths before the file is opened.
+	 *
+	 * @return the name of the file
+	 * @throws IllegalArgumentException
+	 *           if a width is not positive, or a record doesn't fit on a page
+	 */
+	protected static String checkWidths(String name, int[] widths) {
+		new PaxPage(widths);
+		return name;
+	}
+
+	/**
+	 * Gets the saved form of the given column widths; the number of columns,
+	 * followed by each width.
+	 */
+	protected static byte[] toBytes(int[] widths) {
+		byte[] data = new byte[2 + widths.length * 2];
+		Convert.setShortValue((short) widths.length, 0, data);
+		for (int i = 0; i < widths.length; i++) {
+			Convert.setShortValue((short) widths[i], 2 + i * 2, data);
+		}
+		return data;
+	}
+
+	/**
+	 * Gets the number of columns in each record.
+	 */
+	public int getColumnCnt() {
+		return widths.length;
+	}
+
+	/**
+	 * Gets the width of the given column (in bytes).
+	 */
+	public int getColumnWidth(int column) {
+		return widths[column];
+	}
+
+	/**
+	 * Inserts a new record into the file and returns its RID (at the end of the
+	 * file, in append mode).
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the record has the wrong length
+	 */
+	public RID insertRecord(byte[] record) {
+		if (record.length != recLength) {
+			throw new IllegalArgumentException("Invalid record size");
+		}
+		return super.insertRecord(record);
+	}
+
+	/**
+	 * Updates the specified record in the heap file, in place.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid or the record has the wrong length
+	 */
+	public void updateRecord(RID rid, byte[] newRecord) {
+		if (newRecord.length != recLength) {
+			throw new IllegalArgumentException("Invalid record size");
+		}
+		super.updateRecord(rid, newRecord);
+	}
+
+	/**
+	 * Initiates a scan of the given columns of the file's records; each record
+	 * returned consists of just those columns, in the given order.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if a column number is invalid
+	 */
+	public PaxScan openColumnScan(int... columns) {
+		for (int column : columns) {
+			if (column < 0 || column >= widths.length) {
+				throw new IllegalArgumentException("Invalid column number");
+			}
+		}
+		return new PaxScan(this, columns);
+	}
+
+	/**
+	 * Initiates a sequential scan of the whole records of the file.
+	 */
+	public HeapScan openScan() {
+		return new PaxHeapScan(this, null);
+	}
+
+	/**
+	 * Initiates a sequential scan of the whole records of the file that satisfy
+	 * the given predicate; the predicate is evaluated on the gathered records.
+	 */
+	public HeapScan openScan(FieldPredicate pred) {
+		return new PaxHeapScan(this, pred);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * The head directory page of a PAX file has its own type.
+	 */
+	protected short getHeadType() {
+		return PAX_DIR_PAGE;
+	}
+
+	/**
+	 * Free counts of PAX pages are in record slots, so one is enough.
+	 */
+	protected int getSpaceNeeded(int reclen) {
+		return 1;
+	}
+
+	/**
+	 * Creates an empty PAX data page.
+	 */
+	protected HFPage newDataPage() {
+		return new PaxPage(widths);
+	}
+
+} // public class PaxHeapFile extends HeapFile
@@ -0,0 +1,44 @@
+package heap;
+
+/**
+ * A HeapScan over the whole records of a PAX file, created only through the
+ * function openScan() in the PaxHeapFile class. A record with one column is read
+ * in place from the pinned page; otherwise its columns are gathered from their
+ * minipages into a buffer that the scan reuses, so getPageData() and
+ * getRecordOffset() work the same as for other heap files.
+ */
+class PaxHeapScan extends HeapScan {
+
+	/** Buffer the current record's columns are gathered into. */
+	protected byte[] gathered;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Constructs a scan of the given PAX file that only returns records
+	 * satisfying the given predicate (or all records, if null).
+	 */
+	protected PaxHeapScan(PaxHeapFile hf, FieldPredicate pred) {
+		super(hf, pred);
+		gathered = new byte[hf.recLength];
+	}
+
+	/**
+	 * Locates the current record, gathering its columns if there are several.
+	 */
+	protected void locate() {
+		PaxPage page = (PaxPage) dataPage;
+		recLength = page.recLength;
+		if (page.widths.length == 1) {
+			recData = page.getData();
+			recOffset = page.getColumnOffset(curSlot, 0);
+		} else {
+			for (int i = 0, n = 0; i < page.widths.length; n += page.widths[i++]) {
+				page.readColumn(curSlot, i, gathered, n);
+			}
+			recData = gathered;
+			recOffset = 0;
+		}
+	} // protected void locate()
+
+} // class PaxHeapScan extends HeapScan
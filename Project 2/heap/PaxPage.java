@@ -0,0 +1,245 @@
+package heap;
+
+import global.PageId;
+import global.RID;
+
+/**
+ * A PAX (Partition Attributes Across) data page, for heap files whose records
+ * all have the same fixed-width columns. Instead of storing each record
+ * contiguously, the page is divided into one minipage per column, and each
+ * column value is stored in its minipage at the record's slot number. A scan
+ * that needs only some of the columns then touches only their minipages.<br>
+ * <br>
+ * The header is the same as for other heap file pages, except that the slot
+ * count holds the (fixed) number of slots on the page, and the free space
+ * holds the number of empty slots. A presence bitmap with one bit per slot
+ * follows the header, and the minipages follow the bitmap. With a single
+ * column, this is simply a page of fixed-length records, each located at the
+ * offset header + bitmap + slot * length.
+ */
+class PaxPage extends HFPage {
+
+	/** Width of each column (in bytes). */
+	protected final int[] widths;
+
+	/** Offset of each column's minipage. */
+	protected final int[] offsets;
+
+	/** Length of a whole record (in bytes). */
+	protected final int recLength;
+
+	/** Number of record slots on the page. */
+	protected final int capacity;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Creates an empty PAX page for records with the given column widths.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if a width is not positive, or a record doesn't fit on a page
+	 */
+	public PaxPage(int[] widths) {
+		super();
+		setType(HeapFile.PAX_PAGE);
+		this.widths = widths.clone();
+		this.offsets = new int[widths.length];
+
+		// each slot takes the record plus one bit of the bitmap
+		int length = 0;
+		for (int width : widths) {
+			if (width < 1) {
+				throw new IllegalArgumentException("Invalid column width");
+			}
+			length += width;
+		}
+		recLength = length;
+		capacity = (PAGE_SIZE - HEADER_SIZE) * 8 / (length * 8 + 1);
+		if (length == 0 || capacity < 1) {
+			throw new IllegalArgumentException("Record is too large");
+		}
+
+		// lay out the minipages after the bitmap
+		int offset = HEADER_SIZE + (capacity + 7) / 8;
+		for (int i = 0; i < widths.length; i++) {
+			offsets[i] = offset;
+			offset += capacity * widths[i];
+		}
+
+		setShortValue((short) capacity, SLOT_CNT);
+		setShortValue((short) capacity, FREE_SPACE);
+
+	} // public PaxPage(int[] widths)
+
+	/**
+	 * Gets the number of record slots on the page.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of records on the page.
+	 */
+	public int getRecCnt() {
+		return capacity - getFreeSpace();
+	}
+
+	/**
+	 * True if the page has no records.
+	 */
+	public boolean isEmpty() {
+		return getFreeSpace() == capacity;
+	}
+
+	/**
+	 * True if the given slot holds a record.
+	 */
+	public boolean isUsed(int slotno) {
+		return (data[HEADER_SIZE + (slotno >> 3)] & (1 << (slotno & 7))) != 0;
+	}
+
+	/**
+	 * Gets the length of the record in the given slot, or EMPTY_SLOT if the slot
+	 * is empty.
+	 */
+	public short getSlotLength(int slotno) {
+		return isUsed(slotno) ? (short) recLength : (short) EMPTY_SLOT;
+	}
+
+	/**
+	 * Records on PAX pages are never moved (or forwarded).
+	 */
+	public boolean isMoved(int slotno) {
+		return false;
+	}
+
+	/**
+	 * Gets the number of the next used slot after the given one (use -1 for the
+	 * first slot).
+	 *
+	 * @return the slot number, or EMPTY_SLOT if no more
+	 */
+	public int nextSlot(int slotno) {
+
+		// test the rest of each byte of the bitmap at once
+		int i = slotno + 1;
+		while (i < capacity) {
+			int bits = (data[HEADER_SIZE + (i >> 3)] & 0xFF) >>> (i & 7);
+			if (bits != 0)
+				return i + Integer.numberOfTrailingZeros(bits);
+			i = (i | 7) + 1;
+		}
+		return EMPTY_SLOT;
+
+	} // public int nextSlot(int slotno)
+
+	/**
+	 * Inserts a new record into the first empty slot on the page.
+	 *
+	 * @return RID of new record, or null if the page is full
+	 * @throws IllegalArgumentException
+	 *           if the record has the wrong length
+	 */
+	public RID insertRecord(byte[] record) {
+		if (record.length != recLength)
+			throw new IllegalArgumentException("Invalid record size");
+		if (getFreeSpace() == 0)
+			return null;
+
+		// find the first empty slot, skipping full bytes of the bitmap
+		int i = HEADER_SIZE;
+		while (data[i] == (byte) 0xFF)
+			i++;
+		int slotno = (i - HEADER_SIZE) * 8 + Integer.numberOfTrailingZeros(~data[i]);
+
+		// mark it used and store the columns
+		data[i] |= (byte) (1 << (slotno & 7));
+		setShortValue((short) (getFreeSpace() - 1), FREE_SPACE);
+		writeRecord(slotno, record);
+		return new RID(new PageId(getIntValue(CUR_PAGE)), slotno);
+
+	} // public RID insertRecord(byte[] record)
+
+	/**
+	 * Selects a record from the page, gathering its columns.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid
+	 */
+	public byte[] selectRecord(RID rid) {
+		checkRID(rid);
+		byte[] record = new byte[recLength];
+		for (int i = 0, n = 0; i < widths.length; n += widths[i++]) {
+			readColumn(rid.slotno, i, record, n);
+		}
+		return record;
+	}
+
+	/**
+	 * Updates a record on the page, in place.
+	 *
+	 * @return true (a record never needs more room)
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid or the record has the wrong length
+	 */
+	public boolean updateRecord(RID rid, byte[] record) {
+		checkRID(rid);
+		if (record.length != recLength)
+			throw new IllegalArgumentException("Invalid record size");
+		writeRecord(rid.slotno, record);
+		return true;
+	}
+
+	/**
+	 * Deletes a record from the page, clearing its bit in the bitmap.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the rid is invalid
+	 */
+	public void deleteRecord(RID rid) {
+		checkRID(rid);
+		data[HEADER_SIZE + (rid.slotno >> 3)] &= (byte) ~(1 << (rid.slotno & 7));
+		setShortValue((short) (getFreeSpace() + 1), FREE_SPACE);
+	}
+
+	/**
+	 * Gets the offset of one column of the record in the given slot.
+	 */
+	public int getColumnOffset(int slotno, int column) {
+		return offsets[column] + slotno * widths[column];
+	}
+
+	/**
+	 * Copies one column of the record in the given slot into the given buffer.
+	 */
+	public void readColumn(int slotno, int column, byte[] dest, int destOff) {
+		int width = widths[column];
+		System.arraycopy(data, offsets[column] + slotno * width, dest, destOff, width);
+	}
+
+	/**
+	 * Scatters the columns of a record into their minipages.
+	 */
+	protected void writeRecord(int slotno, byte[] record) {
+		for (int i = 0, n = 0; i < widths.length; n += widths[i++]) {
+			System.arraycopy(record, n, data, offsets[i] + slotno * widths[i], widths[i]);
+		}
+	}
+
+	/**
+	 * Validates a record id exists on this page.
+	 *
+	 * @return the record length
+	 * @throws IllegalArgumentException
+	 *           if the slot is empty or the RID is invalid
+	 */
+	protected short checkRID(RID rid) {
+		if ((rid.pageno.pid != getIntValue(CUR_PAGE)) || (rid.slotno < 0) || (rid.slotno >= capacity))
+			throw new IllegalArgumentException("Invalid RID");
+		if (!isUsed(rid.slotno))
+			throw new IllegalArgumentException("Empty slot");
+		return (short) recLength;
+	}
+
+} // class PaxPage extends HFPage
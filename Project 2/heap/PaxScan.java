@@ -0,0 +1,228 @@
+package heap;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.PageId;
+import global.RID;
+import global.ResourceCleaner;
+
+/**
+ * A PaxScan object is created only through the function openColumnScan() in
+ * the PaxHeapFile class. Like a HeapScan, it retrieves the records of the file
+ * one at a time, but only the requested columns of each record are read from
+ * the pinned data page (i.e. from their minipages). Like a HeapScan, it should
+ * be closed as soon as it is no longer needed.
+ */
+public class PaxScan implements GlobalConst, AutoCloseable {
+
+	/** Currently pinned directory page (outer loop). */
+	protected DirPage dirPage;
+
+	/** Number of entries on the current directory page. */
+	protected int count;
+
+	/** Slot number of the current entry on the directory page. */
+	protected int index;
+
+	/** Currently pinned data page (inner loop). */
+	protected PaxPage dataPage;
+
+	/** Slot number of the current record on the data page (EMPTY_SLOT if none). */
+	protected int curSlot;
+
+	/** Columns to return, in order. */
+	protected int[] columns;
+
+	/** Length of the returned records. */
+	protected int length;
+
+	/** Ids of the pinned pages. */
+	protected HeapScan.Pins pins;
+
+	/** Registration of the scan's pins with the resource cleaner. */
+	protected ResourceCleaner.Handle handle;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Constructs a scan of the given columns by pinning the directory header page
+	 * and initializing iterator fields.
+	 */
+	protected PaxScan(PaxHeapFile hf, int[] columns) {
+
+		// pin the head page and get the count
+		dirPage = new DirPage();
+		Minibase.BufferManager.pinPage(hf.headId, dirPage, PIN_DISKIO);
+		count = dirPage.getEntryCnt();
+		pins = new HeapScan.Pins();
+		pins.dirId = new PageId(hf.headId.pid);
+		handle = ResourceCleaner.register(this, pins, "PaxScan");
+
+		// initialize other data fields
+		index = -1;
+		dataPage = new PaxPage(hf.widths);
+		curSlot = EMPTY_SLOT;
+		this.columns = columns.clone();
+		for (int column : columns) {
+			length += hf.widths[column];
+		}
+
+	} // protected PaxScan(PaxHeapFile hf, int[] columns)
+
+	/**
+	 * Closes the scan, releasing any pinned pages.
+	 */
+	public void close() {
+
+		// unpin the pages where applicable
+		handle.close();
+		pins.run();
+		dirPage = null;
+
+		// invalidate the other fields
+		count = -1;
+		index = -1;
+		curSlot = EMPTY_SLOT;
+
+	} // public void close()
+
+	/**
+	 * Gets the requested columns of the next record in the scan.
+	 *
+	 * @param rid
+	 *          output parameter that identifies the returned record
+	 * @return the columns of the next record, or null if there is no next record
+	 */
+	public byte[] getNext(RID rid) {
+		if (!next()) {
+			return null;
+		}
+		rid.pageno = dataPage.getCurPage();
+		rid.slotno = curSlot;
+		return getRecord();
+	}
+
+	/**
+	 * Advances the scan to the next record in the file without reading it.
+	 *
+	 * @return true if the scan is positioned on a record, false if there are no
+	 *         more records
+	 */
+	public boolean next() {
+
+		// if iterating within a data page, try the next slot
+		if (curSlot != EMPTY_SLOT) {
+			curSlot = dataPage.nextSlot(curSlot);
+			if (curSlot != EMPTY_SLOT) {
+				return true;
+			}
+		}
+
+		// otherwise look for the next data page (a closed scan has no more)
+		while (dirPage != null) {
+
+			// if there is another data entry in this dir page, process its data page
+			if (index < count - 1) {
+				if (pins.dataId != null) {
+					Minibase.BufferManager.unpinPage(pins.dataId, UNPIN_CLEAN);
+				}
+				index++;
+				pins.dataId = dirPage.getPageId(index);
+				Minibase.BufferManager.pinPage(pins.dataId, dataPage, PIN_DISKIO);
+				curSlot = dataPage.nextSlot(EMPTY_SLOT);
+				if (curSlot != EMPTY_SLOT) {
+					return true;
+				}
+				continue;
+			}
+
+			// otherwise move on to the next directory page, if any
+			PageId nextId = dirPage.getNextPage();
+			if (nextId.pid == INVALID_PAGEID) {
+				break;
+			}
+
+			// unpin the current pages, pin the next dir page, and reset the counters
+			if (pins.dataId != null) {
+				Minibase.BufferManager.unpinPage(pins.dataId, UNPIN_CLEAN);
+				pins.dataId = null;
+			}
+			Minibase.BufferManager.unpinPage(pins.dirId, UNPIN_CLEAN);
+			pins.dirId = nextId;
+			Minibase.BufferManager.pinPage(pins.dirId, dirPage, PIN_DISKIO);
+			count = dirPage.getEntryCnt();
+			index = -1;
+
+		} // while
+
+		// otherwise, no more records
+		return false;
+
+	} // public boolean next()
+
+	/**
+	 * Copies the given requested column (numbered in request order) of the
+	 * current record into the given buffer.
+	 *
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public void getColumn(int i, byte[] dest, int destOff) {
+		checkCursor();
+		dataPage.readColumn(curSlot, columns[i], dest, destOff);
+	}
+
+	/**
+	 * Gets the buffer of the pinned page holding the current record, for reading
+	 * columns in place (see getColumnOffset). The buffer belongs to the buffer
+	 * pool; it must not be modified, and is only valid until the next call to
+	 * next() or close().
+	 *
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public byte[] getPageData() {
+		checkCursor();
+		return dataPage.getData();
+	}
+
+	/**
+	 * Gets the offset within getPageData() of the given requested column (numbered
+	 * in request order) of the current record.
+	 *
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public int getColumnOffset(int i) {
+		checkCursor();
+		return dataPage.getColumnOffset(curSlot, columns[i]);
+	}
+
+	/**
+	 * Gets a copy of the requested columns of the current record, concatenated in
+	 * request order.
+	 *
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	public byte[] getRecord() {
+		checkCursor();
+		byte[] record = new byte[length];
+		for (int i = 0, n = 0; i < columns.length; i++) {
+			dataPage.readColumn(curSlot, columns[i], record, n);
+			n += dataPage.widths[columns[i]];
+		}
+		return record;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *           if the scan is not positioned on a record
+	 */
+	protected void checkCursor() {
+		if (curSlot == EMPTY_SLOT) {
+			throw new IllegalStateException("Scan is not positioned on a record");
+		}
+	}
+
+} // public class PaxScan implements GlobalConst, AutoCloseable
@@ -554,8 +554,7 @@ class HFTest extends TestDriver {
 			return false;
 		}
 		try {
-			record = scan.getNext(rid); // This leaves a page pinned messing up other tests...
-			Minibase.BufferManager.unpinPage(rid.pageno, UNPIN_CLEAN); // My code to fix it
+			record = scan.getNext(rid); // the scan's pages are unpinned by close()
 		} catch (Exception e) {
 			System.err.println("*** Error getting the first record\n");
 			e.printStackTrace();
@@ -566,22 +565,29 @@ class HFTest extends TestDriver {
 		// the records will cause any problem.
 		System.out.println("  - Try to change the size of a record\n");
 
-		// update the record with a shorter record - should fail
+		// update the record with a shorter, then a longer record - should work,
+		// and keep the same rid
 		DummyRecord rec = new DummyRecord(record);
 		byte[] newrecord = null;
-		rec.name = "short";
-		newrecord = rec.toByteArray();
-		try {
-			f.updateRecord(rid, newrecord);
-			status = FAIL;
-			System.err.print("Short update: The expected exception was not thrown\n");
-		} catch (IllegalArgumentException e) {
-			System.out.println("  ** Shortening a record");
-			System.out.println("  --> Failed as expected \n");
-		} catch (Exception e) {
-			e.printStackTrace();
-			status = FAIL;
-			System.err.print("Short update: The expected exception was not thrown\n");
+		String[] names = { "short", "a name longer than any other in the file" };
+		for (String name : names) {
+			rec.name = name;
+			newrecord = rec.toByteArray();
+			try {
+				f.updateRecord(rid, newrecord);
+				DummyRecord chk = new DummyRecord(f.selectRecord(rid));
+				if (!chk.name.equals(name)) {
+					status = FAIL;
+					System.err.print("Resizing update: The record was not updated\n");
+				} else {
+					System.out.println("  ** Resizing a record to " + newrecord.length + " bytes");
+					System.out.println("  --> Succeeded as expected \n");
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				status = FAIL;
+				System.err.print("Resizing update: Unexpected exception\n");
+			}
 		}
 
 		scan.close();
@@ -1,12 +1,32 @@
 
 package tests;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
+import bufmgr.BufMgr;
+import diskmgr.CompressedDiskMgr;
+import diskmgr.DiskMgr;
+import global.AttrOperator;
+import global.AttrType;
 import global.Convert;
 import global.Minibase;
+import global.Page;
+import global.PageId;
 import global.RID;
+import global.ResourceCleaner;
+import heap.FieldPredicate;
+import heap.FieldStats;
+import heap.FixedLengthHeapFile;
 import heap.HeapFile;
+import heap.HeapScan;
+import heap.PaxHeapFile;
+import heap.PaxScan;
 
 /**
  * Test suite for the heap layer.
@@ -41,6 +61,19 @@ class hfExtraTest extends TestDriver {
 		// status &= hft.test2();
 		// status &= hft.test3();
 		status &= hft.test6();
+		status &= hft.test7();
+		status &= hft.test8();
+		status &= hft.test9();
+		status &= hft.test10();
+		status &= hft.test11();
+		status &= hft.test12();
+		status &= hft.test13();
+		status &= hft.test14();
+		status &= hft.test15();
+		status &= hft.test16();
+		status &= hft.test17();
+		status &= hft.test18();
+		status &= hft.test19();
 
 		// display the final results
 		System.out.println();
@@ -199,6 +232,1341 @@ class hfExtraTest extends TestDriver {
 
 	} // protected boolean test4()
 
+	/**
+	 * 
+	 */
+	protected boolean test7() {
+
+		System.out.println("\n  Test 7: Scan records in place with a cursor\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_2");
+
+		System.out.println("  - Compare a cursor scan with a copying scan\n");
+		HeapScan copying = f.openScan();
+		HeapScan cursor = f.openScan();
+		RID rid = new RID();
+		RID curRid = new RID();
+		int i = 0;
+		for (byte[] record = copying.getNext(rid); record != null; record = copying.getNext(rid), i++) {
+			if (!cursor.next()) {
+				System.err.println("*** The cursor ended after " + i + " records\n");
+				status = FAIL;
+				break;
+			}
+			cursor.getRID(curRid);
+			byte[] data = cursor.getPageData();
+			int offset = cursor.getRecordOffset();
+			if (!curRid.equals(rid) || cursor.getRecordLength() != record.length
+					|| !Arrays.equals(Arrays.copyOfRange(data, offset, offset + record.length), record)
+					|| !Arrays.equals(cursor.getRecord(), record)) {
+				System.err.println("*** The cursor differs at record " + i + "\n");
+				status = FAIL;
+				break;
+			}
+		}
+		if (status == PASS && cursor.next()) {
+			System.err.println("*** The cursor has more records than the scan\n");
+			status = FAIL;
+		}
+		if (status == PASS && i != f.getRecCnt()) {
+			System.err.println("*** Scanned " + i + " records instead of " + f.getRecCnt() + "\n");
+			status = FAIL;
+		}
+
+		System.out.println("  - Read the cursor after the end of the scan\n");
+		try {
+			cursor.getRecordOffset();
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalStateException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+		copying.close();
+		cursor.close();
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** The scans left pages pinned\n");
+			status = FAIL;
+		}
+
+		if (status == PASS)
+			System.out.println("  Test 7 completed successfully.\n");
+		return status;
+
+	} // protected boolean test7()
+
+	/**
+	 * Times a predicate count over a sequential stream and over parallel streams
+	 * with more and more workers; the counts must agree, and the speedup depends
+	 * on the number of processors.
+	 */
+	protected boolean test8() {
+
+		System.out.println("\n  Test 8: Count records with parallel streams\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_2");
+		Predicate<byte[]> predicate = record -> {
+			DummyRecord rec = new DummyRecord(record);
+			return rec.ival % 3 == 0 && rec.name.contains("Record");
+		};
+
+		System.out.println("  - Count sequentially\n");
+		long expected = 0;
+		long seqTime = Long.MAX_VALUE;
+		for (int trial = 0; trial < 5; trial++) {
+			long start = System.nanoTime();
+			expected = f.stream(false).filter(predicate).count();
+			seqTime = Math.min(seqTime, System.nanoTime() - start);
+		}
+		System.out.println("    " + expected + " records in " + seqTime / 1000 + " us\n");
+
+		int cpus = Runtime.getRuntime().availableProcessors();
+		for (int workers = 2; workers <= Math.max(4, cpus) && status == PASS; workers *= 2) {
+			System.out.println("  - Count in parallel with " + workers + " workers (" + cpus + " processors)\n");
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			long parTime = Long.MAX_VALUE;
+			try {
+				for (int trial = 0; trial < 5 && status == PASS; trial++) {
+					long start = System.nanoTime();
+					long count = pool.submit(() -> f.stream(true).filter(predicate).count()).get();
+					parTime = Math.min(parTime, System.nanoTime() - start);
+					if (count != expected) {
+						System.err.println("*** Counted " + count + " records instead of " + expected + "\n");
+						status = FAIL;
+					}
+				}
+			} catch (Exception e) {
+				System.err.println("*** Error counting in parallel\n");
+				e.printStackTrace();
+				status = FAIL;
+			} finally {
+				pool.shutdown();
+			}
+			System.out.println("    " + parTime / 1000 + " us, speedup " + String.format("%.2f", (double) seqTime / parTime) + "\n");
+		}
+
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** The streams left pages pinned\n");
+			status = FAIL;
+		}
+
+		if (status == PASS)
+			System.out.println("  Test 8 completed successfully.\n");
+		return status;
+
+	} // protected boolean test8()
+
+	/**
+	 * Checks a predicate against a field whose comparison to the constant is
+	 * known, for every operator.
+	 */
+	protected boolean checkOperators(byte[] record, int sign, String desc, FieldPredicate... preds) {
+		boolean[] expected = { sign == 0, sign != 0, sign > 0, sign >= 0, sign < 0, sign <= 0 };
+		for (int i = 0; i < preds.length; i++) {
+			if (preds[i].eval(record, 0, record.length) != expected[i]) {
+				System.err.println("*** " + desc + ": " + preds[i] + " should be " + expected[i] + "\n");
+				return FAIL;
+			}
+		}
+		return PASS;
+	}
+
+	/**
+	 * Makes a record with an integer, a float, and a 16 byte string field.
+	 */
+	protected byte[] predRecord(int ival, float fval, byte[] sval) {
+		byte[] record = new byte[24];
+		Convert.setIntValue(ival, 0, record);
+		Convert.setFloatValue(fval, 4, record);
+		System.arraycopy(sval, 0, record, 8, sval.length);
+		return record;
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean test9() {
+
+		System.out.println("\n  Test 9: Evaluate field predicates\n");
+		boolean status = PASS;
+		int[] ops = { AttrOperator.EQ, AttrOperator.NEQ, AttrOperator.GT, AttrOperator.GTE, AttrOperator.LT,
+				AttrOperator.LTE };
+
+		System.out.println("  - Compare integer fields\n");
+		int[][] ints = { { 5, 5, 0 }, { -7, 3, -1 }, { 3, -7, 1 }, { Integer.MIN_VALUE, Integer.MAX_VALUE, -1 },
+				{ -1, -1, 0 } };
+		for (int[] c : ints) {
+			FieldPredicate[] preds = new FieldPredicate[ops.length];
+			for (int i = 0; i < ops.length; i++) {
+				preds[i] = new FieldPredicate(0, ops[i], c[1]);
+			}
+			status &= checkOperators(predRecord(c[0], 0, new byte[0]), c[2], c[0] + " vs " + c[1], preds);
+		}
+
+		System.out.println("  - Compare float fields\n");
+		float[][] floats = { { 2.5f, 2.5f, 0 }, { -1.5f, 1.5f, -1 }, { 1.5f, -1.5f, 1 }, { Float.NaN, Float.NaN, 0 },
+				{ Float.NaN, Float.POSITIVE_INFINITY, 1 }, { -0.0f, 0.0f, -1 } };
+		for (float[] c : floats) {
+			FieldPredicate[] preds = new FieldPredicate[ops.length];
+			for (int i = 0; i < ops.length; i++) {
+				preds[i] = new FieldPredicate(4, ops[i], c[1]);
+			}
+			status &= checkOperators(predRecord(0, c[0], new byte[0]), (int) c[2], c[0] + " vs " + c[1], preds);
+		}
+
+		System.out.println("  - Compare string fields, padded and not\n");
+		Object[][] strings = { { "apple", "apple", 0 }, { "apple   ", "apple", 0 }, { "apple", "apple  ", 0 },
+				{ "  apple", "apple", 0 }, { "apple", "banana", -1 }, { "banana", "apple", 1 }, { "app", "apple", -1 },
+				{ "apple", "app", 1 }, { "", "", 0 }, { "", "a", -1 }, { "caf\u00e9", "caf\u00e9", 0 },
+				{ "caf\u00e9", "cafe", 1 }, { "\u00fcber", "zebra", 1 } };
+		for (Object[] c : strings) {
+			byte[] field = new byte[16];
+			byte[] value = ((String) c[0]).getBytes(StandardCharsets.UTF_8);
+			System.arraycopy(value, 0, field, 0, value.length);
+			FieldPredicate[] preds = new FieldPredicate[ops.length];
+			for (int i = 0; i < ops.length; i++) {
+				preds[i] = new FieldPredicate(8, 16, ops[i], (String) c[1]);
+			}
+			String desc = "'" + c[0] + "' vs '" + c[1] + "'";
+			status &= checkOperators(predRecord(0, 0, field), (Integer) c[2], desc, preds);
+			Arrays.fill(field, value.length, field.length, (byte) ' ');
+			status &= checkOperators(predRecord(0, 0, field), (Integer) c[2], desc + " (blank padded)", preds);
+			if (Convert.getStringValue(8, predRecord(0, 0, field), 16).equals(((String) c[1]).trim()) != ((Integer) c[2] == 0)) {
+				System.err.println("*** " + desc + " disagrees with Convert\n");
+				status = FAIL;
+			}
+		}
+
+		System.out.println("  - Records too short for the field never qualify\n");
+		if (new FieldPredicate(8, 16, AttrOperator.NEQ, "x").eval(new byte[12], 0, 12)) {
+			System.err.println("*** A short record qualified\n");
+			status = FAIL;
+		}
+
+		System.out.println("  - Try an invalid operator and a null string\n");
+		try {
+			new FieldPredicate(0, AttrOperator.LTE + 1, 0);
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalArgumentException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+		try {
+			new FieldPredicate(8, 16, AttrOperator.EQ, (String) null);
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalArgumentException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+
+		System.out.println("  - Scan the file with a predicate\n");
+		HeapFile f = new HeapFile("file_2");
+		FieldPredicate pred = new FieldPredicate(0, AttrOperator.LT, 100);
+		long expected = f.stream(false).filter(record -> Convert.getIntValue(0, record) < 100).count();
+		HeapScan scan = f.openScan(pred);
+		int count = 0;
+		RID rid = new RID();
+		for (byte[] record = scan.getNext(rid); record != null; record = scan.getNext(rid)) {
+			if (Convert.getIntValue(0, record) >= 100) {
+				System.err.println("*** The scan returned a record that doesn't qualify\n");
+				status = FAIL;
+			}
+			count++;
+		}
+		scan.close();
+		if (count != expected) {
+			System.err.println("*** The scan returned " + count + " records instead of " + expected + "\n");
+			status = FAIL;
+		}
+
+		if (status == PASS)
+			System.out.println("  Test 9 completed successfully.\n");
+		return status;
+
+	} // protected boolean test9()
+
+	/**
+	 * Checks that every record in the file can be selected, and that a scan
+	 * returns each one exactly once under its original RID.
+	 */
+	protected boolean checkRecords(HeapFile f, HashMap<RID, byte[]> expected) {
+		for (RID key : expected.keySet()) {
+			if (!Arrays.equals(f.selectRecord(key), expected.get(key))) {
+				System.err.println("*** Selected the wrong contents for " + key + "\n");
+				return FAIL;
+			}
+		}
+		HashMap<RID, byte[]> scanned = new HashMap<RID, byte[]>();
+		try (HeapScan scan = f.openScan()) {
+			RID rid = new RID();
+			for (byte[] record = scan.getNext(rid); record != null; record = scan.getNext(rid)) {
+				if (!Arrays.equals(record, expected.get(rid)) || scanned.put(new RID(rid), record) != null) {
+					System.err.println("*** Scanned the wrong or a duplicate record at " + rid + "\n");
+					return FAIL;
+				}
+			}
+		}
+		if (scanned.size() != expected.size() || f.getRecCnt() != expected.size()
+				|| f.stream(false).count() != expected.size()) {
+			System.err.println("*** Scanned " + scanned.size() + " records and counted " + f.getRecCnt() + ", not "
+					+ expected.size() + "\n");
+			return FAIL;
+		}
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** Pages were left pinned\n");
+			return FAIL;
+		}
+		return PASS;
+	} // protected boolean checkRecords(HeapFile f, HashMap<RID, byte[]> expected)
+
+	/**
+	 * Makes a record of the given length, filled with the given value.
+	 */
+	protected byte[] filledRecord(int length, int value) {
+		byte[] record = new byte[length];
+		Arrays.fill(record, (byte) value);
+		return record;
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean test10() {
+
+		System.out.println("\n  Test 10: Read, update, and delete forwarded records\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_3");
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+		RID[] rids = new RID[60];
+
+		System.out.println("  - Fill pages with " + rids.length + " short records\n");
+		for (int i = 0; i < rids.length; i++) {
+			rids[i] = f.insertRecord(filledRecord(100, i));
+			expected.put(rids[i], filledRecord(100, i));
+		}
+		int pageCnt = f.getPageCnt();
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Grow every third record, so it is moved and leaves a stub\n");
+		for (int i = 0; i < rids.length; i += 3) {
+			f.updateRecord(rids[i], filledRecord(500, i));
+			expected.put(rids[i], filledRecord(500, i));
+		}
+		if (f.getPageCnt() <= pageCnt) {
+			System.err.println("*** No pages were added for the moved records\n");
+			status = FAIL;
+		}
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Shrink some moved records in place, and grow others so they move again\n");
+		for (int i = 0; i < rids.length; i += 3) {
+			int length = (i % 2 == 0) ? 50 : 900;
+			f.updateRecord(rids[i], filledRecord(length, i + 1));
+			expected.put(rids[i], filledRecord(length, i + 1));
+		}
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Select the forwarded and other records together\n");
+		HashMap<RID, byte[]> selected = new HashMap<RID, byte[]>();
+		f.selectRecords(rids, (rid, record) -> selected.put(new RID(rid), record));
+		for (RID rid : rids) {
+			if (!Arrays.equals(selected.get(rid), expected.get(rid))) {
+				System.err.println("*** Selected the wrong contents for " + rid + "\n");
+				status = FAIL;
+				break;
+			}
+		}
+
+		System.out.println("  - Select records given out of order, some more than once\n");
+		RID[] batch = new RID[rids.length + rids.length / 2];
+		for (int i = 0; i < rids.length; i++) {
+			batch[i] = rids[rids.length - 1 - i];
+		}
+		for (int i = 0; i < rids.length / 2; i++) {
+			batch[rids.length + i] = rids[(i * 7) % rids.length];
+		}
+		HashMap<RID, Integer> wanted = new HashMap<RID, Integer>();
+		for (RID rid : batch) {
+			wanted.merge(rid, 1, Integer::sum);
+		}
+		HashMap<RID, Integer> calls = new HashMap<RID, Integer>();
+		ArrayList<RID> wrong = new ArrayList<RID>();
+		f.selectRecords(batch, (rid, record) -> {
+			calls.merge(new RID(rid), 1, Integer::sum);
+			if (!Arrays.equals(record, expected.get(rid))) {
+				wrong.add(new RID(rid));
+			}
+		});
+		if (!wrong.isEmpty() || !calls.equals(wanted)) {
+			System.err.println("*** Selected the wrong contents for " + wrong + ", or the wrong number of times\n");
+			status = FAIL;
+		}
+
+		System.out.println("  - Delete the forwarded records\n");
+		for (int i = 0; i < rids.length; i += 3) {
+			f.deleteRecord(rids[i]);
+			expected.remove(rids[i]);
+		}
+		status &= checkRecords(f, expected);
+		try {
+			f.selectRecord(rids[0]);
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalArgumentException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+		try {
+			f.selectRecords(batch, (rid, record) -> {
+			});
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalArgumentException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** Selecting a deleted record left its page pinned\n");
+			status = FAIL;
+		}
+
+		System.out.println("  - Delete the rest, freeing every page\n");
+		for (RID rid : expected.keySet()) {
+			f.deleteRecord(rid);
+		}
+		expected.clear();
+		status &= checkRecords(f, expected);
+		if (f.getPageCnt() != 0) {
+			System.err.println("*** The empty file still has " + f.getPageCnt() + " data pages\n");
+			status = FAIL;
+		}
+		f.deleteFile();
+
+		if (status == PASS)
+			System.out.println("  Test 10 completed successfully.\n");
+		return status;
+
+	} // protected boolean test10()
+
+	/**
+	 * Checks the file's record and page counts.
+	 */
+	protected boolean checkCounts(HeapFile f, int recCnt, int pageCnt, String when) {
+		if (f.getRecCnt() != recCnt || f.getPageCnt() != pageCnt) {
+			System.err.println("*** " + when + ", counted " + f.getRecCnt() + " records on " + f.getPageCnt()
+					+ " pages, not " + recCnt + " on " + pageCnt + "\n");
+			return FAIL;
+		}
+		return PASS;
+	}
+
+	/**
+	 * Gets the number of distinct pages the given records are on.
+	 */
+	protected int countPages(Iterable<RID> rids) {
+		HashSet<Integer> pages = new HashSet<Integer>();
+		for (RID rid : rids) {
+			pages.add(rid.pageno.pid);
+		}
+		return pages.size();
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean test11() {
+
+		System.out.println("\n  Test 11: Keep record and page counts\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_4");
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+		status &= checkCounts(f, 0, 0, "New file");
+
+		System.out.println("  - Insert records onto more data pages than one directory page holds\n");
+		for (int i = 0; i < 300; i++) {
+			RID rid = f.insertRecord(filledRecord(400, i));
+			expected.put(rid, filledRecord(400, i));
+		}
+		int pageCnt = countPages(expected.keySet());
+		status &= checkCounts(f, 300, pageCnt, "After inserts");
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Delete every record on some pages, one on others, and none on the rest\n");
+		HashSet<Integer> emptied = new HashSet<Integer>();
+		HashSet<Integer> thinned = new HashSet<Integer>();
+		for (RID rid : expected.keySet().toArray(new RID[0])) {
+			if (rid.pageno.pid % 3 == 0) {
+				emptied.add(rid.pageno.pid);
+			} else if (rid.pageno.pid % 3 == 2 || !thinned.add(rid.pageno.pid)) {
+				continue;
+			}
+			f.deleteRecord(rid);
+			expected.remove(rid);
+		}
+		pageCnt -= emptied.size();
+		status &= checkCounts(f, expected.size(), pageCnt, "After deletes");
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Move records to other pages; the moves don't count as records\n");
+		int moved = 0;
+		for (RID rid : expected.keySet()) {
+			if (rid.pageno.pid % 3 == 2 && moved++ < 40) { // on a full page
+				f.updateRecord(rid, filledRecord(900, moved));
+				expected.put(rid, filledRecord(900, moved));
+			}
+		}
+		if (f.getPageCnt() <= pageCnt) {
+			System.err.println("*** No pages were added for the moved records\n");
+			status = FAIL;
+		}
+		pageCnt = f.getPageCnt();
+		status &= checkCounts(f, expected.size(), pageCnt, "After moves");
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Reopen the file, and check the counts were saved\n");
+		f = new HeapFile("file_4");
+		status &= checkCounts(f, expected.size(), pageCnt, "After reopening");
+
+		System.out.println("  - Delete everything\n");
+		for (RID rid : expected.keySet()) {
+			f.deleteRecord(rid);
+		}
+		expected.clear();
+		status &= checkCounts(f, 0, 0, "After deleting everything");
+		status &= checkRecords(f, expected);
+		f.deleteFile();
+
+		System.out.println("  - Count the records of a temporary file\n");
+		HeapFile temp = new HeapFile(null);
+		RID first = temp.insertRecord(filledRecord(600, 1));
+		temp.insertRecord(filledRecord(600, 2));
+		status &= checkCounts(temp, 2, 2, "In a temporary file");
+		temp.deleteRecord(first);
+		status &= checkCounts(temp, 1, 1, "After a temporary delete");
+		temp.deleteFile();
+
+		if (status == PASS)
+			System.out.println("  Test 11 completed successfully.\n");
+		return status;
+
+	} // protected boolean test11()
+
+	/**
+	 * 
+	 */
+	protected boolean test12() {
+
+		System.out.println("\n  Test 12: Vacuum sparse pages, including forwarded records\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_5");
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+
+		System.out.println("  - Fill six pages with short records\n");
+		ArrayList<ArrayList<RID>> pages = new ArrayList<ArrayList<RID>>();
+		for (int i = 0; i < 54; i++) {
+			RID rid = f.insertRecord(filledRecord(100, i));
+			expected.put(rid, filledRecord(100, i));
+			if (pages.isEmpty() || pages.get(pages.size() - 1).get(0).pageno.pid != rid.pageno.pid) {
+				pages.add(new ArrayList<RID>());
+			}
+			pages.get(pages.size() - 1).add(rid);
+		}
+		if (pages.size() != 6) {
+			System.err.println("*** The records filled " + pages.size() + " pages instead of 6\n");
+			f.deleteFile();
+			return FAIL;
+		}
+
+		System.out.println("  - Leave only a record forwarded from the last page on the second\n");
+		ArrayList<RID> second = pages.get(1);
+		ArrayList<RID> last = pages.get(5);
+		for (RID rid : second.subList(1, second.size())) {
+			f.deleteRecord(rid);
+			expected.remove(rid);
+		}
+		f.updateRecord(last.get(0), filledRecord(400, 100));
+		expected.put(last.get(0), filledRecord(400, 100));
+		f.deleteRecord(second.get(0));
+		expected.remove(second.get(0));
+
+		System.out.println("  - Thin out the first and last pages\n");
+		for (RID rid : pages.get(0).subList(0, 5)) {
+			f.deleteRecord(rid);
+			expected.remove(rid);
+		}
+		for (RID rid : last.subList(4, last.size())) {
+			f.deleteRecord(rid);
+			expected.remove(rid);
+		}
+		status &= checkRecords(f, expected);
+		int pageCnt = f.getPageCnt();
+
+		System.out.println("  - Vacuum, bringing the forwarded record home\n");
+		HashMap<RID, RID> remap = new HashMap<RID, RID>();
+		ArrayList<RID> badRemaps = new ArrayList<RID>();
+		boolean more = f.vacuum(0.5f, 10, (oldRid, newRid) -> {
+			if (newRid == null || remap.put(new RID(oldRid), new RID(newRid)) != null) {
+				badRemaps.add(new RID(oldRid));
+			}
+		});
+		if (!badRemaps.isEmpty()) {
+			System.err.println("*** Remapped to nothing, or more than once: " + badRemaps + "\n");
+			status = FAIL;
+		}
+		if (more) {
+			System.err.println("*** The vacuum should have finished in one batch\n");
+			status = FAIL;
+		}
+		if (remap.isEmpty() || f.getPageCnt() >= pageCnt) {
+			System.err.println("*** The vacuum moved " + remap.size() + " records off " + pageCnt + " pages, leaving "
+					+ f.getPageCnt() + "\n");
+			status = FAIL;
+		}
+
+		System.out.println("  - Find every record, moved or not\n");
+		HashMap<RID, byte[]> vacuumed = new HashMap<RID, byte[]>();
+		for (RID rid : expected.keySet()) {
+			RID newRid = remap.remove(rid);
+			if (newRid != null && (newRid.equals(rid) || expected.containsKey(newRid))) {
+				System.err.println("*** " + rid + " was moved onto an existing RID " + newRid + "\n");
+				status = FAIL;
+			}
+			vacuumed.put((newRid == null) ? rid : newRid, expected.get(rid));
+		}
+		if (!remap.isEmpty()) {
+			System.err.println("*** Records that don't exist were remapped: " + remap.keySet() + "\n");
+			status = FAIL;
+		}
+		status &= checkRecords(f, vacuumed);
+
+		System.out.println("  - Vacuum a packed file\n");
+		if (f.vacuum(0.5f, 10, (oldRid, newRid) -> remap.put(oldRid, newRid)) || !remap.isEmpty()) {
+			System.err.println("*** A packed file was vacuumed again\n");
+			status = FAIL;
+		}
+		status &= checkRecords(f, vacuumed);
+		f.deleteFile();
+
+		if (status == PASS)
+			System.out.println("  Test 12 completed successfully.\n");
+		return status;
+
+	} // protected boolean test12()
+
+	/**
+	 * Makes a record with an integer, a float, and a 16 byte string column.
+	 */
+	protected byte[] paxRecord(int i) {
+		byte[] record = new byte[24];
+		Convert.setIntValue(i, 0, record);
+		Convert.setFloatValue(i * 1.5f, 4, record);
+		Convert.setStringValue("pax" + i, 8, record);
+		return record;
+	}
+
+	/**
+	 * Checks that opening the named file throws an IllegalArgumentException.
+	 */
+	protected boolean checkOpenFails(Runnable open, String desc) {
+		try {
+			open.run();
+			System.err.println("*** " + desc + " didn't fail\n");
+			return FAIL;
+		} catch (IllegalArgumentException e) {
+			System.out.println("  --> Failed as expected \n");
+			return PASS;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean test13() {
+
+		System.out.println("\n  Test 13: Use PAX files like other heap files\n");
+		boolean status = PASS;
+		int[] widths = { 4, 4, 16 };
+		PaxHeapFile f = new PaxHeapFile("pax_1", widths);
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+		RID[] rids = new RID[500];
+
+		System.out.println("  - Insert records, and read them back with every kind of scan\n");
+		for (int i = 0; i < rids.length; i++) {
+			rids[i] = f.insertRecord(paxRecord(i));
+			expected.put(rids[i], paxRecord(i));
+		}
+		status &= checkRecords(f, expected);
+		if (f.stream(true).count() != rids.length) {
+			System.err.println("*** The parallel stream has the wrong number of records\n");
+			status = FAIL;
+		}
+		int count = 0;
+		try (HeapScan scan = f.openScan(new FieldPredicate(0, AttrOperator.GTE, 250))) {
+			while (scan.next()) {
+				count += (Convert.getIntValue(scan.getRecordOffset(), scan.getPageData()) >= 250) ? 1 : 1000;
+			}
+		}
+		if (count != 250) {
+			System.err.println("*** The predicate scan returned the wrong records\n");
+			status = FAIL;
+		}
+		try (PaxScan scan = f.openColumnScan(2, 0)) {
+			RID rid = new RID();
+			for (byte[] columns = scan.getNext(rid); columns != null; columns = scan.getNext(rid)) {
+				byte[] record = expected.get(rid);
+				if (!Arrays.equals(Arrays.copyOfRange(record, 8, 24), Arrays.copyOfRange(columns, 0, 16))
+						|| Convert.getIntValue(0, record) != Convert.getIntValue(16, columns)) {
+					System.err.println("*** The column scan returned the wrong columns for " + rid + "\n");
+					status = FAIL;
+					break;
+				}
+			}
+		}
+		long sampled = f.sample(0.3, 1).filter(record -> {
+			int i = Convert.getIntValue(0, record);
+			return i >= 0 && i < rids.length && Arrays.equals(record, paxRecord(i));
+		}).count();
+		if (sampled < 1 || sampled >= rids.length) {
+			System.err.println("*** Sampled " + sampled + " of " + rids.length + " records\n");
+			status = FAIL;
+		}
+
+		System.out.println("  - Insert in append mode after freeing slots on the first page\n");
+		int firstPage = rids[0].pageno.pid;
+		for (int i = 0; i < 10; i++) {
+			f.deleteRecord(rids[i]);
+			expected.remove(rids[i]);
+		}
+		f.setAppendMode(true);
+		for (int i = 0; i < 5; i++) {
+			RID rid = f.insertRecord(paxRecord(1000 + i));
+			expected.put(rid, paxRecord(1000 + i));
+			if (rid.pageno.pid == firstPage) {
+				System.err.println("*** An append went to the first page\n");
+				status = FAIL;
+			}
+		}
+		f.setAppendMode(false);
+		RID reused = f.insertRecord(paxRecord(2000));
+		expected.put(reused, paxRecord(2000));
+		if (reused.pageno.pid != firstPage) {
+			System.err.println("*** An insert didn't reuse the first page's free slots\n");
+			status = FAIL;
+		}
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Delete most records, and vacuum\n");
+		for (int i = 10; i < rids.length; i++) {
+			if (i % 5 != 0) {
+				f.deleteRecord(rids[i]);
+				expected.remove(rids[i]);
+			}
+		}
+		int pageCnt = f.getPageCnt();
+		HashMap<RID, RID> remap = new HashMap<RID, RID>();
+		f.vacuum(0.5f, 100, (oldRid, newRid) -> remap.put(new RID(oldRid), new RID(newRid)));
+		HashMap<RID, byte[]> vacuumed = new HashMap<RID, byte[]>();
+		for (RID rid : expected.keySet()) {
+			vacuumed.put(remap.getOrDefault(rid, rid), expected.get(rid));
+		}
+		if (f.getPageCnt() >= pageCnt) {
+			System.err.println("*** The vacuum left " + f.getPageCnt() + " of " + pageCnt + " pages\n");
+			status = FAIL;
+		}
+		status &= checkRecords(f, vacuumed);
+
+		System.out.println("  - Reopen the file, with the same and other widths\n");
+		status &= checkRecords(new PaxHeapFile("pax_1", widths), vacuumed);
+		status &= checkOpenFails(() -> new PaxHeapFile("pax_1", new int[] { 4, 4, 8 }), "Opening with other widths");
+		status &= checkOpenFails(() -> new FixedLengthHeapFile("pax_1", 24), "Opening as one column");
+		status &= checkOpenFails(() -> new HeapFile("pax_1"), "Opening as a HeapFile");
+		status &= checkOpenFails(() -> new PaxHeapFile("file_2", widths), "Opening a HeapFile as a PAX file");
+		status &= checkOpenFails(() -> new PaxHeapFile("pax_bad", new int[] { 4, 0 }), "Creating with a zero width");
+		if (Minibase.DiskManager.get_file_entry("pax_bad") != null) {
+			System.err.println("*** The file with a zero width was created anyway\n");
+			status = FAIL;
+		}
+		f.deleteFile();
+
+		System.out.println("  - Free every page of a temporary PAX file\n");
+		int before = Minibase.DiskManager.getAllocCount();
+		PaxHeapFile temp = new PaxHeapFile(null, widths);
+		for (int i = 0; i < 100; i++) {
+			temp.insertRecord(paxRecord(i));
+		}
+		temp.close();
+		if (Minibase.DiskManager.getAllocCount() != before) {
+			System.err.println("*** The temporary file leaked " + (Minibase.DiskManager.getAllocCount() - before)
+					+ " pages\n");
+			status = FAIL;
+		}
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** Pages were left pinned\n");
+			status = FAIL;
+		}
+
+		if (status == PASS)
+			System.out.println("  Test 13 completed successfully.\n");
+		return status;
+
+	} // protected boolean test13()
+
+	/**
+	 * Times summing one column of the same records, stored in a row file and in a
+	 * PAX file; the PAX file needs fewer pages, and reads only the column's
+	 * minipages.
+	 */
+	protected boolean test14() {
+
+		System.out.println("\n  Test 14: Compare column scans of PAX and row files\n");
+		boolean status = PASS;
+		HeapFile rows = new HeapFile("row_1");
+		PaxHeapFile pax = new PaxHeapFile("pax_2", new int[] { 4, 4, 4, 20 });
+
+		System.out.println("  - Insert the same 3000 records into each file\n");
+		for (int i = 0; i < 3000; i++) {
+			byte[] record = new byte[32];
+			for (int j = 0; j < 3; j++) {
+				Convert.setIntValue(i * (j + 1), j * 4, record);
+			}
+			Convert.setStringValue("record" + i, 12, record);
+			rows.insertRecord(record);
+			pax.insertRecord(record);
+		}
+
+		long rowSum = 0, paxSum = 0;
+		long rowTime = Long.MAX_VALUE, paxTime = Long.MAX_VALUE;
+		for (int trial = 0; trial < 5; trial++) {
+			long start = System.nanoTime();
+			rowSum = 0;
+			try (HeapScan scan = rows.openScan()) {
+				while (scan.next()) {
+					rowSum += Convert.getIntValue(scan.getRecordOffset() + 4, scan.getPageData());
+				}
+			}
+			rowTime = Math.min(rowTime, System.nanoTime() - start);
+			start = System.nanoTime();
+			paxSum = 0;
+			try (PaxScan scan = pax.openColumnScan(1)) {
+				while (scan.next()) {
+					paxSum += Convert.getIntValue(scan.getColumnOffset(0), scan.getPageData());
+				}
+			}
+			paxTime = Math.min(paxTime, System.nanoTime() - start);
+		}
+		System.out.println("    row file: " + rows.getPageCnt() + " pages, " + rowTime / 1000 + " us\n");
+		System.out.println("    PAX file: " + pax.getPageCnt() + " pages, " + paxTime / 1000 + " us\n");
+		if (rowSum != paxSum || pax.getPageCnt() >= rows.getPageCnt()) {
+			System.err.println("*** The sums (" + rowSum + ", " + paxSum + ") or page counts are off\n");
+			status = FAIL;
+		}
+		rows.deleteFile();
+		pax.deleteFile();
+
+		if (status == PASS)
+			System.out.println("  Test 14 completed successfully.\n");
+		return status;
+
+	} // protected boolean test14()
+
+	/**
+	 * 
+	 */
+	protected boolean test15() {
+
+		System.out.println("\n  Test 15: Scan a fixed-length record file\n");
+		boolean status = PASS;
+		FixedLengthHeapFile f = new FixedLengthHeapFile("fixed_1", 20);
+		HeapFile rows = new HeapFile("row_2");
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+
+		System.out.println("  - Insert 20 byte records, which pack denser than on slotted pages\n");
+		for (int i = 0; i < 1000; i++) {
+			byte[] record = filledRecord(20, i);
+			Convert.setIntValue(i, 0, record);
+			expected.put(f.insertRecord(record), record);
+			rows.insertRecord(record);
+		}
+		if (f.getPageCnt() >= rows.getPageCnt()) {
+			System.err.println("*** " + f.getPageCnt() + " fixed-length pages, and " + rows.getPageCnt()
+					+ " slotted pages\n");
+			status = FAIL;
+		}
+		rows.deleteFile();
+
+		System.out.println("  - Scan the records, in place and copied\n");
+		status &= checkRecords(f, expected);
+		try (HeapScan cursor = f.openScan(); PaxScan records = f.openRecordScan()) {
+			RID rid = new RID();
+			RID curRid = new RID();
+			for (byte[] record = records.getNext(rid); record != null; record = records.getNext(rid)) {
+				if (!cursor.next()) {
+					System.err.println("*** The cursor ended early\n");
+					status = FAIL;
+					break;
+				}
+				cursor.getRID(curRid);
+				int offset = cursor.getRecordOffset();
+				if (!curRid.equals(rid) || cursor.getRecordLength() != 20
+						|| !Arrays.equals(Arrays.copyOfRange(cursor.getPageData(), offset, offset + 20), record)) {
+					System.err.println("*** The cursor differs at " + rid + "\n");
+					status = FAIL;
+					break;
+				}
+			}
+			if (status == PASS && cursor.next()) {
+				System.err.println("*** The cursor has more records than the record scan\n");
+				status = FAIL;
+			}
+		}
+
+		System.out.println("  - Scan with a predicate\n");
+		int count = 0;
+		try (HeapScan scan = f.openScan(new FieldPredicate(0, AttrOperator.LT, 100))) {
+			RID rid = new RID();
+			for (byte[] record = scan.getNext(rid); record != null; record = scan.getNext(rid)) {
+				count += (Convert.getIntValue(0, record) < 100) ? 1 : 1000;
+			}
+		}
+		if (count != 100) {
+			System.err.println("*** The predicate scan returned the wrong records\n");
+			status = FAIL;
+		}
+		f.deleteFile();
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** Pages were left pinned\n");
+			status = FAIL;
+		}
+
+		if (status == PASS)
+			System.out.println("  Test 15 completed successfully.\n");
+		return status;
+
+	} // protected boolean test15()
+
+	/**
+	 * 
+	 */
+	protected boolean test16() {
+
+		System.out.println("\n  Test 16: Reopen a compressed database\n");
+		boolean status = PASS;
+		String path = DB_PATH + ".z";
+		String saveName = Minibase.DatabaseName;
+		DiskMgr saveDisk = Minibase.DiskManager;
+		BufMgr saveBuf = Minibase.BufferManager;
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+		try {
+
+			System.out.println("  - Create a compressed database, with more files than the first page lists\n");
+			new Minibase(path, DB_SIZE, BUF_SIZE, false, true);
+			HeapFile f = new HeapFile("comp_1");
+			for (int i = 0; i < 3000; i++) {
+				byte[] record = (i % 2 == 0) ? paxRecord(i) : filledRecord(40 + i % 100, i);
+				expected.put(f.insertRecord(record), record);
+			}
+			for (int i = 0; i < 20; i++) {
+				new HeapFile("comp_dir_" + i).insertRecord(paxRecord(i));
+			}
+			status &= checkRecords(f, expected);
+
+			System.out.println("  - Close and reopen it, and read the records back\n");
+			Minibase.DiskManager.closeDB();
+			new Minibase(path, DB_SIZE, BUF_SIZE, true, true);
+			f = new HeapFile("comp_1");
+			status &= checkRecords(f, expected);
+			for (int i = 0; i < 20; i++) {
+				if (Minibase.DiskManager.get_file_entry("comp_dir_" + i) == null) {
+					System.err.println("*** File comp_dir_" + i + " was lost\n");
+					status = FAIL;
+				}
+			}
+			CompressedDiskMgr disk = (CompressedDiskMgr) Minibase.DiskManager;
+			if (disk.getBytesRead() >= (long) disk.getReadCount() * PAGE_SIZE) {
+				System.err.println("*** Read " + disk.getBytesRead() + " bytes for " + disk.getReadCount() + " pages\n");
+				status = FAIL;
+			}
+
+			System.out.println("  - Update and delete records, flush, and reopen without closing\n");
+			ArrayList<RID> rids = new ArrayList<RID>(expected.keySet());
+			for (int i = 0; i < rids.size(); i += 3) {
+				f.deleteRecord(rids.get(i));
+				expected.remove(rids.get(i));
+				if (i + 1 < rids.size()) {
+					byte[] record = filledRecord(200, i);
+					f.updateRecord(rids.get(i + 1), record);
+					expected.put(rids.get(i + 1), record);
+				}
+			}
+			Minibase.BufferManager.flushAllFrames();
+			new Minibase(path, DB_SIZE, BUF_SIZE, true, true);
+			status &= checkRecords(new HeapFile("comp_1"), expected);
+
+			System.out.println("  - Open the database without compression, and the other way around\n");
+			status &= checkFormatFails(new DiskMgr(), path);
+			status &= checkFormatFails(new CompressedDiskMgr(), DB_PATH);
+			Minibase.DiskManager = new CompressedDiskMgr();
+			Minibase.BufferManager = new BufMgr(BUF_SIZE);
+			Minibase.DiskManager.openDB(path);
+			Minibase.DiskManager.destroyDB();
+
+		} catch (Exception e) {
+			System.err.println("*** Unexpected exception\n");
+			e.printStackTrace();
+			status = FAIL;
+		} finally {
+			Minibase.DatabaseName = saveName;
+			Minibase.DiskManager = saveDisk;
+			Minibase.BufferManager = saveBuf;
+		}
+
+		if (status == PASS) {
+			System.out.println("  Test 16 completed successfully.\n");
+		}
+		return status;
+
+	} // protected boolean test16()
+
+	/**
+	 * 
+	 */
+	protected boolean test17() {
+
+		System.out.println("\n  Test 17: Release the pages of leaked scans and files\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_5");
+		for (int i = 0; i < 200; i++) {
+			f.insertRecord(filledRecord(100, i));
+		}
+		int allocs = Minibase.DiskManager.getAllocCount();
+
+		System.out.println("  - Leak a scan and a temporary file, and wait for the leaks to be found\n");
+		int leaks = ResourceCleaner.getLeakCnt();
+		leakScan(f);
+		leakTempFile();
+		for (int i = 0; i < 200 && ResourceCleaner.getLeakCnt() < leaks + 2; i++) {
+			System.gc();
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		if (ResourceCleaner.getLeakCnt() < leaks + 2) {
+			System.err.println("*** Found " + (ResourceCleaner.getLeakCnt() - leaks) + " of 2 leaks\n");
+			return FAIL;
+		}
+
+		System.out.println("  - Fill the pool, releasing the leaked pages on the first pin\n");
+		ArrayList<PageId> pinned = new ArrayList<PageId>();
+		try {
+			while (pinned.size() < BUF_SIZE) {
+				pinned.add(Minibase.BufferManager.newPage(new Page(), 1));
+			}
+		} catch (IllegalStateException e) {
+			System.err.println("*** Pinned only " + pinned.size() + " of " + BUF_SIZE + " new pages\n");
+			status = FAIL;
+		}
+		for (PageId pageno : pinned) {
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			Minibase.BufferManager.freePage(pageno);
+		}
+		if (Minibase.DiskManager.getAllocCount() != allocs) {
+			System.err.println("*** The temporary file leaked " + (Minibase.DiskManager.getAllocCount() - allocs)
+					+ " pages\n");
+			status = FAIL;
+		}
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** Pages were left pinned\n");
+			status = FAIL;
+		}
+		f.deleteFile();
+
+		if (status == PASS) {
+			System.out.println("  Test 17 completed successfully.\n");
+		}
+		return status;
+
+	} // protected boolean test17()
+
+	/**
+	 * 
+	 */
+	protected boolean test18() {
+
+		System.out.println("\n  Test 18: Sample a file, and estimate and save its statistics\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_6");
+		HashMap<Float, RID> rids = new HashMap<Float, RID>();
+		for (int i = 0; i < 3000; i++) {
+			byte[] record = new byte[20 + i % 20];
+			Convert.setIntValue(i % 100, 0, record);
+			Convert.setFloatValue(i * 0.5f, 4, record);
+			rids.put(i * 0.5f, f.insertRecord(record));
+		}
+
+		System.out.println("  - Sample every page, some pages, and no pages (so one page)\n");
+		status &= checkSample(f, 1.0, rids, f.getPageCnt(), f.getPageCnt());
+		status &= checkSample(f, 0.3, rids, f.getPageCnt() / 10, f.getPageCnt() / 2);
+		status &= checkSample(f, 0.0, rids, 1, 1);
+		if (!Arrays.equals(f.sample(0.3, 7).mapToDouble(r -> Convert.getFloatValue(4, r)).toArray(),
+				f.sample(0.3, 7).mapToDouble(r -> Convert.getFloatValue(4, r)).toArray())) {
+			System.err.println("*** Two samples with the same seed differ\n");
+			status = FAIL;
+		}
+		try (HeapFile temp = new HeapFile(null)) {
+			if (temp.sample(0.5, 7).count() != 0) {
+				System.err.println("*** Sampled records from an empty file\n");
+				status = FAIL;
+			}
+		}
+
+		System.out.println("  - Estimate the statistics of 100 repeated integers, and of distinct floats\n");
+		FieldStats ints = FieldStats.build(f, 0, AttrType.INTEGER, 0.3, 7);
+		FieldStats floats = FieldStats.build(f, 4, AttrType.FLOAT, 0.3, 7);
+		double[] bounds = ints.getBounds();
+		boolean sorted = bounds.length == FieldStats.BUCKETS + 1;
+		for (int i = 1; sorted && i < bounds.length; i++) {
+			sorted = bounds[i - 1] <= bounds[i];
+		}
+		if (ints.getRecCnt() != 3000 || ints.getAvgLength() < 20 || ints.getAvgLength() > 40 || !sorted
+				|| bounds[0] < 0 || bounds[FieldStats.BUCKETS] > 99) {
+			System.err.println("*** Wrong statistics " + ints + "\n");
+			status = FAIL;
+		}
+		// GEE is within a factor sqrt(records / sampled) of the truth, so about 2
+		if (ints.getDistinct() < 70 || ints.getDistinct() > 130 || floats.getDistinct() < 1000
+				|| floats.getDistinct() > 3000) {
+			System.err.println("*** Estimated " + ints.getDistinct() + " and " + floats.getDistinct()
+					+ " distinct values, not about 100 and 3000\n");
+			status = FAIL;
+		}
+		double lt = ints.estimateSelectivity(AttrOperator.LT, 50);
+		double eq = ints.estimateSelectivity(AttrOperator.EQ, 50);
+		double gte = ints.estimateSelectivity(AttrOperator.GTE, 50);
+		if (lt < 0.4 || lt > 0.6 || eq < 0.005 || eq > 0.02 || Math.abs(lt + gte - 1) > 1e-9
+				|| ints.estimateSelectivity(AttrOperator.LT, -1) != 0
+				|| ints.estimateSelectivity(AttrOperator.GT, 100) != 0) {
+			System.err.println("*** Estimated selectivities " + lt + ", " + eq + ", and " + gte + "\n");
+			status = FAIL;
+		}
+		try {
+			FieldStats.build(f, 8, AttrType.STRING, 0.3, 7);
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalArgumentException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+
+		System.out.println("  - Save the statistics, replace one, and load them after reopening\n");
+		if (f.loadStats(0) != null) {
+			System.err.println("*** Loaded statistics that were never saved\n");
+			status = FAIL;
+		}
+		f.saveStats(FieldStats.build(f, 0, AttrType.INTEGER, 1.0, 7));
+		f.saveStats(floats);
+		f.saveStats(ints);
+		HeapFile reopened = new HeapFile("file_6");
+		status &= checkStats(reopened.loadStats(0), ints);
+		status &= checkStats(reopened.loadStats(4), floats);
+		if (reopened.loadStats(8) != null || new HeapFile("file_6.stats").getRecCnt() != 2) {
+			System.err.println("*** The statistics file has the wrong records\n");
+			status = FAIL;
+		}
+		try (HeapFile temp = new HeapFile(null)) {
+			if (temp.loadStats(0) != null) {
+				System.err.println("*** Loaded statistics of a temporary file\n");
+				status = FAIL;
+			}
+			temp.saveStats(ints);
+			System.err.println("*** The expected exception was not thrown\n");
+			status = FAIL;
+		} catch (IllegalStateException e) {
+			System.out.println("  --> Failed as expected \n");
+		}
+
+		System.out.println("  - Delete the file, and its statistics with it\n");
+		reopened.deleteFile();
+		if (Minibase.DiskManager.get_file_entry("file_6.stats") != null) {
+			System.err.println("*** The statistics file was not deleted\n");
+			status = FAIL;
+		}
+		if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumFrames()) {
+			System.err.println("*** Pages were left pinned\n");
+			status = FAIL;
+		}
+
+		if (status == PASS) {
+			System.out.println("  Test 18 completed successfully.\n");
+		}
+		return status;
+
+	} // protected boolean test18()
+
+	/**
+	 * 
+	 */
+	protected boolean test19() {
+
+		System.out.println("\n  Test 19: Append to a heap file while deleting from it\n");
+		boolean status = PASS;
+		HeapFile f = new HeapFile("file_7");
+		f.setAppendMode(true);
+		HashMap<RID, byte[]> expected = new HashMap<RID, byte[]>();
+		ArrayList<Integer> pages = new ArrayList<Integer>();
+
+		System.out.println("  - Append records onto more data pages than one directory page holds\n");
+		for (int i = 0; i < 300; i++) {
+			status &= checkAppend(f, filledRecord(400, i), expected, pages);
+		}
+		status &= checkCounts(f, 300, pages.size(), "After appending");
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Free the last page and slots on the first pages, then append again\n");
+		int tail = pages.remove(pages.size() - 1);
+		HashSet<Integer> thinned = new HashSet<Integer>(pages.subList(0, 20));
+		HashSet<Integer> seen = new HashSet<Integer>();
+		for (RID rid : new ArrayList<RID>(expected.keySet())) {
+			if (rid.pageno.pid == tail || (thinned.contains(rid.pageno.pid) && seen.add(rid.pageno.pid))) {
+				f.deleteRecord(rid);
+				expected.remove(rid);
+			}
+		}
+		for (int i = 0; i < 10; i++) {
+			status &= checkAppend(f, filledRecord(400, 300 + i), expected, pages);
+		}
+		status &= checkCounts(f, expected.size(), pages.size(), "After appending past a freed page");
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Empty the later pages, freeing a directory page, then append again\n");
+		HashSet<Integer> emptied = new HashSet<Integer>(pages.subList(100, pages.size()));
+		for (RID rid : new ArrayList<RID>(expected.keySet())) {
+			if (emptied.contains(rid.pageno.pid)) {
+				f.deleteRecord(rid);
+				expected.remove(rid);
+			}
+		}
+		pages.subList(100, pages.size()).clear();
+		for (int i = 0; i < 10; i++) {
+			status &= checkAppend(f, filledRecord(400, 310 + i), expected, pages);
+		}
+		status &= checkCounts(f, expected.size(), pages.size(), "After appending past a freed directory page");
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Insert without append mode, reusing a thinned page\n");
+		f.setAppendMode(false);
+		RID rid = f.insertRecord(filledRecord(400, 320));
+		expected.put(rid, filledRecord(400, 320));
+		if (!thinned.contains(rid.pageno.pid)) {
+			System.err.println("*** The insert went to " + rid.pageno + ", not a thinned page\n");
+			status = FAIL;
+		}
+		status &= checkRecords(f, expected);
+
+		System.out.println("  - Delete everything, and append to the empty file\n");
+		f.setAppendMode(true);
+		for (RID key : expected.keySet()) {
+			f.deleteRecord(key);
+		}
+		expected.clear();
+		pages.clear();
+		status &= checkCounts(f, 0, 0, "After deleting everything");
+		for (int i = 0; i < 5; i++) {
+			status &= checkAppend(f, filledRecord(400, i), expected, pages);
+		}
+		status &= checkCounts(f, 5, pages.size(), "After appending to the empty file");
+		status &= checkRecords(f, expected);
+		f.deleteFile();
+
+		if (status == PASS) {
+			System.out.println("  Test 19 completed successfully.\n");
+		}
+		return status;
+
+	} // protected boolean test19()
+
+	/**
+	 * Appends a record, and checks that it went to the last page appended to or a
+	 * page never seen before.
+	 */
+	protected boolean checkAppend(HeapFile f, byte[] record, HashMap<RID, byte[]> expected,
+			ArrayList<Integer> pages) {
+		RID rid = f.insertRecord(record);
+		expected.put(rid, record);
+		if (!pages.isEmpty() && pages.get(pages.size() - 1) == rid.pageno.pid) {
+			return PASS;
+		}
+		if (pages.contains(rid.pageno.pid)) {
+			System.err.println("*** A record was appended to " + rid.pageno + ", an earlier page\n");
+			return FAIL;
+		}
+		pages.add(rid.pageno.pid);
+		return PASS;
+	}
+
+	/**
+	 * Checks that a sample of the file has only its records (identified by their
+	 * float field), from the given range of pages.
+	 */
+	protected boolean checkSample(HeapFile f, double fraction, HashMap<Float, RID> rids, int minPages,
+			int maxPages) {
+		ArrayList<RID> sampled = new ArrayList<RID>();
+		f.sample(fraction, 7).forEach(record -> sampled.add(rids.get(Convert.getFloatValue(4, record))));
+		int pages = countPages(sampled);
+		if (sampled.contains(null) || new HashSet<RID>(sampled).size() != sampled.size() || pages < minPages
+				|| pages > maxPages) {
+			System.err.println("*** Sampled " + sampled.size() + " records from " + pages + " pages, with "
+					+ fraction + "\n");
+			return FAIL;
+		}
+		return PASS;
+	}
+
+	/**
+	 * Checks that loaded statistics match the saved ones.
+	 */
+	protected boolean checkStats(FieldStats loaded, FieldStats saved) {
+		if (loaded == null || loaded.getOffset() != saved.getOffset() || loaded.getType() != saved.getType()
+				|| loaded.getRecCnt() != saved.getRecCnt() || loaded.getAvgLength() != saved.getAvgLength()
+				|| loaded.getDistinct() != saved.getDistinct() || !Arrays.equals(loaded.getBounds(), saved.getBounds())) {
+			System.err.println("*** Loaded " + loaded + ", not " + saved + "\n");
+			return FAIL;
+		}
+		return PASS;
+	}
+
+	/**
+	 * Opens a scan of the given file and leaves it open, part way through.
+	 */
+	protected void leakScan(HeapFile f) {
+		HeapScan scan = f.openScan();
+		scan.getNext(new RID());
+	}
+
+	/**
+	 * Creates a temporary file of a few pages and never closes it.
+	 */
+	protected void leakTempFile() {
+		HeapFile temp = new HeapFile(null);
+		for (int i = 0; i < 50; i++) {
+			temp.insertRecord(filledRecord(200, i));
+		}
+	}
+
+	/**
+	 * Checks that opening the named database with the given disk manager (and a
+	 * new buffer manager) throws an IllegalStateException.
+	 */
+	protected boolean checkFormatFails(DiskMgr disk, String path) {
+		Minibase.DiskManager = disk;
+		Minibase.BufferManager = new BufMgr(BUF_SIZE);
+		try {
+			disk.openDB(path);
+			System.err.println("*** Opening " + path + " with " + disk.getClass().getSimpleName() + " didn't fail\n");
+			return FAIL;
+		} catch (IllegalStateException e) {
+			System.out.println("  --> Failed as expected \n");
+			return PASS;
+		}
+	}
+
 	/**
 	 * Used in fixed-length record test cases.
 	 */
@@ -3,6 +3,8 @@ package diskmgr;
 import global.Page;
 import global.PageId;
 
+import java.util.Arrays;
+
 /**
  * Header pages contain the space map, the file library, and assorted metadata.
  * The first page of the database is subclassed as DBFirstPage. Other header
@@ -110,11 +112,13 @@ class DBHeaderPage extends Page {
 	}
 
 	/**
-	 * Sets a file entry name and page id, given the entry number.
+	 * Sets a file entry name and page id, given the entry number. The rest of the
+	 * name field is cleared, so no part of a longer, deleted name remains.
 	 */
 	public void setFileEntry(String fname, PageId pageNo, int entryNo) {
 		int position = START_FILE_ENTRIES + entryNo * SIZE_OF_FILE_ENTRY;
 		setIntValue(pageNo.pid, position);
+		Arrays.fill(data, position + 4, position + SIZE_OF_FILE_ENTRY, (byte) 0);
 		setStringValue(fname, position + 4);
 	}
 
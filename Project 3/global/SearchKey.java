@@ -1,8 +1,18 @@
 package global;
 
+import java.util.Arrays;
+
 /**
  * Provides a general and type-safe way to store and compare index search keys.
- * The search key includes a type, size and value.
+ * The search key includes a type, size and value. The value is kept in a field
+ * of its own type (an int, a float, or a string with its encoded bytes), so
+ * comparing and hashing keys never boxes; search keys are immutable. <br>
+ * <br>
+ * Key values are stored normalized: as byte strings that compare, with unsigned
+ * lexicographic comparison, in the same order as the keys. Integers are stored
+ * with the sign bit flipped, floats in IEEE total order (the sign bit flipped if
+ * positive, all bits flipped if negative), and strings with each character
+ * encoded like UTF-8. So stored keys are compared without being constructed.
  */
 public class SearchKey implements Comparable<SearchKey> {
 
@@ -23,36 +33,53 @@ public class SearchKey implements Comparable<SearchKey> {
 	/** The size of the key value (in bytes). */
 	protected short size;
 
-	/** The actual key value. */
-	protected Object value;
+	/** The integer key value. */
+	protected int intValue;
+
+	/** The float key value. */
+	protected float floatValue;
+
+	/** The string key value. */
+	protected String stringValue;
+
+	/** The string key value's normalized bytes, as stored. */
+	protected byte[] stringBytes;
 
 	// --------------------------------------------------------------------------
 
+	/**
+	 * Constructs a new integer search key.
+	 */
+	public SearchKey(int value) {
+		setInt(value);
+	}
+
+	/**
+	 * Constructs a new float search key.
+	 */
+	public SearchKey(float value) {
+		setFloat(value);
+	}
+
 	/**
 	 * Constructs a new integer search key.
 	 */
 	public SearchKey(Integer value) {
-		this.type = INTEGER_KEY;
-		this.size = Integer.SIZE / Byte.SIZE;
-		this.value = value;
+		setInt(value);
 	}
 
 	/**
 	 * Constructs a new float search key.
 	 */
 	public SearchKey(Float value) {
-		this.type = FLOAT_KEY;
-		this.size = Float.SIZE / Byte.SIZE;
-		this.value = value;
+		setFloat(value);
 	}
 
 	/**
 	 * Constructs a new string search key.
 	 */
 	public SearchKey(String value) {
-		this.type = STRING_KEY;
-		this.size = (short) value.length();
-		this.value = value;
+		setString(value);
 	}
 
 	/**
@@ -65,23 +92,17 @@ public class SearchKey implements Comparable<SearchKey> {
 
 		// Integer key?
 		if (value instanceof Integer) {
-			this.type = INTEGER_KEY;
-			this.size = Integer.SIZE / Byte.SIZE;
-			this.value = value;
+			setInt((Integer) value);
 		}
 
 		// Float key?
 		else if (value instanceof Float) {
-			this.type = FLOAT_KEY;
-			this.size = Float.SIZE / Byte.SIZE;
-			this.value = value;
+			setFloat((Float) value);
 		}
 
 		// String key?
 		else if (value instanceof String) {
-			this.type = STRING_KEY;
-			this.size = (short) ((String) value).length();
-			this.value = value;
+			setString((String) value);
 		}
 
 		// otherwise, none of the above
@@ -96,30 +117,49 @@ public class SearchKey implements Comparable<SearchKey> {
 	 */
 	public SearchKey(SearchKey key) {
 
-		// copy the type and size
+		// copy the type, size and value (the string's bytes are never changed)
 		this.type = key.type;
 		this.size = key.size;
-
-		// copy the value
-		switch (key.type) {
-			case INTEGER_KEY:
-				this.value = new Integer((Integer) key.value);
-				break;
-			case FLOAT_KEY:
-				this.value = new Float((Float) key.value);
-				break;
-			case STRING_KEY:
-				this.value = new String((String) key.value);
-				break;
-		}
+		this.intValue = key.intValue;
+		this.floatValue = key.floatValue;
+		this.stringValue = key.stringValue;
+		this.stringBytes = key.stringBytes;
 
 	} // public SearchKey(SearchKey key)
 
+	/**
+	 * Sets the key to the given integer value.
+	 */
+	private void setInt(int value) {
+		type = INTEGER_KEY;
+		size = Integer.SIZE / Byte.SIZE;
+		intValue = value;
+	}
+
+	/**
+	 * Sets the key to the given float value.
+	 */
+	private void setFloat(float value) {
+		type = FLOAT_KEY;
+		size = Float.SIZE / Byte.SIZE;
+		floatValue = value;
+	}
+
+	/**
+	 * Sets the key to the given string value.
+	 */
+	private void setString(String value) {
+		type = STRING_KEY;
+		stringValue = value;
+		stringBytes = encodeString(value);
+		size = (short) stringBytes.length;
+	}
+
 	// --------------------------------------------------------------------------
 
 	/**
 	 * Constructs a SearchKey stored in the given data buffer. Assumes the type is
-	 * stored first as a byte, then the size as a short, then the value.
+	 * stored first as a byte, then the size as a short, then the normalized value.
 	 */
 	public SearchKey(byte[] data, short offset) {
 
@@ -130,13 +170,14 @@ public class SearchKey implements Comparable<SearchKey> {
 		// extract the key value
 		switch (type) {
 			case INTEGER_KEY:
-				value = new Integer(Convert.getIntValue(offset + 3, data));
+				intValue = Convert.getIntValue(offset + 3, data) ^ Integer.MIN_VALUE;
 				break;
 			case FLOAT_KEY:
-				value = new Float(Convert.getFloatValue(offset + 3, data));
+				floatValue = denormalizeFloat(Convert.getIntValue(offset + 3, data));
 				break;
 			case STRING_KEY:
-				value = Convert.getStringValue(offset + 3, data, size);
+				stringBytes = Arrays.copyOfRange(data, offset + 3, offset + 3 + size);
+				stringValue = decodeString(stringBytes);
 				break;
 		}
 
@@ -144,7 +185,7 @@ public class SearchKey implements Comparable<SearchKey> {
 
 	/**
 	 * Writes the SearchKey into the given data buffer. Writes the type first as a
-	 * byte, then the size as a short, then the value.
+	 * byte, then the size as a short, then the normalized value.
 	 */
 	public void writeData(byte[] data, short offset) {
 
@@ -155,18 +196,53 @@ public class SearchKey implements Comparable<SearchKey> {
 		// write the key value
 		switch (type) {
 			case INTEGER_KEY:
-				Convert.setIntValue((Integer) value, offset + 3, data);
+				Convert.setIntValue(intValue ^ Integer.MIN_VALUE, offset + 3, data);
 				break;
 			case FLOAT_KEY:
-				Convert.setFloatValue((Float) value, offset + 3, data);
+				Convert.setIntValue(normalizeFloat(floatValue), offset + 3, data);
 				break;
 			case STRING_KEY:
-				Convert.setStringValue((String) value, offset + 3, data);
+				System.arraycopy(stringBytes, 0, data, offset + 3, stringBytes.length);
 				break;
 		}
 
 	} // public void writeData(byte[] data, short offset)
 
+	/**
+	 * Gets the normalized key value, i.e. the bytes writeData stores after the
+	 * type and size. Keys of the same type compare like their normalized values
+	 * (see Arrays.compareUnsigned).
+	 */
+	public byte[] getNormalizedValue() {
+		if (type == STRING_KEY) {
+			return stringBytes.clone();
+		}
+		byte[] data = new byte[size];
+		Convert.setIntValue(type == INTEGER_KEY ? intValue ^ Integer.MIN_VALUE : normalizeFloat(floatValue), 0, data);
+		return data;
+	} // public byte[] getNormalizedValue()
+
+	/**
+	 * Gets the key value, boxed (i.e. an Integer, Float or String).
+	 */
+	public Object getValue() {
+		switch (type) {
+			case INTEGER_KEY:
+				return intValue;
+			case FLOAT_KEY:
+				return floatValue;
+			default:
+				return stringValue;
+		}
+	}
+
+	/**
+	 * Returns the key value as a string.
+	 */
+	public String toString() {
+		return String.valueOf(getValue());
+	}
+
 	/**
 	 * Gets the total length of the search key (in bytes) including the type, size
 	 * and value.
@@ -175,41 +251,92 @@ public class SearchKey implements Comparable<SearchKey> {
 		return (short) (3 + size);
 	}
 
+	/**
+	 * Gets the total length of the search key stored in the given data buffer (in
+	 * bytes), without constructing it.
+	 */
+	public static short getLength(byte[] data, int offset) {
+		return (short) (3 + Convert.getShortValue(offset + 1, data));
+	}
+
 	// --------------------------------------------------------------------------
 
 	/**
 	 * Gets the hash value for the search key, given the depth (i.e. number of bits
-	 * to consider).
+	 * to consider), with a seed of 0.
 	 */
 	public int getHash(int depth) {
+		return getHash(depth, 0);
+	}
 
-		// apply the appropriate calculation
-		int mask = (1 << depth) - 1;
+	/**
+	 * Gets the hash value for the search key, given the depth (i.e. number of bits
+	 * to consider) and a seed. This is the 32-bit MurmurHash3 of the whole key
+	 * value, so every bit of the key affects the low bits: sequential integers,
+	 * floats and strings with common prefixes spread evenly over the buckets.
+	 */
+	public int getHash(int depth, int seed) {
+
+		// mix in the key value, four bytes at a time
+		int hash = seed;
+		int length = size;
 		switch (type) {
 
 			default:
 			case INTEGER_KEY:
-				int ikey = ((Integer) value).intValue();
-				return ikey & mask;
+				hash = mixHash(hash, intValue);
+				break;
 
 			case FLOAT_KEY:
-				int fkey = Float.floatToIntBits((Float) value);
-				return fkey & mask;
+				hash = mixHash(hash, Float.floatToIntBits(floatValue));
+				break;
 
 			case STRING_KEY:
-
-				// reverse the first four bytes of the string
-				byte[] s = ((String) value).getBytes();
-				int skey = 0;
-				int len = s.length > 4 ? 4 : s.length;
-				for (int i = 0; i < len; i++) {
-					skey |= (s[i] << (i * Byte.SIZE));
+				byte[] s = stringBytes;
+				int i = 0;
+				for (; i + 4 <= s.length; i += 4) {
+					hash = mixHash(hash, (s[i] & 0xFF) | (s[i + 1] & 0xFF) << 8 | (s[i + 2] & 0xFF) << 16 | s[i + 3] << 24);
 				}
-				return skey & mask;
+				if (i < s.length) { // and the remaining bytes
+					int tail = 0;
+					for (int j = s.length - 1; j >= i; j--) {
+						tail = (tail << Byte.SIZE) | (s[j] & 0xFF);
+					}
+					hash ^= mixKey(tail);
+				}
+				length = s.length;
+				break;
 
 		} // switch
 
-	} // public int getHash(int depth)
+		// avalanche the bits
+		hash ^= length;
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash >>> 16;
+		return hash & ((1 << depth) - 1);
+
+	} // public int getHash(int depth, int seed)
+
+	/**
+	 * Scrambles four bytes of a key for MurmurHash3.
+	 */
+	private static int mixKey(int key) {
+		key *= 0xCC9E2D51;
+		key = Integer.rotateLeft(key, 15);
+		return key * 0x1B873593;
+	}
+
+	/**
+	 * Mixes four bytes of a key into the hash for MurmurHash3.
+	 */
+	private static int mixHash(int hash, int key) {
+		hash ^= mixKey(key);
+		hash = Integer.rotateLeft(hash, 13);
+		return hash * 5 + 0xE6546B64;
+	}
 
 	// --------------------------------------------------------------------------
 
@@ -223,43 +350,115 @@ public class SearchKey implements Comparable<SearchKey> {
 	 */
 	public int compareTo(SearchKey key) {
 
-		// Integer comparison
-		if (value instanceof Integer) {
-			if (key.value instanceof Integer) {
-
-				Integer ikey1 = (Integer) this.value;
-				Integer ikey2 = (Integer) key.value;
-				return ikey1.compareTo(ikey2);
+		// only keys of the same type are comparable
+		if (type != key.type) {
+			throw new IllegalArgumentException("search keys are not comparable");
+		}
 
-			} else {
-				throw new IllegalArgumentException("search keys are not comparable");
-			}
+		switch (type) {
+			case INTEGER_KEY:
+				return Integer.compare(intValue, key.intValue);
+			case FLOAT_KEY:
+				return Float.compare(floatValue, key.floatValue);
+			default:
+				return stringValue.compareTo(key.stringValue);
 		}
 
-		// Float comparison
-		if (value instanceof Float) {
-			if (key.value instanceof Float) {
+	} // public int compareTo(SearchKey key)
 
-				Float fkey1 = (Float) this.value;
-				Float fkey2 = (Float) key.value;
-				return fkey1.compareTo(fkey2);
+	/**
+	 * Compares this search key with the one stored in the given data buffer (see
+	 * writeData), by comparing the normalized values as unsigned bytes.
+	 * 
+	 * @return a negative integer, zero, or a positive integer as this object is
+	 *         less than, equal to, or greater than the stored key
+	 * @throws IllegalArgumentException
+	 *           if the search keys are not comparable
+	 */
+	public int compareTo(byte[] data, int offset) {
 
-			} else {
-				throw new IllegalArgumentException("search keys are not comparable");
-			}
+		// the types must match
+		if (data[offset] != type) {
+			throw new IllegalArgumentException("search keys are not comparable");
 		}
 
-		// default: String comparison
-		if (key.value instanceof String) {
+		// (four bytes at a time for numbers)
+		int start = offset + 3;
+		switch (type) {
+			case INTEGER_KEY:
+				return Integer.compareUnsigned(intValue ^ Integer.MIN_VALUE, Convert.getIntValue(start, data));
+			case FLOAT_KEY:
+				return Integer.compareUnsigned(normalizeFloat(floatValue), Convert.getIntValue(start, data));
+			default:
+				int end = start + Convert.getShortValue(offset + 1, data);
+				return Arrays.compareUnsigned(stringBytes, 0, stringBytes.length, data, start, end);
+		}
 
-			String skey1 = (String) this.value;
-			String skey2 = (String) key.value;
-			return skey1.compareTo(skey2);
+	} // public int compareTo(byte[] data, int offset)
 
-		} else {
-			throw new IllegalArgumentException("search keys are not comparable");
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Normalizes a float: its bits in IEEE total order, as an unsigned integer.
+	 */
+	private static int normalizeFloat(float value) {
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Gets the float a normalized float stands for.
+	 */
+	private static float denormalizeFloat(int bits) {
+		return Float.intBitsToFloat(bits < 0 ? bits ^ Integer.MIN_VALUE : ~bits);
+	}
+
+	/**
+	 * Normalizes a string: each character (not code point) is encoded like UTF-8,
+	 * in one to three bytes, so the bytes compare like String.compareTo.
+	 */
+	private static byte[] encodeString(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
 		}
 
-	} // public int compareTo(SearchKey key)
+		byte[] bytes = new byte[length];
+		int pos = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				bytes[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[pos++] = (byte) (0xC0 | c >> 6);
+				bytes[pos++] = (byte) (0x80 | c & 0x3F);
+			} else {
+				bytes[pos++] = (byte) (0xE0 | c >> 12);
+				bytes[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+				bytes[pos++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		return bytes;
+	} // private static byte[] encodeString(String value)
+
+	/**
+	 * Gets the string a normalized string stands for.
+	 */
+	private static String decodeString(byte[] bytes) {
+		char[] chars = new char[bytes.length];
+		int length = 0;
+		for (int pos = 0; pos < bytes.length;) {
+			int b = bytes[pos++] & 0xFF;
+			if (b < 0x80) {
+				chars[length++] = (char) b;
+			} else if (b < 0xE0) {
+				chars[length++] = (char) ((b & 0x1F) << 6 | bytes[pos++] & 0x3F);
+			} else {
+				chars[length++] = (char) ((b & 0x0F) << 12 | (bytes[pos++] & 0x3F) << 6 | bytes[pos++] & 0x3F);
+			}
+		}
+		return new String(chars, 0, length);
+	} // private static String decodeString(byte[] bytes)
 
 } // public class SearchKey implements Comparable<SearchKey>
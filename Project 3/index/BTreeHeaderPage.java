@@ -0,0 +1,87 @@
+package index;
+
+import global.Page;
+import global.PageId;
+
+/**
+ * The header page of a B+ tree index file contains the page id of the root
+ * node, which changes as the tree grows, and the height of the tree (i.e. the
+ * number of index levels above the leaves). It also has the kind of index at
+ * the same offset as a hash directory (see HashDirPage), so neither kind of
+ * file can be opened as the other.
+ */
+class BTreeHeaderPage extends Page {
+
+	/** Offset of the root page id. */
+	protected static final int ROOT_PAGE = 0;
+
+	/** Offset of the height. */
+	protected static final int HEIGHT = 4;
+
+	/** Offset of the kind of index. */
+	protected static final int INDEX_KIND = HashDirPage.INDEX_KIND;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Default constructor; creates a header page with default values.
+	 */
+	public BTreeHeaderPage() {
+		super();
+		initDefaults();
+	}
+
+	/**
+	 * Constructor that wraps an existing header page.
+	 */
+	public BTreeHeaderPage(Page page) {
+		super(page.getData());
+	}
+
+	/**
+	 * Initializes the header page with default values.
+	 */
+	protected void initDefaults() {
+		setIntValue(INVALID_PAGEID, ROOT_PAGE);
+		setShortValue((short) 0, HEIGHT);
+		data[INDEX_KIND] = HashDirPage.KIND_BTREE;
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Gets the root page's id.
+	 */
+	public PageId getRootId() {
+		return new PageId(getIntValue(ROOT_PAGE));
+	}
+
+	/**
+	 * Sets the root page's id.
+	 */
+	public void setRootId(PageId pageno) {
+		setIntValue(pageno.pid, ROOT_PAGE);
+	}
+
+	/**
+	 * Gets the height of the tree; 0 if the root is a leaf.
+	 */
+	public short getHeight() {
+		return getShortValue(HEIGHT);
+	}
+
+	/**
+	 * Sets the height of the tree.
+	 */
+	public void setHeight(short height) {
+		setShortValue(height, HEIGHT);
+	}
+
+	/**
+	 * Gets the kind of index (see HashDirPage).
+	 */
+	public byte getIndexKind() {
+		return data[INDEX_KIND];
+	}
+
+} // class BTreeHeaderPage extends Page
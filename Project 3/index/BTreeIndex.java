@@ -0,0 +1,589 @@
+package index;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.PageId;
+import global.RID;
+import global.ResourceCleaner;
+import global.SearchKey;
+
+import java.util.ArrayList;
+
+/**
+ * <h3>Minibase B+ Tree Index</h3> This unclustered index implements a B+ tree as
+ * described on pages 344 to 356 of the textbook (3rd edition). Index nodes
+ * (see BTreeIndexPage) hold separator keys and child page ids; the leaves are
+ * SortedPages of data entries, linked to their right siblings so range scans
+ * read them in order. A full node is split in half (by size), pushing a
+ * separator up to its parent, and splitting the root adds a level. As in
+ * Minibase, deletion doesn't rebalance the tree: a leaf may become empty, and
+ * scans skip over it. The file's header page holds the root's page id and the
+ * height of the tree.
+ */
+public class BTreeIndex implements GlobalConst, AutoCloseable {
+
+	/** File name of the B+ tree index. */
+	protected String fileName;
+
+	/** Page id of the header page. */
+	protected PageId headId;
+
+	/** Largest allowed data entry (in bytes), so that any node holds three. */
+	protected static final int MAX_ENTRY_SIZE = (PAGE_SIZE - SortedPage.HEADER_SIZE) / 3 - SortedPage.SLOT_SIZE;
+
+	/** Registration of a temporary index with the resource cleaner, or null. */
+	protected ResourceCleaner.Handle handle;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Opens an index file given its name, or creates a new index file if the name
+	 * doesn't exist; a null name produces a temporary index file which requires no
+	 * file library entry and whose pages are freed when it is closed, or else (as
+	 * a safety net) after there are no more references to it. A new index file
+	 * has a header page and an empty root leaf. The library entry contains the
+	 * name of the index file and the pageId of the file's header page.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the named file is another kind of index
+	 */
+	public BTreeIndex(String fileName) {
+		if (fileName != null) {
+			this.fileName = fileName;
+			headId = Minibase.DiskManager.get_file_entry(fileName);
+
+			if (headId == null) { // new file
+				headId = newHeader();
+				Minibase.DiskManager.add_file_entry(fileName, headId);
+			} else { // Check the kind of the existing index
+				BTreeHeaderPage hPage = new BTreeHeaderPage();
+				Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+				byte kind = hPage.getIndexKind();
+				Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+				if (kind != HashDirPage.KIND_BTREE) {
+					throw new IllegalArgumentException("File " + fileName + " is another kind of index");
+				}
+			}
+		} else { // Temp file
+			headId = newHeader();
+			handle = ResourceCleaner.register(this, new TempIndex(headId), "temporary BTreeIndex");
+		}
+	} // public BTreeIndex(String fileName)
+
+	/**
+	 * Allocates the header page and the root leaf of a new index file.
+	 *
+	 * @return the page id of the header page
+	 */
+	protected static PageId newHeader() {
+		SortedPage leaf = new SortedPage();
+		PageId rootId = Minibase.BufferManager.newPage(leaf, 1);
+		Minibase.BufferManager.unpinPage(rootId, UNPIN_DIRTY);
+
+		BTreeHeaderPage hPage = new BTreeHeaderPage();
+		hPage.setRootId(rootId);
+		PageId headId = Minibase.BufferManager.newPage(hPage, 1);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		return headId;
+	} // protected static PageId newHeader()
+
+	/**
+	 * Closes the index; a temporary index file is deleted.
+	 */
+	public void close() {
+		if (fileName == null && handle != null) {
+			deleteFile();
+		}
+	} // public void close()
+
+	/**
+	 * Deletes the index file from the database, freeing all of its pages.
+	 */
+	public void deleteFile() {
+		if (handle != null) {
+			handle.close();
+			handle = null;
+		}
+		freePages(headId);
+		if (fileName != null) { // Not a temp file
+			Minibase.DiskManager.delete_file_entry(fileName);
+		}
+	} // public void deleteFile()
+
+	/**
+	 * Frees all of the pages of the index file with the given header page.
+	 */
+	protected static void freePages(PageId headId) {
+		BTreeHeaderPage hPage = new BTreeHeaderPage();
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		PageId rootId = hPage.getRootId();
+		int height = hPage.getHeight();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+
+		freeNode(rootId, height);
+		Minibase.BufferManager.freePage(headId);
+	} // protected static void freePages(PageId headId)
+
+	/**
+	 * Frees the given node and its descendants, given its level (0 for a leaf).
+	 */
+	protected static void freeNode(PageId pageno, int level) {
+		if (level > 0) {
+			BTreeIndexPage node = new BTreeIndexPage();
+			Minibase.BufferManager.pinPage(pageno, node, PIN_DISKIO);
+			ArrayList<PageId> children = new ArrayList<PageId>();
+			for (int i = -1; i < node.getEntryCount(); i++) {
+				children.add(node.getChildAt(i));
+			}
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+
+			for (PageId child : children) {
+				freeNode(child, level - 1);
+			}
+		}
+		Minibase.BufferManager.freePage(pageno);
+	} // protected static void freeNode(PageId pageno, int level)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Inserts a new data entry into the index file, after any entries with the
+	 * same key.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the entry is too large
+	 */
+	public void insertEntry(SearchKey key, RID rid) {
+		DataEntry entry = new DataEntry(key, rid);
+
+		if (entry.getLength() > MAX_ENTRY_SIZE) {
+			throw new IllegalArgumentException("Record is too large");
+		}
+
+		// descend to the leaf, remembering the path (by level; the leaves are 0)
+		BTreeHeaderPage hPage = new BTreeHeaderPage();
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		PageId pageno = hPage.getRootId();
+		int height = hPage.getHeight();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+
+		PageId[] path = new PageId[height + 1];
+		int[] slots = new int[height + 1];
+		BTreeIndexPage node = new BTreeIndexPage();
+		for (int level = height; level > 0; level--) {
+			path[level] = pageno;
+			Minibase.BufferManager.pinPage(pageno, node, PIN_DISKIO);
+			slots[level] = node.findChild(key, true);
+			PageId child = node.getChildAt(slots[level]);
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = child;
+		}
+		path[0] = pageno;
+
+		// insert into the leaf, if it has room
+		int length = entry.getLength() + SortedPage.SLOT_SIZE;
+		SortedPage leaf = new SortedPage();
+		Minibase.BufferManager.pinPage(pageno, leaf, PIN_DISKIO);
+		if (leaf.getFreeSpace() >= length) {
+			leaf.insertEntry(entry);
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+			return;
+		}
+
+		// otherwise split it, and insert the separators up the path as needed
+		DataEntry separator = splitLeaf(pageno, leaf, entry);
+		for (int level = 1; level <= height; level++) {
+			Minibase.BufferManager.pinPage(path[level], node, PIN_DISKIO);
+			int slot = slots[level] + 1; // (right after the split child)
+			if (node.getFreeSpace() >= separator.getLength() + SortedPage.SLOT_SIZE) {
+				node.insertEntryAt(separator, slot);
+				Minibase.BufferManager.unpinPage(path[level], UNPIN_DIRTY);
+				return;
+			}
+			separator = splitNode(path[level], node, separator, slot);
+		}
+
+		// the root was split, so add a new root above it
+		BTreeIndexPage root = new BTreeIndexPage();
+		PageId rootId = Minibase.BufferManager.newPage(root, 1);
+		root.setLeftChild(path[height]);
+		root.insertEntryAt(separator, 0);
+		Minibase.BufferManager.unpinPage(rootId, UNPIN_DIRTY);
+
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		hPage.setRootId(rootId);
+		hPage.setHeight((short) (height + 1));
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+	} // public void insertEntry(SearchKey key, RID rid)
+
+	/**
+	 * Deletes the specified data entry from the index file.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the entry doesn't exist
+	 */
+	public void deleteEntry(SearchKey key, RID rid) {
+		DataEntry entry = new DataEntry(key, rid);
+
+		// entries with the key may span several leaves, from the first one found
+		PageId pageno = findLeaf(key);
+		SortedPage leaf = new SortedPage();
+		while (pageno.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(pageno, leaf, PIN_DISKIO);
+			try {
+				leaf.deleteEntry(entry);
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+				return;
+			} catch (IllegalArgumentException exc) {
+				// not on this leaf
+			}
+
+			int count = leaf.getEntryCount();
+			boolean more = count == 0 || leaf.compareKeyAt(key, count - 1) >= 0;
+			PageId nextId = leaf.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			if (!more) { // past the key
+				break;
+			}
+			pageno = nextId;
+		}
+		throw new IllegalArgumentException("entry doesn't exist");
+	} // public void deleteEntry(SearchKey key, RID rid)
+
+	/**
+	 * Builds the index from the given entries (e.g. from a scan of a heap file),
+	 * along with any it already holds, much faster than inserting them one at a
+	 * time: the entries are sorted (which is cheap if they already are), then the
+	 * tree is built bottom-up, one packed page at a time, starting with the
+	 * leaves. Entries with equal keys keep their order, after existing ones.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the arrays differ in length, or an entry is too large
+	 */
+	public void bulkLoad(SearchKey[] keys, RID[] rids) {
+		if (keys.length != rids.length) {
+			throw new IllegalArgumentException("keys and rids differ in length");
+		}
+		ArrayList<DataEntry> entries = new ArrayList<DataEntry>();
+		for (int i = 0; i < keys.length; i++) {
+			DataEntry entry = new DataEntry(keys[i], rids[i]);
+			if (entry.getLength() > MAX_ENTRY_SIZE) {
+				throw new IllegalArgumentException("Record is too large");
+			}
+			entries.add(entry);
+		}
+
+		// take out the existing entries (in order), freeing the tree
+		BTreeHeaderPage hPage = new BTreeHeaderPage();
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		PageId rootId = hPage.getRootId();
+		int height = hPage.getHeight();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+
+		ArrayList<DataEntry> existing = new ArrayList<DataEntry>();
+		PageId pageno = findLeaf(null);
+		SortedPage leaf = new SortedPage();
+		while (pageno.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(pageno, leaf, PIN_DISKIO);
+			for (int i = 0; i < leaf.getEntryCount(); i++) {
+				existing.add(leaf.getEntryAt(i));
+			}
+			PageId nextId = leaf.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = nextId;
+		}
+		freeNode(rootId, height);
+		entries.addAll(0, existing);
+		entries.sort((a, b) -> a.key.compareTo(b.key));
+
+		// build the leaves, then each level of index nodes above them
+		ArrayList<DataEntry> separators = new ArrayList<DataEntry>();
+		rootId = buildLeaves(entries, separators);
+		for (height = 0; !separators.isEmpty(); height++) {
+			ArrayList<DataEntry> children = separators;
+			separators = new ArrayList<DataEntry>();
+			rootId = buildNodes(rootId, children, separators);
+		}
+
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		hPage.setRootId(rootId);
+		hPage.setHeight((short) height);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+	} // public void bulkLoad(SearchKey[] keys, RID[] rids)
+
+	/**
+	 * Initiates an equality scan of the index file.
+	 */
+	public BTreeScan openScan(SearchKey key) {
+		return new BTreeScan(this, key, true, key, true);
+	}
+
+	/**
+	 * Initiates a range scan of the index file, in key order. A null bound leaves
+	 * that end of the range open.
+	 *
+	 * @param lo
+	 *          the lowest key to scan, or null
+	 * @param loInclusive
+	 *          true if entries equal to lo are included
+	 * @param hi
+	 *          the highest key to scan, or null
+	 * @param hiInclusive
+	 *          true if entries equal to hi are included
+	 */
+	public BTreeScan openRangeScan(SearchKey lo, boolean loInclusive, SearchKey hi, boolean hiInclusive) {
+		return new BTreeScan(this, lo, loInclusive, hi, hiInclusive);
+	}
+
+	/**
+	 * Returns the name of the index file.
+	 */
+	public String toString() {
+		return fileName;
+	}
+
+	/**
+	 * Prints a high-level view of the tree, namely its height and how many entries
+	 * are stored in each leaf, in order. Sample output:
+	 *
+	 * <pre>
+	 * IX_Customers
+	 * -------------
+	 * Height : 1
+	 * 0 : 35
+	 * 1 : 27
+	 * ...
+	 * 42 : 31
+	 * -------------
+	 * Total : 1500
+	 * </pre>
+	 */
+	public void printSummary() {
+		String fileName = this.fileName == null ? "temp" : this.fileName;
+		System.out.println();
+		System.out.println(fileName);
+		System.out.println("-------------");
+
+		BTreeHeaderPage hPage = new BTreeHeaderPage();
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		System.out.println("Height : " + hPage.getHeight());
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+
+		int total = 0;
+		PageId pageno = findLeaf(null);
+		SortedPage leaf = new SortedPage();
+		for (int i = 0; pageno.pid != INVALID_PAGEID; i++) { // For all leaves
+			Minibase.BufferManager.pinPage(pageno, leaf, PIN_DISKIO);
+			System.out.println(i + " : " + leaf.getEntryCount());
+			total += leaf.getEntryCount();
+			PageId nextId = leaf.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = nextId;
+		}
+
+		System.out.println("-------------");
+		System.out.println("Total : " + total);
+	} // public void printSummary()
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Finds the first leaf that may hold the given key, i.e. the one reached by
+	 * descending after the last separator less than the key; a null key finds
+	 * the first leaf.
+	 */
+	protected PageId findLeaf(SearchKey key) {
+		BTreeHeaderPage hPage = new BTreeHeaderPage();
+		Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+		PageId pageno = hPage.getRootId();
+		int height = hPage.getHeight();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+
+		BTreeIndexPage node = new BTreeIndexPage();
+		for (int level = height; level > 0; level--) {
+			Minibase.BufferManager.pinPage(pageno, node, PIN_DISKIO);
+			PageId child = node.getChildAt(key == null ? -1 : node.findChild(key, false));
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = child;
+		}
+		return pageno;
+	} // protected PageId findLeaf(SearchKey key)
+
+	/**
+	 * Splits a full (pinned) leaf in half by size, with the new entry, moving the
+	 * upper half to a new right sibling; unpins both leaves.
+	 *
+	 * @return the separator for the new leaf
+	 */
+	protected DataEntry splitLeaf(PageId pageno, SortedPage leaf, DataEntry entry) {
+
+		// gather the entries in order, with the new one
+		ArrayList<DataEntry> entries = new ArrayList<DataEntry>();
+		for (int i = 0; i < leaf.getEntryCount(); i++) {
+			entries.add(leaf.getEntryAt(i));
+		}
+		entries.add(leaf.findSlot(entry.key, true), entry);
+		int half = splitPoint(entries, 1, entries.size() - 1);
+
+		// and move the upper half to the new leaf
+		SortedPage right = new SortedPage();
+		PageId rightId = Minibase.BufferManager.newPage(right, 1);
+		right.setNextPage(leaf.getNextPage());
+		leaf.initDefaults();
+		leaf.setNextPage(rightId);
+		for (int i = 0; i < entries.size(); i++) {
+			if (i < half) {
+				leaf.insertEntryAt(entries.get(i), i);
+			} else {
+				right.insertEntryAt(entries.get(i), i - half);
+			}
+		}
+		Minibase.BufferManager.unpinPage(rightId, UNPIN_DIRTY);
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+
+		return BTreeIndexPage.newSeparator(entries.get(half).key, rightId);
+	} // protected DataEntry splitLeaf(PageId pageno, SortedPage leaf, DataEntry entry)
+
+	/**
+	 * Splits a full (pinned) index node in half by size, with the new separator
+	 * at the given slot, moving the upper half to a new node; the middle
+	 * separator moves up instead, its child becoming the new node's left child.
+	 * Unpins both nodes.
+	 *
+	 * @return the separator for the new node
+	 */
+	protected DataEntry splitNode(PageId pageno, BTreeIndexPage node, DataEntry separator, int slot) {
+
+		// gather the separators in order, with the new one
+		ArrayList<DataEntry> entries = new ArrayList<DataEntry>();
+		for (int i = 0; i < node.getEntryCount(); i++) {
+			entries.add(node.getEntryAt(i));
+		}
+		entries.add(slot, separator);
+		int half = splitPoint(entries, 1, entries.size() - 2);
+		DataEntry middle = entries.get(half);
+
+		// and move the upper half to the new node
+		BTreeIndexPage right = new BTreeIndexPage();
+		PageId rightId = Minibase.BufferManager.newPage(right, 1);
+		right.setLeftChild(middle.rid.pageno);
+		PageId leftChild = node.getLeftChild();
+		node.initDefaults();
+		node.setLeftChild(leftChild);
+		for (int i = 0; i < entries.size(); i++) {
+			if (i < half) {
+				node.insertEntryAt(entries.get(i), i);
+			} else if (i > half) {
+				right.insertEntryAt(entries.get(i), i - half - 1);
+			}
+		}
+		Minibase.BufferManager.unpinPage(rightId, UNPIN_DIRTY);
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+
+		return BTreeIndexPage.newSeparator(middle.key, rightId);
+	} // protected DataEntry splitNode(PageId pageno, BTreeIndexPage node, ...)
+
+	/**
+	 * Writes the given (sorted) entries into new, linked leaves, filling each
+	 * before starting the next, and adds a separator for each leaf after the
+	 * first to the given list.
+	 *
+	 * @return the page id of the first leaf
+	 */
+	protected static PageId buildLeaves(ArrayList<DataEntry> entries, ArrayList<DataEntry> separators) {
+		SortedPage leaf = new SortedPage();
+		PageId firstId = Minibase.BufferManager.newPage(leaf, 1);
+		PageId pageno = firstId;
+		int slot = 0;
+		for (DataEntry entry : entries) {
+			if (leaf.getFreeSpace() < entry.getLength() + SortedPage.SLOT_SIZE) { // start the next leaf
+				SortedPage next = new SortedPage();
+				PageId nextId = Minibase.BufferManager.newPage(next, 1);
+				leaf.setNextPage(nextId);
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+				separators.add(BTreeIndexPage.newSeparator(entry.key, nextId));
+				leaf = next;
+				pageno = nextId;
+				slot = 0;
+			}
+			leaf.insertEntryAt(entry, slot++);
+		}
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		return firstId;
+	} // protected static PageId buildLeaves(ArrayList<DataEntry> entries, ...)
+
+	/**
+	 * Writes one level of index nodes over the given first child and separators
+	 * for the rest, filling each node before starting the next; the separator
+	 * that doesn't fit moves up instead, its child becoming the next node's left
+	 * child, and is added to the given list.
+	 *
+	 * @return the page id of the first node
+	 */
+	protected static PageId buildNodes(PageId leftChild, ArrayList<DataEntry> children, ArrayList<DataEntry> separators) {
+		BTreeIndexPage node = new BTreeIndexPage();
+		PageId firstId = Minibase.BufferManager.newPage(node, 1);
+		node.setLeftChild(leftChild);
+		PageId pageno = firstId;
+		int slot = 0;
+		for (DataEntry separator : children) {
+			if (node.getFreeSpace() < separator.getLength() + SortedPage.SLOT_SIZE) { // start the next node
+				BTreeIndexPage next = new BTreeIndexPage();
+				PageId nextId = Minibase.BufferManager.newPage(next, 1);
+				next.setLeftChild(separator.rid.pageno);
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+				separators.add(BTreeIndexPage.newSeparator(separator.key, nextId));
+				node = next;
+				pageno = nextId;
+				slot = 0;
+				continue;
+			}
+			node.insertEntryAt(separator, slot++);
+		}
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		return firstId;
+	} // protected static PageId buildNodes(PageId leftChild, ...)
+
+	/**
+	 * Chooses where to split the given entries: the first entry (between the
+	 * given bounds) at or past half of their total size.
+	 */
+	protected static int splitPoint(ArrayList<DataEntry> entries, int min, int max) {
+		int total = 0;
+		for (DataEntry entry : entries) {
+			total += entry.getLength() + SortedPage.SLOT_SIZE;
+		}
+		int half = 0;
+		for (int size = 0; half < max && size < total / 2; half++) {
+			size += entries.get(half).getLength() + SortedPage.SLOT_SIZE;
+		}
+		return Math.max(half, min);
+	} // protected static int splitPoint(ArrayList<DataEntry> entries, int min, int max)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Frees the pages of a temporary index after it leaks.
+	 */
+	protected static class TempIndex implements Runnable {
+
+		/** Page id of the header page. */
+		protected final PageId headId;
+
+		/**
+		 * Constructs the release action for the given index.
+		 */
+		protected TempIndex(PageId headId) {
+			this.headId = new PageId(headId.pid);
+		}
+
+		/**
+		 * Frees the index's pages.
+		 */
+		public void run() {
+			freePages(headId);
+		}
+
+	} // protected static class TempIndex implements Runnable
+
+} // public class BTreeIndex implements GlobalConst, AutoCloseable
@@ -0,0 +1,61 @@
+package index;
+
+import global.PageId;
+import global.RID;
+import global.SearchKey;
+
+/**
+ * An index (i.e. internal) node of a B+ tree. Its entries are separator keys,
+ * each paired with the child node holding the keys from it up to the next
+ * separator; the child holding the keys before the first separator is kept in
+ * place of the next page id. Since duplicate keys may be split between nodes,
+ * a child's keys may equal the separators on both of its sides.
+ */
+class BTreeIndexPage extends SortedPage {
+
+	/**
+	 * Gets the id of the child before the first separator.
+	 */
+	public PageId getLeftChild() {
+		return getNextPage();
+	}
+
+	/**
+	 * Sets the id of the child before the first separator.
+	 */
+	public void setLeftChild(PageId pageno) {
+		setNextPage(pageno);
+	}
+
+	/**
+	 * Gets the id of the child after the separator at the given slot, or of the
+	 * left child if the slot is -1.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the slot number is invalid
+	 */
+	public PageId getChildAt(int slotno) {
+		if (slotno == -1) {
+			return getLeftChild();
+		}
+		return getRidAt(slotno).pageno;
+	}
+
+	/**
+	 * Finds the child to descend to for the given key: after the last separator
+	 * less than the key or, if after is true, not greater than it.
+	 *
+	 * @return the separator's slot number, or -1 for the left child
+	 */
+	public int findChild(SearchKey key, boolean after) {
+		return findSlot(key, after) - 1;
+	}
+
+	/**
+	 * Makes the separator entry for the given key and child.
+	 */
+	public static DataEntry newSeparator(SearchKey key, PageId child) {
+		return new DataEntry(key, new RID(child, 0));
+	}
+
+} // class BTreeIndexPage extends SortedPage
@@ -0,0 +1,137 @@
+package index;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.PageId;
+import global.RID;
+import global.ResourceCleaner;
+import global.SearchKey;
+
+/**
+ * A BTreeScan retrieves the records with keys in a given range (via the RIDs of
+ * the records), in key order, reading the leaves through their sibling links.
+ * It is created only through the functions openScan() and openRangeScan() in
+ * the BTreeIndex class. A scan should be closed as soon as it is no longer
+ * needed; if it becomes unreachable while still open, its page is unpinned
+ * later and the leak is reported (see ResourceCleaner).
+ */
+public class BTreeScan implements GlobalConst, AutoCloseable {
+
+	/** Lower bound of the range, or null. */
+	protected SearchKey lo;
+
+	/** True if entries equal to the lower bound are included. */
+	protected boolean loInclusive;
+
+	/** Upper bound of the range, or null. */
+	protected SearchKey hi;
+
+	/** True if entries equal to the upper bound are included. */
+	protected boolean hiInclusive;
+
+	/** Id of the leaf being scanned. */
+	protected PageId curPageId;
+
+	/** Leaf being scanned. */
+	protected SortedPage curPage;
+
+	/** Current slot to scan from. */
+	protected int curSlot;
+
+	/** Registration of the scan's pin with the resource cleaner. */
+	protected ResourceCleaner.Handle handle;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Constructs a range scan by initializing the iterator state.
+	 */
+	protected BTreeScan(BTreeIndex index, SearchKey lo, boolean loInclusive, SearchKey hi, boolean hiInclusive) {
+		this.lo = lo; // (search keys are immutable)
+		this.loInclusive = loInclusive;
+		this.hi = hi;
+		this.hiInclusive = hiInclusive;
+		curPageId = index.findLeaf(lo);
+		curPage = new SortedPage();
+
+		Minibase.BufferManager.pinPage(curPageId, curPage, PIN_DISKIO);
+		curSlot = firstSlot();
+		handle = ResourceCleaner.register(this, new Pin(curPageId), "BTreeScan");
+	} // protected BTreeScan(BTreeIndex index, SearchKey lo, ...)
+
+	/**
+	 * Closes the index scan, releasing any pinned pages.
+	 */
+	public void close() {
+		handle.close();
+		new Pin(curPageId).run();
+	} // public void close()
+
+	/**
+	 * Gets the next entry's RID in the index scan.
+	 *
+	 * @return the RID, or null if the scan has no more entries
+	 */
+	public RID getNext() {
+		while (curPageId.pid != INVALID_PAGEID) {
+			if (curSlot < curPage.getEntryCount()) {
+				if (hi != null) {
+					int cmp = curPage.compareKeyAt(hi, curSlot);
+					if (cmp < 0 || (cmp == 0 && !hiInclusive)) { // past the range
+						break;
+					}
+				}
+				return curPage.getRidAt(curSlot++);
+			}
+
+			PageId nextId = curPage.getNextPage();
+			Minibase.BufferManager.unpinPage(curPageId, UNPIN_CLEAN); // unpin the old
+			curPageId.copyPageId(nextId); // (the same object, for the cleaner)
+			if (curPageId.pid != INVALID_PAGEID) {
+				Minibase.BufferManager.pinPage(curPageId, curPage, PIN_DISKIO); // pin the new
+				curSlot = firstSlot();
+			}
+		}
+		new Pin(curPageId).run();
+		handle.close(); // There is no next, and nothing left pinned
+		return null;
+	} // public RID getNext()
+
+	/**
+	 * Gets the first slot of the current leaf within the lower bound.
+	 */
+	protected int firstSlot() {
+		return lo == null ? 0 : curPage.findSlot(lo, !loInclusive);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Unpins the page a scan has pinned, if any; it shares the scan's current
+	 * page id, so that the page can be unpinned after the scan leaks.
+	 */
+	protected static class Pin implements Runnable {
+
+		/** Id of the pinned page, or INVALID_PAGEID. */
+		protected final PageId pageno;
+
+		/**
+		 * Constructs the release action for the given (current) page id.
+		 */
+		protected Pin(PageId pageno) {
+			this.pageno = pageno;
+		}
+
+		/**
+		 * Unpins the page.
+		 */
+		public void run() {
+			if (pageno.pid != INVALID_PAGEID) {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+				pageno.pid = INVALID_PAGEID;
+			}
+		}
+
+	} // protected static class Pin implements Runnable
+
+} // public class BTreeScan implements GlobalConst, AutoCloseable
@@ -25,7 +25,7 @@ class DataEntry {
 	 * Constructs a DataEntry from the given values.
 	 */
 	public DataEntry(SearchKey key, RID rid) {
-		this.key = new SearchKey(key);
+		this.key = key; // (search keys are immutable)
 		this.rid = new RID(rid.pageno, rid.slotno);
 	}
 
@@ -9,6 +9,9 @@ package index;
 import global.Minibase;
 import global.PageId;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An object in this class is a page in a linked list. The entire linked list is
  * a hash table bucket.
@@ -41,9 +44,9 @@ class HashBucketPage extends SortedPage {
 
 	/**
 	 * Inserts a new data entry into this page. If there is no room on this page,
-	 * recursively inserts in later pages of the list. If necessary, creates a new
-	 * page at the end of the list. Does not worry about keeping order between
-	 * entries in different pages. <br>
+	 * inserts in the first later page of the list with room, pinning one page at
+	 * a time. If necessary, creates a new page at the end of the list. Does not
+	 * worry about keeping order between entries in different pages. <br>
 	 * <br>
 	 * To insert a data entry into a bucket, apply insertEntry to the primary page
 	 * of the bucket.
@@ -51,31 +54,47 @@ class HashBucketPage extends SortedPage {
 	 * @return true if inserting made this page dirty, false otherwise
 	 */
 	public boolean insertEntry(DataEntry entry) {
-		try {
-			super.insertEntry(entry);
-			return true;
-		} catch (Exception e) {
-			PageId pageno = getNextPage();
-			HashBucketPage hPage = new HashBucketPage();
-
-			if (pageno.pid != INVALID_PAGEID) { // For all pages recursive
-				Minibase.BufferManager.pinPage(pageno, hPage, PIN_DISKIO);
-				boolean inserted = hPage.insertEntry(entry);
-				Minibase.BufferManager.unpinPage(pageno, inserted ? UNPIN_DIRTY : UNPIN_CLEAN);
-				return inserted;
-			} else { // we are the last page
-				pageno = Minibase.BufferManager.newPage(hPage, 1);
-				setNextPage(pageno);
-				hPage.insertEntry(entry);
-				Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
-				return true;
+		int length = entry.getLength() + SLOT_SIZE;
+		if (getFreeSpace() >= length) {
+			return super.insertEntry(entry);
+		}
+
+		SortedPage page = this;
+		PageId pageno = null;
+
+		while (true) { // For all pages
+			PageId nextId = page.getNextPage();
+			SortedPage nextPage = new SortedPage();
+
+			if (nextId.pid == INVALID_PAGEID) { // we are the last page
+				nextId = Minibase.BufferManager.newPage(nextPage, 1);
+				page.setNextPage(nextId);
+				nextPage.insertEntry(entry);
+				Minibase.BufferManager.unpinPage(nextId, UNPIN_DIRTY);
+				if (pageno != null) {
+					Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+				}
+				return pageno == null;
+			}
+
+			Minibase.BufferManager.pinPage(nextId, nextPage, PIN_DISKIO);
+			if (pageno != null) {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			}
+			if (nextPage.getFreeSpace() >= length) {
+				nextPage.insertEntry(entry);
+				Minibase.BufferManager.unpinPage(nextId, UNPIN_DIRTY);
+				return false;
 			}
+			page = nextPage;
+			pageno = nextId;
 		}
 	} // public boolean insertEntry(DataEntry entry)
 
 	/**
-	 * Deletes a data entry from this page. If a page in the list (not the primary
-	 * page) becomes empty, it is deleted from the list.
+	 * Deletes a data entry from this page or a later page in the list, pinning at
+	 * most two pages at a time. If a page in the list (not the primary page)
+	 * becomes empty, it is deleted from the list.
 	 * 
 	 * To delete a data entry from a bucket, apply deleteEntry to the primary page
 	 * of the bucket.
@@ -86,28 +105,152 @@ class HashBucketPage extends SortedPage {
 	 */
 	public boolean deleteEntry(DataEntry entry) {
 		try {
-			super.deleteEntry(entry);
-			return true;
-		} catch (Exception e) {
-			PageId pageno = getNextPage();
-			HashBucketPage hPage = new HashBucketPage();
-
-			if (pageno.pid != INVALID_PAGEID) { // For all pages recursive
-				Minibase.BufferManager.pinPage(pageno, hPage, PIN_DISKIO);
-				boolean deleted = hPage.deleteEntry(entry);
-
-				if (hPage.getEntryCount() < 1) { // if empty remove it
-					setNextPage(hPage.getNextPage());
-					Minibase.BufferManager.unpinPage(pageno, deleted ? UNPIN_DIRTY : UNPIN_CLEAN);
-					Minibase.BufferManager.freePage(pageno);
-				} else {
-					Minibase.BufferManager.unpinPage(pageno, deleted ? UNPIN_DIRTY : UNPIN_CLEAN);
+			return super.deleteEntry(entry);
+		} catch (IllegalArgumentException exc) {
+			// not on this page
+		}
+
+		SortedPage page = this;
+		PageId pageno = null;
+		PageId nextId = getNextPage();
+
+		while (nextId.pid != INVALID_PAGEID) { // For all pages
+			SortedPage nextPage = new SortedPage();
+			Minibase.BufferManager.pinPage(nextId, nextPage, PIN_DISKIO);
+
+			boolean deleted = true;
+			try {
+				nextPage.deleteEntry(entry);
+			} catch (IllegalArgumentException exc) {
+				deleted = false;
+			}
+
+			if (deleted) {
+				boolean empty = nextPage.getEntryCount() < 1;
+				if (empty) { // if empty remove it
+					page.setNextPage(nextPage.getNextPage());
+				}
+				Minibase.BufferManager.unpinPage(nextId, UNPIN_DIRTY);
+				if (empty) {
+					Minibase.BufferManager.freePage(nextId);
 				}
-				return deleted;
-			} else {
-				throw new IllegalArgumentException("Unable to delete entry: Entry not found");
+				if (pageno != null) {
+					Minibase.BufferManager.unpinPage(pageno, empty ? UNPIN_DIRTY : UNPIN_CLEAN);
+				}
+				return empty && pageno == null;
+			}
+
+			if (pageno != null) {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
 			}
+			page = nextPage;
+			pageno = nextId;
+			nextId = nextPage.getNextPage();
+		}
+
+		if (pageno != null) {
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
 		}
+		throw new IllegalArgumentException("Unable to delete entry: Entry not found");
 	} // public boolean deleteEntry(DataEntry entry)
 
+	/**
+	 * Gets the amount of space used by the entries on this page, including their
+	 * slots (in bytes).
+	 */
+	public int getUsedSpace() {
+		return PAGE_SIZE - HEADER_SIZE - getFreeSpace();
+	}
+
+	/**
+	 * Gets the space used by the entries in this page and later (overflow) pages
+	 * in the list that have the given hash value at the given depth in the given
+	 * index, including their slots (in bytes). Splitting the bucket can't
+	 * separate these entries.
+	 */
+	public int getHashSpace(HashIndex index, int hash, int depth) {
+		int space = 0;
+		SortedPage page = this;
+		PageId pageno = null;
+
+		while (true) { // For all pages
+			for (int i = 0; i < page.getEntryCount(); i++) {
+				if (index.getHash(page.getKeyAt(i), depth) == hash) {
+					space += page.getSlotLength(i) + SLOT_SIZE;
+				}
+			}
+			PageId nextId = page.getNextPage();
+			if (pageno != null) {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			}
+			if (nextId.pid == INVALID_PAGEID) {
+				return space;
+			}
+			pageno = nextId;
+			page = new HashBucketPage();
+			Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+		}
+	} // public int getHashSpace(HashIndex index, int hash, int depth)
+
+	/**
+	 * Removes all entries from this page and later (overflow) pages in the list,
+	 * freeing the later pages; this page is left empty.
+	 * 
+	 * @return the removed entries
+	 */
+	public ArrayList<DataEntry> removeAll() {
+		ArrayList<DataEntry> entries = new ArrayList<DataEntry>();
+		for (int i = 0; i < getEntryCount(); i++) {
+			entries.add(getEntryAt(i));
+		}
+
+		PageId pageno = getNextPage();
+		HashBucketPage hPage = new HashBucketPage();
+
+		while (pageno.pid != INVALID_PAGEID) { // For all pages
+			Minibase.BufferManager.pinPage(pageno, hPage, PIN_DISKIO);
+			for (int i = 0; i < hPage.getEntryCount(); i++) {
+				entries.add(hPage.getEntryAt(i));
+			}
+			PageId nextId = hPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			Minibase.BufferManager.freePage(pageno);
+			pageno = nextId;
+		}
+
+		initDefaults();
+		return entries;
+	} // public ArrayList<DataEntry> removeAll()
+
+	/**
+	 * Inserts the given entries into this empty page and new later (overflow)
+	 * pages as needed, in key order, filling each page before starting the next.
+	 * The entries are sorted in place; duplicates keep their order.
+	 */
+	public void insertAll(List<DataEntry> entries) {
+		entries.sort((a, b) -> a.key.compareTo(b.key));
+
+		SortedPage page = this;
+		PageId pageno = null;
+		int slot = 0;
+		for (DataEntry entry : entries) {
+			if (page.getFreeSpace() < entry.getLength() + SLOT_SIZE) { // start the next page
+				SortedPage nextPage = new SortedPage();
+				PageId nextId = Minibase.BufferManager.newPage(nextPage, 1);
+				page.setNextPage(nextId);
+				if (pageno != null) {
+					Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+				}
+				page = nextPage;
+				pageno = nextId;
+				slot = 0;
+			}
+			page.insertEntryAt(entry, slot++);
+		}
+
+		if (pageno != null) {
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		}
+	} // public void insertAll(List<DataEntry> entries)
+
 } // class HashBucketPage extends SortedPage
@@ -4,7 +4,14 @@ import global.Page;
 import global.PageId;
 
 /**
- * Hash directory pages simply contain page ids to data pages (i.e. buckets).
+ * Hash directory pages contain the page ids of the data pages (i.e. buckets)
+ * and their local depths. The directory of an extendible hash index has 2 to
+ * the global depth entries, spread over a list of directory pages; the global
+ * depth is kept in the first page's header, with the hash function and seed,
+ * and the kind of index (so an index can't be opened as the other kind). A
+ * linear hash index also keeps its split pointer and the space used by its
+ * entries there, and an index with Bloom filters the id of their first page
+ * (see HashFilterPage).
  */
 class HashDirPage extends Page {
 
@@ -14,6 +21,27 @@ class HashDirPage extends Page {
 	/** Offset of the next page id. */
 	protected static final int NEXT_PAGE = 2;
 
+	/** Offset of the global depth (first page only). */
+	protected static final int GLOBAL_DEPTH = 6;
+
+	/** Offset of the next bucket to split (first page of a linear index only). */
+	protected static final int SPLIT_PTR = 7;
+
+	/** Offset of the space used by entries (first page of a linear index only). */
+	protected static final int USED_SPACE = 11;
+
+	/** Offset of the hash function (first page only). */
+	protected static final int HASH_FUNC = 15;
+
+	/** Offset of the hash seed (first page only). */
+	protected static final int HASH_SEED = 16;
+
+	/** Offset of the first filter page id (first page only). */
+	protected static final int FILTER_PAGE = 20;
+
+	/** Offset of the kind of index (first page only). */
+	protected static final int INDEX_KIND = 24;
+
 	// --------------------------------------------------------------------------
 
 	/** Relative offset of an entry's page id. */
@@ -25,15 +53,33 @@ class HashDirPage extends Page {
 	// --------------------------------------------------------------------------
 
 	/** Total size of the header fields. */
-	protected static final int HEADER_SIZE = 6;
+	protected static final int HEADER_SIZE = 25;
 
 	/** The size of a directory entry. */
 	protected static final int ENTRY_SIZE = 5;
 
 	protected static final int MAX_ENTRIES = (PAGE_SIZE - HEADER_SIZE) / ENTRY_SIZE;
 
+	/** Initial (and minimum) global depth of the directory. */
+	protected static final byte INIT_DEPTH = 7;
+
 	/** Initial directory size (in buckets). */
-	protected static final short INIT_SIZE = 128;
+	protected static final short INIT_SIZE = 1 << INIT_DEPTH;
+
+	/**
+	 * Hash function that mixes the whole key with the seed (see SearchKey); the
+	 * only one so far, but saved so that another could be told apart.
+	 */
+	protected static final byte HASH_MURMUR = 1;
+
+	/** Kind of an extendible hash index (see HashIndex). */
+	protected static final byte KIND_EXTENDIBLE = 0;
+
+	/** Kind of a linear hash index (see LinearHashIndex). */
+	protected static final byte KIND_LINEAR = 1;
+
+	/** Kind of a B+ tree index, at the same offset of its header page. */
+	protected static final byte KIND_BTREE = 2;
 
 	// --------------------------------------------------------------------------
 
@@ -62,10 +108,18 @@ class HashDirPage extends Page {
 
 		// set next page id to invalid
 		setIntValue(INVALID_PAGEID, NEXT_PAGE);
+		data[GLOBAL_DEPTH] = INIT_DEPTH;
+		setIntValue(0, SPLIT_PTR);
+		setIntValue(0, USED_SPACE);
+		data[HASH_FUNC] = HASH_MURMUR;
+		setIntValue(0, HASH_SEED);
+		setIntValue(INVALID_PAGEID, FILTER_PAGE);
+		data[INDEX_KIND] = KIND_EXTENDIBLE;
 
 		// set each entry's pageid to invalid
 		for (int i = 0; i < MAX_ENTRIES; i++) {
 			setIntValue(INVALID_PAGEID, HEADER_SIZE + i * ENTRY_SIZE + IX_PAGEID);
+			setDepth(i, INIT_DEPTH);
 		}
 
 	} // protected void initDefaults()
@@ -79,6 +133,100 @@ class HashDirPage extends Page {
 		return getShortValue(ENTRY_CNT);
 	}
 
+	/**
+	 * Sets the number of entries on the page.
+	 */
+	public void setEntryCount(short entryCnt) {
+		setShortValue(entryCnt, ENTRY_CNT);
+	}
+
+	/**
+	 * Gets the global depth of the directory (first page only).
+	 */
+	public byte getGlobalDepth() {
+		return data[GLOBAL_DEPTH];
+	}
+
+	/**
+	 * Sets the global depth of the directory (first page only).
+	 */
+	public void setGlobalDepth(byte depth) {
+		data[GLOBAL_DEPTH] = depth;
+	}
+
+	/**
+	 * Gets the next bucket to split (first page of a linear index only).
+	 */
+	public int getSplitPtr() {
+		return getIntValue(SPLIT_PTR);
+	}
+
+	/**
+	 * Sets the next bucket to split (first page of a linear index only).
+	 */
+	public void setSplitPtr(int next) {
+		setIntValue(next, SPLIT_PTR);
+	}
+
+	/**
+	 * Gets the space used by entries, including their slots (first page of a
+	 * linear index only).
+	 */
+	public int getUsedSpace() {
+		return getIntValue(USED_SPACE);
+	}
+
+	/**
+	 * Sets the space used by entries, including their slots (first page of a
+	 * linear index only).
+	 */
+	public void setUsedSpace(int space) {
+		setIntValue(space, USED_SPACE);
+	}
+
+	/**
+	 * Gets the hash seed (first page only).
+	 */
+	public int getHashSeed() {
+		return getIntValue(HASH_SEED);
+	}
+
+	/**
+	 * Sets the hash seed (first page only).
+	 */
+	public void setHashSeed(int seed) {
+		setIntValue(seed, HASH_SEED);
+	}
+
+	/**
+	 * Gets the first filter page's id, or INVALID_PAGEID if the index has no
+	 * filters (first page only).
+	 */
+	public PageId getFilterPage() {
+		return new PageId(getIntValue(FILTER_PAGE));
+	}
+
+	/**
+	 * Sets the first filter page's id (first page only).
+	 */
+	public void setFilterPage(PageId pageno) {
+		setIntValue(pageno.pid, FILTER_PAGE);
+	}
+
+	/**
+	 * Gets the kind of index (first page only).
+	 */
+	public byte getIndexKind() {
+		return data[INDEX_KIND];
+	}
+
+	/**
+	 * Sets the kind of index (first page only).
+	 */
+	public void setIndexKind(byte kind) {
+		data[INDEX_KIND] = kind;
+	}
+
 	/**
 	 * Gets the next page's id.
 	 */
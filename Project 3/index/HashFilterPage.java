@@ -0,0 +1,122 @@
+package index;
+
+import global.Page;
+import global.PageId;
+
+/**
+ * Hash filter pages hold the Bloom filters of a hash index's buckets, in a list
+ * of pages that the directory points to. Each bucket's filter has FILTER_SIZE
+ * bytes, and each key sets FILTER_HASHES of its bits, chosen by a hash value
+ * independent of the bucket's; a key whose bits aren't all set can't be in the
+ * bucket. The filters are numbered by their bucket's lowest directory index.
+ */
+class HashFilterPage extends Page {
+
+	/** Offset of the next page id. */
+	protected static final int NEXT_PAGE = 0;
+
+	/** Total size of the header fields. */
+	protected static final int HEADER_SIZE = 4;
+
+	/** Size of a bucket's filter (in bytes). */
+	protected static final int FILTER_SIZE = 64;
+
+	/** Number of bits each key sets in its bucket's filter. */
+	protected static final int FILTER_HASHES = 3;
+
+	/** Number of bits of the hash value that choose each bit of the filter. */
+	protected static final int HASH_BITS = 9; // (FILTER_SIZE * 8 = 1 << HASH_BITS)
+
+	/** Number of filters on a page. */
+	protected static final int MAX_FILTERS = (PAGE_SIZE - HEADER_SIZE) / FILTER_SIZE;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Default constructor; creates a filter page with default values.
+	 */
+	public HashFilterPage() {
+		super();
+		initDefaults();
+	}
+
+	/**
+	 * Constructor that wraps an existing filter page.
+	 */
+	public HashFilterPage(Page page) {
+		super(page.getData());
+	}
+
+	/**
+	 * Initializes the filter page with default values.
+	 */
+	protected void initDefaults() {
+		setIntValue(INVALID_PAGEID, NEXT_PAGE);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Gets the next page's id.
+	 */
+	public PageId getNextPage() {
+		return new PageId(getIntValue(NEXT_PAGE));
+	}
+
+	/**
+	 * Sets the next page's id.
+	 */
+	public void setNextPage(PageId pageno) {
+		setIntValue(pageno.pid, NEXT_PAGE);
+	}
+
+	/**
+	 * Copies the page's filters to the given array, starting with the given
+	 * filter number.
+	 */
+	public void getFilters(byte[] filters, int first) {
+		int length = Math.min(MAX_FILTERS, filters.length / FILTER_SIZE - first) * FILTER_SIZE;
+		System.arraycopy(data, HEADER_SIZE, filters, first * FILTER_SIZE, length);
+	}
+
+	/**
+	 * Copies the given filter from the given array to its place on the page.
+	 */
+	public void setFilter(byte[] filters, int filter) {
+		System.arraycopy(filters, filter * FILTER_SIZE, data, HEADER_SIZE + (filter % MAX_FILTERS) * FILTER_SIZE,
+				FILTER_SIZE);
+	}
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Sets the bits of the given hash value in the given filter of the array.
+	 *
+	 * @return true if any bit wasn't already set
+	 */
+	public static boolean add(byte[] filters, int filter, int hash) {
+		boolean changed = false;
+		for (int i = 0; i < FILTER_HASHES; i++, hash >>>= HASH_BITS) {
+			int bit = hash & ((1 << HASH_BITS) - 1);
+			int offset = filter * FILTER_SIZE + (bit >>> 3);
+			changed |= (filters[offset] & (1 << (bit & 7))) == 0;
+			filters[offset] |= 1 << (bit & 7);
+		}
+		return changed;
+	} // public static boolean add(byte[] filters, int filter, int hash)
+
+	/**
+	 * Tests whether all the bits of the given hash value are set in the given
+	 * filter of the array.
+	 */
+	public static boolean mightContain(byte[] filters, int filter, int hash) {
+		for (int i = 0; i < FILTER_HASHES; i++, hash >>>= HASH_BITS) {
+			int bit = hash & ((1 << HASH_BITS) - 1);
+			if ((filters[filter * FILTER_SIZE + (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	} // public static boolean mightContain(byte[] filters, int filter, int hash)
+
+} // class HashFilterPage extends Page
@@ -10,14 +10,33 @@ import global.GlobalConst;
 import global.Minibase;
 import global.PageId;
 import global.RID;
+import global.ResourceCleaner;
 import global.SearchKey;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
 /**
- * <h3>Minibase Hash Index</h3> This unclustered index implements static hashing
- * as described on pages 371 to 373 of the textbook (3rd edition). The index
- * file is a stored as a heapfile.
+ * <h3>Minibase Hash Index</h3> This unclustered index implements extendible
+ * hashing as described on pages 373 to 379 of the textbook (3rd edition). The
+ * directory has 2 to the global depth entries, and each bucket has a local
+ * depth: the number of hash bits its entries share. A full bucket is split in
+ * two, doubling the directory if its local depth was the global depth; a
+ * bucket that becomes sparse is merged with its buddy, halving the directory
+ * when no bucket needs the last bit. Only buckets with more than a page of
+ * entries with equal hash values (e.g. duplicates) need overflow pages, so a
+ * lookup normally costs one bucket pin. Each index file hashes its keys with
+ * its own random seed, kept in the directory.<br>
+ * <br>
+ * The directory is also kept in memory, so that finding a bucket pins no
+ * directory pages; every change to it is written through to both copies. An
+ * index file should therefore be open in only one HashIndex at a time.
+ * Optionally, each bucket also has a Bloom filter (see setFiltered), so that
+ * most lookups for keys that aren't in the index pin no pages at all.
  */
-public class HashIndex implements GlobalConst {
+public class HashIndex implements GlobalConst, AutoCloseable {
 
 	/** File name of the hash index. */
 	protected String fileName;
@@ -25,61 +44,133 @@ public class HashIndex implements GlobalConst {
 	/** Page id of the directory. */
 	protected PageId headId;
 
-	// Log2 of the number of buckets - fixed for this simple index
-	protected final int DEPTH = 7;
+	/** Largest global depth; buckets of equal hash values overflow instead. */
+	protected static final int MAX_DEPTH = 16;
+
+	/** Space in a bucket's primary page (in bytes). */
+	protected static final int BUCKET_SIZE = PAGE_SIZE - SortedPage.HEADER_SIZE;
+
+	/** Combined size (in bytes) of buddy buckets below which they are merged. */
+	protected static final int MERGE_SIZE = BUCKET_SIZE / 2;
+
+	/** Number of deletes from a bucket after which its filter is rebuilt. */
+	protected static final int FILTER_REBUILD = 16;
+
+	/** Registration of a temporary index with the resource cleaner, or null. */
+	protected ResourceCleaner.Handle handle;
+
+	/** Hash seed of the index. */
+	protected int hashSeed;
+
+	/** In-memory copy of the directory's global depth. */
+	protected int globalDepth;
+
+	/** In-memory copy of the directory's split pointer (see LinearHashIndex). */
+	protected int splitPtr;
+
+	/** In-memory copy of the directory entries' bucket page ids. */
+	protected int[] pageIds;
+
+	/** In-memory copy of the directory entries' local depths. */
+	protected byte[] depths;
+
+	/** The buckets' Bloom filters (kept in filter pages), or null. */
+	protected byte[] filters;
+
+	/** Page ids of the filter pages. */
+	protected int[] filterPages;
+
+	/** Number of deletes from each bucket since its filter was built. */
+	protected int[] filterDeletes;
 
 	// --------------------------------------------------------------------------
 
 	/**
 	 * Opens an index file given its name, or creates a new index file if the name
 	 * doesn't exist; a null name produces a temporary index file which requires no
-	 * file library entry and whose pages are freed when there are no more
-	 * references to it. The file's directory contains the locations of the 128
-	 * primary bucket pages. You will need to decide on a structure for the
-	 * directory. The library entry contains the name of the index file and the
-	 * pageId of the file's directory.
+	 * file library entry and whose pages are freed when it is closed, or else (as
+	 * a safety net) after there are no more references to it. The file's
+	 * directory initially contains the locations of 128 primary bucket pages,
+	 * which are allocated as needed. The library entry contains the name of the
+	 * index file and the pageId of the file's directory.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the named file is another kind of index
 	 */
 	public HashIndex(String fileName) {
+		HashDirPage hPage = new HashDirPage();
+		hPage.setIndexKind(getIndexKind());
 		if (fileName != null) {
 			this.fileName = fileName;
 			headId = Minibase.DiskManager.get_file_entry(fileName);
 
 			if (headId == null) { // new page
-				HashDirPage hPage = new HashDirPage();
+				hPage.setHashSeed(new Random().nextInt());
 				headId = Minibase.BufferManager.newPage(hPage, 1);
 				Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
 				Minibase.DiskManager.add_file_entry(fileName, headId);
+			} else { // Check the kind of the existing index
+				Minibase.BufferManager.pinPage(headId, hPage, PIN_DISKIO);
+				byte kind = hPage.getIndexKind();
+				Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+				if (kind != getIndexKind()) {
+					throw new IllegalArgumentException("File " + fileName + " is another kind of index");
+				}
 			}
 		} else { // Temp Page
-			HashDirPage hPage = new HashDirPage();
+			hPage.setHashSeed(new Random().nextInt());
 			headId = Minibase.BufferManager.newPage(hPage, 1);
 			Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+			handle = ResourceCleaner.register(this, new TempIndex(headId), "temporary HashIndex");
 		}
+
+		loadDirectory();
+		loadFilters();
 	} // public HashIndex(String fileName)
 
 	/**
-	 * Called by the garbage collector when there are no more references to the
-	 * object; deletes the index file if it's temporary.
+	 * Closes the index; a temporary index file is deleted.
 	 */
-	protected void finalize() throws Throwable {
-		if (fileName == null) { // Temp Page
+	public void close() {
+		if (fileName == null && handle != null) {
 			deleteFile();
 		}
-	} // protected void finalize() throws Throwable
+	} // public void close()
 
 	/**
 	 * Deletes the index file from the database, freeing all of its pages.
 	 */
 	public void deleteFile() {
+		if (handle != null) {
+			handle.close();
+			handle = null;
+		}
+		freePages(headId);
+		if (fileName != null) { // Not a temp page
+			Minibase.DiskManager.delete_file_entry(fileName);
+		}
+	} // public void deleteFile()
+
+	/**
+	 * Frees all of the pages of the index file with the given directory.
+	 */
+	protected static void freePages(PageId headId) {
 		PageId pageno = new PageId(headId.pid);
 		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+		PageId filterId = dirPage.getFilterPage();
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+		freeFilterPages(filterId);
 
 		// For all dir pages
-		while (pageno.pid != INVALID_PAGEID) {
+		for (int base = 0; pageno.pid != INVALID_PAGEID; base += HashDirPage.MAX_ENTRIES) {
 			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
 
 			for (int i = 0; i < dirPage.getEntryCount(); i++) {
-				PageId pid = dirPage.getNextPage();
+				if (base + i >= 1 << dirPage.getDepth(i)) { // a bucket shared with an earlier entry
+					continue;
+				}
+				PageId pid = dirPage.getPageId(i);
 				HashBucketPage hPage = new HashBucketPage();
 
 				while (pid.pid != INVALID_PAGEID) { // For all pages
@@ -95,11 +186,7 @@ public class HashIndex implements GlobalConst {
 			Minibase.BufferManager.freePage(pageno);
 			pageno.copyPageId(dirPage.getNextPage());
 		}
-
-		if (fileName != null) { // Not a temp page
-			Minibase.DiskManager.delete_file_entry(fileName);
-		}
-	} // public void deleteFile()
+	} // protected static void freePages(PageId headId)
 
 	/**
 	 * Inserts a new data entry into the index file.
@@ -114,38 +201,41 @@ public class HashIndex implements GlobalConst {
 			throw new IllegalArgumentException("Record is too large");
 		}
 
-		int hash = key.getHash(DEPTH);
-		PageId pageno = new PageId(headId.pid);
-		HashDirPage dirPage = new HashDirPage();
-
-		while (hash >= HashDirPage.MAX_ENTRIES) { // Find a page with space
-			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
-			PageId nextId = dirPage.getNextPage();
-			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
-			pageno = nextId;
-			hash -= HashDirPage.MAX_ENTRIES;
-		}
-
-		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
-
-		PageId pid = dirPage.getPageId(hash);
+		// Split the bucket until the entry fits, unless no split would make room
+		// (i.e. too many entries have the same hash value as the new one)
+		int length = entry.getLength() + SortedPage.SLOT_SIZE;
+		Bucket bucket = findBucket(key);
 		HashBucketPage dataPage = new HashBucketPage();
 
-		if (pid.pid != INVALID_PAGEID) { // existing page
-			Minibase.BufferManager.pinPage(pid, dataPage, PIN_DISKIO);
-			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
-		} else { // new page
-			pid = Minibase.BufferManager.newPage(dataPage, 1);
-			dirPage.setPageId(hash, pid);
-			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		while (bucket.pageno.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
+			boolean insert = dataPage.getFreeSpace() >= length || bucket.depth == MAX_DEPTH;
+			if (!insert) { // a split can't separate entries with the same hash value
+				int same = dataPage.getHashSpace(this, getHash(key, MAX_DEPTH), MAX_DEPTH);
+				insert = same + length > BUCKET_SIZE;
+			}
+			if (insert) {
+				dataPage.insertEntry(entry);
+				Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_DIRTY);
+				updateFilter(bucket, key);
+				return;
+			}
+			Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_CLEAN);
+			splitBucket(bucket);
+			bucket = findBucket(key);
 		}
 
+		// new page
+		PageId pid = Minibase.BufferManager.newPage(dataPage, 1);
+		setBucket(bucket.index, bucket.depth, pid);
 		dataPage.insertEntry(entry);
 		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		updateFilter(bucket, key);
 	} // public void insertEntry(SearchKey key, RID rid)
 
 	/**
-	 * Deletes the specified data entry from the index file.
+	 * Deletes the specified data entry from the index file. If the bucket becomes
+	 * sparse, it is merged with its buddy.
 	 * 
 	 * @throws IllegalArgumentException
 	 *           if the entry doesn't exist
@@ -153,37 +243,28 @@ public class HashIndex implements GlobalConst {
 	public void deleteEntry(SearchKey key, RID rid) {
 		DataEntry entry = new DataEntry(key, rid);
 
-		int hash = key.getHash(DEPTH);
-		PageId pageno = new PageId(headId.pid);
-		HashDirPage dirPage = new HashDirPage();
-
-		while (hash >= HashDirPage.MAX_ENTRIES) { // find the right page
-			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
-			PageId nextId = dirPage.getNextPage();
-			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
-			pageno = nextId;
-			hash -= HashDirPage.MAX_ENTRIES;
-		}
-
-		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
-
-		PageId newPid = dirPage.getPageId(hash);
-		Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+		Bucket bucket = findBucket(key);
 		HashBucketPage dataPage = new HashBucketPage();
 
-		if (newPid.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.pinPage(newPid, dataPage, PIN_DISKIO);
+		if (bucket.pageno.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
 		} else {
 			throw new IllegalArgumentException("entry doesn't exist");
 		}
 
 		try {
 			dataPage.deleteEntry(entry);
-			Minibase.BufferManager.unpinPage(newPid, UNPIN_DIRTY);
 		} catch (Exception e) {
-			Minibase.BufferManager.unpinPage(newPid, UNPIN_CLEAN);
+			Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_CLEAN);
 			throw e;
 		}
+		boolean sparse = dataPage.getNextPage().pid == INVALID_PAGEID && dataPage.getUsedSpace() <= MERGE_SIZE;
+		Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_DIRTY);
+		noteDelete(bucket);
+
+		if (sparse) {
+			mergeBucket(bucket);
+		}
 	} // public void deleteEntry(SearchKey key, RID rid)
 
 	/**
@@ -193,6 +274,87 @@ public class HashIndex implements GlobalConst {
 		return new HashScan(this, key);
 	}
 
+	/**
+	 * Probes the index for each of the given keys, passing the key and the RID of
+	 * every matching entry to the given action. This is much cheaper than a scan
+	 * per key: the keys are grouped by bucket so that each bucket page is pinned
+	 * once, and keys ruled out by their bucket's filter are skipped. Matches are
+	 * grouped by bucket rather than in the order of the keys.
+	 */
+	public void probeAll(SearchKey[] keys, BiConsumer<SearchKey, RID> action) {
+
+		// sort the keys by bucket page id (above their indexes)
+		long[] probes = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			int index = getHash(keys[i], globalDepth);
+			if (index < splitPtr) { // already split (for linear hashing)
+				index = getHash(keys[i], globalDepth + 1);
+			}
+			int pid = mightContain(getBucket(index), keys[i]) ? pageIds[index] : INVALID_PAGEID;
+			probes[i] = ((long) pid << 32) | i;
+		}
+		Arrays.sort(probes);
+
+		// and probe each bucket's pages for its keys
+		SortedPage dataPage = new SortedPage();
+		for (int start = 0, end; start < probes.length; start = end) {
+			PageId pageno = new PageId((int) (probes[start] >> 32));
+			end = start + 1;
+			while (end < probes.length && (int) (probes[end] >> 32) == pageno.pid) {
+				end++;
+			}
+
+			while (pageno.pid != INVALID_PAGEID) { // For all pages
+				Minibase.BufferManager.pinPage(pageno, dataPage, PIN_DISKIO);
+				for (int i = start; i < end; i++) {
+					SearchKey key = keys[(int) probes[i]];
+					for (int slot = dataPage.nextEntry(key, -1); slot >= 0; slot = dataPage.nextEntry(key, slot)) {
+						action.accept(key, dataPage.getRidAt(slot));
+					}
+				}
+				PageId nextId = dataPage.getNextPage();
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+				pageno = nextId;
+			}
+		}
+	} // public void probeAll(SearchKey[] keys, BiConsumer<SearchKey, RID> action)
+
+	/**
+	 * Turns the buckets' Bloom filters on or off. A scan or probe skips a bucket
+	 * whose filter rules out the key, so most lookups for keys that aren't in the
+	 * index pin no pages. The filters take FILTER_SIZE bytes per bucket, in
+	 * memory and in filter pages; inserts add to them (pinning a filter page
+	 * when that sets new bits), and a bucket's filter is rebuilt after every
+	 * FILTER_REBUILD deletes from it.
+	 */
+	public void setFiltered(boolean filtered) {
+		if (filtered == (filters != null)) {
+			return;
+		}
+
+		if (filtered) { // build every bucket's filter
+			filters = new byte[0];
+			filterPages = new int[0];
+			filterDeletes = new int[0];
+			ensureFilters(pageIds.length);
+			for (int i = 0; i < (1 << globalDepth) + splitPtr; i++) {
+				if (i < 1 << depths[i]) { // (not a bucket shared with an earlier entry)
+					computeFilter(i, new PageId(pageIds[i]));
+				}
+			}
+			writeFilters();
+		} else {
+			freeFilterPages(new PageId(filterPages[0]));
+			filters = null;
+			filterPages = null;
+			filterDeletes = null;
+			HashDirPage dirPage = new HashDirPage();
+			Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+			dirPage.setFilterPage(new PageId(INVALID_PAGEID));
+			Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		}
+	} // public void setFiltered(boolean filtered)
+
 	/**
 	 * Returns the name of the index file.
 	 */
@@ -200,20 +362,75 @@ public class HashIndex implements GlobalConst {
 		return fileName;
 	}
 
+	/**
+	 * Builds the index from the given entries (e.g. from a scan of a heap file),
+	 * along with any it already holds, much faster than inserting them one at a
+	 * time: the entries are partitioned by bucket in memory, then each bucket's
+	 * pages are written once, packed full, and the directory is written last.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the arrays differ in length, or an entry is too large
+	 */
+	public void bulkLoad(SearchKey[] keys, RID[] rids) {
+		if (keys.length != rids.length) {
+			throw new IllegalArgumentException("keys and rids differ in length");
+		}
+		ArrayList<DataEntry> entries = new ArrayList<DataEntry>(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			DataEntry entry = new DataEntry(keys[i], rids[i]);
+			if (entry.getLength() > MAX_TUPSIZE) {
+				throw new IllegalArgumentException("Record is too large");
+			}
+			entries.add(entry);
+		}
+
+		entries.addAll(0, removeAll());
+		build(entries);
+	} // public void bulkLoad(SearchKey[] keys, RID[] rids)
+
+	/**
+	 * Rebuilds the index with the given hash seed, moving every entry to its new
+	 * bucket. An index file written in an older format (i.e. with another hash
+	 * function or key format) can't be opened; it is migrated by building a new
+	 * index from its data file, with bulkLoad.
+	 */
+	public void rehash(int seed) {
+		ArrayList<DataEntry> entries = removeAll();
+
+		// switch the directory to the new seed
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		dirPage.setHashSeed(seed);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		hashSeed = seed;
+
+		// and build it again
+		build(entries);
+	} // public void rehash(int seed)
+
 	/**
 	 * Prints a high-level view of the directory, namely which buckets are allocated
-	 * and how many entries are stored in each one. Sample output:
+	 * and how many entries are stored in each one, followed by the distribution of
+	 * the bucket lengths (i.e. the number of buckets with 0, 1, 2-3, 4-7, ...
+	 * entries). Each bucket is listed once, by the hash bits (i.e. its local
+	 * depth) its entries share. Sample output:
 	 * 
 	 * <pre>
 	 * IX_Customers
 	 * ------------
 	 * 0000000 : 35
 	 * 0000001 : null
-	 * 0000010 : 27
+	 * 00000010 : 27
+	 * 10000010 : 31
 	 * ...
 	 * 1111111 : 42
 	 * ------------
 	 * Total : 1500
+	 * Buckets : 64 (1 empty, 0 overflowing)
+	 * Mean : 23.4, Std dev : 4.9, Max : 42
+	 * 0 : 1
+	 * 16-31 : 50
+	 * 32-63 : 13
 	 * </pre>
 	 */
 	public void printSummary() {
@@ -223,29 +440,46 @@ public class HashIndex implements GlobalConst {
 		System.out.println("-------------");
 
 		int total = 0;
+		int buckets = 0;
+		int overflows = 0;
+		int max = 0;
+		long squares = 0;
+		int[] lengths = new int[Integer.SIZE];
 
 		PageId pageno = new PageId(headId.pid);
 		HashDirPage dirPage = new HashDirPage();
 		HashBucketPage dataPage = new HashBucketPage();
 
-		while (pageno.pid != INVALID_PAGEID) { // For all records
+		for (int base = 0; pageno.pid != INVALID_PAGEID; base += HashDirPage.MAX_ENTRIES) { // For all records
 			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
 			int count = dirPage.getEntryCount();
 
 			for (int i = 0; i < count; i++) {
-				String address = String.format("%08d", Integer.toString(i));
+				int depth = dirPage.getDepth(i);
+				if (base + i >= 1 << depth) { // a bucket shared with an earlier entry
+					continue;
+				}
+				String address = Integer.toBinaryString((1 << depth) | (base + i)).substring(1);
 				System.out.print(address + " : ");
 
 				PageId pid = dirPage.getPageId(i);
+				int pageCount = 0;
 				if (pid.pid != INVALID_PAGEID) {
 					Minibase.BufferManager.pinPage(pid, dataPage, PIN_DISKIO);
-					int pageCount = dataPage.countEntries();
+					pageCount = dataPage.countEntries();
+					if (dataPage.getNextPage().pid != INVALID_PAGEID) {
+						overflows++;
+					}
 					System.out.println(pageCount);
 					total += pageCount;
 					Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
 				} else {
 					System.out.println("null");
 				}
+				buckets++;
+				max = Math.max(max, pageCount);
+				squares += (long) pageCount * pageCount;
+				lengths[Integer.SIZE - Integer.numberOfLeadingZeros(pageCount)]++;
 			}
 
 			PageId nextId = dirPage.getNextPage();
@@ -255,6 +489,736 @@ public class HashIndex implements GlobalConst {
 
 		System.out.println("-------------");
 		System.out.println("Total : " + total);
+
+		// and the distribution of the bucket lengths
+		double mean = (double) total / buckets;
+		double stdDev = Math.sqrt((double) squares / buckets - mean * mean);
+		System.out.println("Buckets : " + buckets + " (" + lengths[0] + " empty, " + overflows + " overflowing)");
+		System.out.printf("Mean : %.1f, Std dev : %.1f, Max : %d%n", mean, stdDev, max);
+		for (int i = 0; i < lengths.length; i++) {
+			if (lengths[i] > 0) {
+				int low = i == 0 ? 0 : 1 << (i - 1);
+				int high = i == 0 ? 0 : (1 << i) - 1;
+				System.out.println((low == high ? "" + low : low + "-" + high) + " : " + lengths[i]);
+			}
+		}
 	} // public void printSummary()
 
-} // public class HashIndex implements GlobalConst
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Removes all entries from the index, freeing the buckets and the later
+	 * directory pages; the directory is reset to its initial size, keeping the
+	 * hash seed.
+	 *
+	 * @return the removed entries
+	 */
+	protected ArrayList<DataEntry> removeAll() {
+		ArrayList<DataEntry> entries = new ArrayList<DataEntry>();
+		PageId pageno = new PageId(headId.pid);
+		HashDirPage dirPage = new HashDirPage();
+		HashBucketPage dataPage = new HashBucketPage();
+
+		for (int base = 0; pageno.pid != INVALID_PAGEID; base += HashDirPage.MAX_ENTRIES) {
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+			for (int i = 0; i < dirPage.getEntryCount(); i++) {
+				PageId pid = dirPage.getPageId(i);
+				if (base + i >= 1 << dirPage.getDepth(i) || pid.pid == INVALID_PAGEID) {
+					continue;
+				}
+				Minibase.BufferManager.pinPage(pid, dataPage, PIN_DISKIO);
+				entries.addAll(dataPage.removeAll());
+				Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+				Minibase.BufferManager.freePage(pid);
+			}
+			PageId nextId = dirPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			if (base > 0) {
+				Minibase.BufferManager.freePage(pageno);
+			}
+			pageno = nextId;
+		}
+
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		dirPage.initDefaults();
+		dirPage.setIndexKind(getIndexKind());
+		dirPage.setHashSeed(hashSeed);
+		if (filters != null) { // (build fills them in again)
+			dirPage.setFilterPage(new PageId(filterPages[0]));
+		}
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		loadDirectory();
+		return entries;
+	} // protected ArrayList<DataEntry> removeAll()
+
+	/**
+	 * Builds the (empty) index from the given entries. Each initial bucket is
+	 * split, in memory, for as long as its entries don't fit on a page, by
+	 * summing their sizes per hash value at each depth; the global depth is the
+	 * deepest bucket's. Only buckets with more than a page of entries with equal
+	 * hash values at MAX_DEPTH need overflow pages.
+	 */
+	protected void build(ArrayList<DataEntry> entries) {
+
+		// sum the entry sizes by their low hash bits, at each depth
+		int[] hashes = new int[entries.size()];
+		int[][] space = new int[MAX_DEPTH + 1][];
+		space[MAX_DEPTH] = new int[1 << MAX_DEPTH];
+		for (int i = 0; i < hashes.length; i++) {
+			DataEntry entry = entries.get(i);
+			hashes[i] = getHash(entry.key, MAX_DEPTH);
+			space[MAX_DEPTH][hashes[i]] += entry.getLength() + SortedPage.SLOT_SIZE;
+		}
+		for (int depth = MAX_DEPTH; depth > HashDirPage.INIT_DEPTH; depth--) {
+			int half = 1 << (depth - 1);
+			space[depth - 1] = new int[half];
+			for (int i = 0; i < half; i++) {
+				space[depth - 1][i] = space[depth][i] + space[depth][i + half];
+			}
+		}
+
+		// choose the buckets (by index and local depth) and the global depth
+		ArrayList<int[]> buckets = new ArrayList<int[]>();
+		for (int i = 0; i < HashDirPage.INIT_SIZE; i++) {
+			chooseBuckets(space, i, HashDirPage.INIT_DEPTH, buckets);
+		}
+		int globalDepth = HashDirPage.INIT_DEPTH;
+		for (int[] bucket : buckets) {
+			globalDepth = Math.max(globalDepth, bucket[1]);
+		}
+		int size = 1 << globalDepth;
+		int[] bucketNos = new int[size];
+		byte[] depths = new byte[size];
+		for (int b = 0; b < buckets.size(); b++) {
+			int[] bucket = buckets.get(b);
+			for (int i = bucket[0]; i < size; i += 1 << bucket[1]) {
+				bucketNos[i] = b;
+				depths[i] = (byte) bucket[1];
+			}
+		}
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = bucketNos[hashes[i] & (size - 1)];
+		}
+
+		// write each bucket's pages; only the initial buckets may be left empty
+		PageId[] pageIds = writeBuckets(entries, hashes, buckets.size());
+		int[] pids = new int[size];
+		for (int i = 0; i < size; i++) {
+			PageId pid = pageIds[bucketNos[i]];
+			if (pid.pid == INVALID_PAGEID && depths[i] > HashDirPage.INIT_DEPTH) {
+				HashBucketPage dataPage = new HashBucketPage();
+				pid.copyPageId(Minibase.BufferManager.newPage(dataPage, 1));
+				Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+			}
+			pids[i] = pid.pid;
+		}
+		writeDirectory(globalDepth, pids, depths);
+
+		if (filters != null) { // each bucket's filter is numbered by its index
+			int[] filterNos = new int[hashes.length];
+			for (int i = 0; i < hashes.length; i++) {
+				filterNos[i] = buckets.get(hashes[i])[0];
+			}
+			buildFilters(entries, filterNos);
+		}
+	} // protected void build(ArrayList<DataEntry> entries)
+
+	/**
+	 * Adds the bucket with the given index and local depth to the list (as {index,
+	 * depth}) if its entries fit on a page, or else the buckets it splits into.
+	 */
+	protected static void chooseBuckets(int[][] space, int index, int depth, ArrayList<int[]> buckets) {
+		if (depth == MAX_DEPTH || space[depth][index] <= BUCKET_SIZE) {
+			buckets.add(new int[] { index, depth });
+		} else {
+			chooseBuckets(space, index, depth + 1, buckets);
+			chooseBuckets(space, index | (1 << depth), depth + 1, buckets);
+		}
+	} // protected static void chooseBuckets(int[][] space, int index, int depth, ...)
+
+	/**
+	 * Writes the given entries into new buckets, given each entry's bucket
+	 * number, grouping them with a counting sort.
+	 *
+	 * @return the buckets' primary page ids, or INVALID_PAGEID for empty buckets
+	 */
+	protected static PageId[] writeBuckets(ArrayList<DataEntry> entries, int[] bucketNos, int count) {
+		int[] starts = new int[count + 1];
+		for (int b : bucketNos) {
+			starts[b + 1]++;
+		}
+		for (int b = 0; b < count; b++) {
+			starts[b + 1] += starts[b];
+		}
+		DataEntry[] sorted = new DataEntry[bucketNos.length];
+		int[] next = starts.clone();
+		for (int i = 0; i < bucketNos.length; i++) {
+			sorted[next[bucketNos[i]]++] = entries.get(i);
+		}
+
+		PageId[] pageIds = new PageId[count];
+		for (int b = 0; b < count; b++) {
+			if (starts[b] == starts[b + 1]) {
+				pageIds[b] = new PageId(INVALID_PAGEID);
+				continue;
+			}
+			HashBucketPage dataPage = new HashBucketPage();
+			pageIds[b] = Minibase.BufferManager.newPage(dataPage, 1);
+			dataPage.insertAll(Arrays.asList(sorted).subList(starts[b], starts[b + 1]));
+			Minibase.BufferManager.unpinPage(pageIds[b], UNPIN_DIRTY);
+		}
+		return pageIds;
+	} // protected static PageId[] writeBuckets(ArrayList<DataEntry> entries, ...)
+
+	/**
+	 * Gets the kind of index, saved in the directory (see HashDirPage).
+	 */
+	protected byte getIndexKind() {
+		return HashDirPage.KIND_EXTENDIBLE;
+	}
+
+	/**
+	 * Gets the hash value for the given key and depth, with the index's seed.
+	 */
+	protected int getHash(SearchKey key, int depth) {
+		return key.getHash(depth, hashSeed);
+	}
+
+	/**
+	 * Reads the directory into memory, along with the hash seed.
+	 */
+	protected void loadDirectory() {
+		PageId pageno = new PageId(headId.pid);
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+		hashSeed = dirPage.getHashSeed();
+		globalDepth = dirPage.getGlobalDepth();
+		splitPtr = dirPage.getSplitPtr();
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+
+		// 2^d + p entries (the split pointer p is 0 for extendible hashing)
+		int size = (1 << globalDepth) + splitPtr;
+		pageIds = new int[size];
+		depths = new byte[size];
+
+		// For all dir pages
+		for (int base = 0; pageno.pid != INVALID_PAGEID; base += HashDirPage.MAX_ENTRIES) {
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+			for (int i = 0; i < dirPage.getEntryCount(); i++) {
+				pageIds[base + i] = dirPage.getPageId(i).pid;
+				depths[base + i] = dirPage.getDepth(i);
+			}
+			PageId nextId = dirPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = nextId;
+		}
+	} // protected void loadDirectory()
+
+	/**
+	 * Finds the directory entry of the bucket for the given key.
+	 */
+	protected Bucket findBucket(SearchKey key) {
+		return getBucket(getHash(key, globalDepth));
+	}
+
+	/**
+	 * Gets the given directory entry, i.e. the bucket for the given hash value at
+	 * the global depth.
+	 */
+	protected Bucket getBucket(int index) {
+		return new Bucket(index, depths[index], globalDepth, new PageId(pageIds[index]));
+	}
+
+	/**
+	 * Points every directory entry whose low (depth) bits match those of the given
+	 * index at the given bucket page, with the given local depth.
+	 */
+	protected void setBucket(int index, int depth, PageId pid) {
+		int mask = (1 << depth) - 1;
+		PageId pageno = new PageId(headId.pid);
+		HashDirPage dirPage = new HashDirPage();
+
+		// For all dir pages
+		for (int base = 0; pageno.pid != INVALID_PAGEID; base += HashDirPage.MAX_ENTRIES) {
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+			boolean dirty = false;
+			for (int i = 0; i < dirPage.getEntryCount(); i++) {
+				if (((base + i) & mask) == (index & mask)) {
+					dirPage.setPageId(i, pid);
+					dirPage.setDepth(i, (byte) depth);
+					pageIds[base + i] = pid.pid;
+					depths[base + i] = (byte) depth;
+					dirty = true;
+				}
+			}
+			PageId nextId = dirPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, dirty ? UNPIN_DIRTY : UNPIN_CLEAN);
+			pageno = nextId;
+		}
+	} // protected void setBucket(int index, int depth, PageId pid)
+
+	/**
+	 * Splits a full bucket in two by the next bit of its hash values, doubling the
+	 * directory first if necessary.
+	 */
+	protected void splitBucket(Bucket bucket) {
+		int depth = bucket.depth;
+		if (depth == bucket.globalDepth) {
+			resizeDirectory(depth + 1);
+		}
+
+		// redistribute the entries, and rebuild both filters
+		int low = bucket.index & ((1 << depth) - 1);
+		int high = low | (1 << depth);
+		clearFilter(low);
+		clearFilter(high);
+		HashBucketPage dataPage = new HashBucketPage();
+		HashBucketPage newPage = new HashBucketPage();
+		Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
+		PageId newId = Minibase.BufferManager.newPage(newPage, 1);
+		for (DataEntry entry : dataPage.removeAll()) {
+			if (getHash(entry.key, depth + 1) >>> depth != 0) {
+				newPage.insertEntry(entry);
+				addToFilter(high, entry.key);
+			} else {
+				dataPage.insertEntry(entry);
+				addToFilter(low, entry.key);
+			}
+		}
+		Minibase.BufferManager.unpinPage(newId, UNPIN_DIRTY);
+		Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_DIRTY);
+		writeFilter(low);
+		writeFilter(high);
+
+		// and point the directory entries with the new bit set at the new page
+		setBucket(low, depth + 1, bucket.pageno);
+		setBucket(high, depth + 1, newId);
+	} // protected void splitBucket(Bucket bucket)
+
+	/**
+	 * Merges a sparse bucket with its buddy (the bucket differing in the last bit
+	 * of its local depth) for as long as their entries fit on half a page, then
+	 * halves the directory if no bucket needs the last bit. An empty bucket at
+	 * the initial depth is freed.
+	 */
+	protected void mergeBucket(Bucket bucket) {
+		HashBucketPage dataPage = new HashBucketPage();
+		HashBucketPage buddyPage = new HashBucketPage();
+		boolean merged = false;
+
+		while (bucket.depth > HashDirPage.INIT_DEPTH) {
+			int bit = 1 << (bucket.depth - 1);
+			Bucket buddy = getBucket(bucket.index ^ bit);
+			if (buddy.depth != bucket.depth) {
+				break;
+			}
+
+			// keep the page of the lower bucket
+			Bucket low = (bucket.index & bit) == 0 ? bucket : buddy;
+			Bucket high = (low == bucket) ? buddy : bucket;
+			Minibase.BufferManager.pinPage(low.pageno, dataPage, PIN_DISKIO);
+			Minibase.BufferManager.pinPage(high.pageno, buddyPage, PIN_DISKIO);
+			if (dataPage.getNextPage().pid != INVALID_PAGEID || buddyPage.getNextPage().pid != INVALID_PAGEID
+					|| dataPage.getUsedSpace() + buddyPage.getUsedSpace() > MERGE_SIZE) {
+				Minibase.BufferManager.unpinPage(high.pageno, UNPIN_CLEAN);
+				Minibase.BufferManager.unpinPage(low.pageno, UNPIN_CLEAN);
+				break;
+			}
+			for (DataEntry entry : buddyPage.removeAll()) {
+				dataPage.insertEntry(entry);
+			}
+			Minibase.BufferManager.unpinPage(high.pageno, UNPIN_CLEAN);
+			Minibase.BufferManager.freePage(high.pageno);
+			Minibase.BufferManager.unpinPage(low.pageno, UNPIN_DIRTY);
+			mergeFilter(getFilterNo(low), getFilterNo(high));
+
+			setBucket(low.index, bucket.depth - 1, low.pageno);
+			bucket = getBucket(low.index);
+			merged = true;
+		}
+
+		// free an empty bucket that can't be merged
+		if (bucket.depth <= HashDirPage.INIT_DEPTH) {
+			Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
+			boolean empty = dataPage.getEntryCount() == 0 && dataPage.getNextPage().pid == INVALID_PAGEID;
+			Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_CLEAN);
+			if (empty) {
+				Minibase.BufferManager.freePage(bucket.pageno);
+				setBucket(bucket.index, bucket.depth, new PageId(INVALID_PAGEID));
+				clearFilter(getFilterNo(bucket));
+				writeFilter(getFilterNo(bucket));
+			}
+		}
+
+		// halve the directory while it can be
+		int depth = bucket.globalDepth;
+		while (merged && depth > HashDirPage.INIT_DEPTH && getMaxDepth() < depth) {
+			resizeDirectory(--depth);
+		}
+	} // protected void mergeBucket(Bucket bucket)
+
+	/**
+	 * Gets the largest local depth of any bucket.
+	 */
+	protected int getMaxDepth() {
+		int max = 0;
+		for (int i = 0; i < 1 << globalDepth; i++) {
+			max = Math.max(max, depths[i]);
+		}
+		return max;
+	} // protected int getMaxDepth()
+
+	/**
+	 * Doubles or halves the directory to the given global depth; each new entry
+	 * is a copy of the one whose index differs in the last bit.
+	 */
+	protected void resizeDirectory(int depth) {
+		int oldSize = 1 << globalDepth;
+		int newSize = 1 << depth;
+		int[] newPids = new int[newSize];
+		byte[] newDepths = new byte[newSize];
+		for (int i = 0; i < newSize; i++) {
+			newPids[i] = pageIds[i % oldSize];
+			newDepths[i] = depths[i % oldSize];
+		}
+		writeDirectory(depth, newPids, newDepths);
+	} // protected void resizeDirectory(int depth)
+
+	/**
+	 * Writes the given global depth and directory entries (bucket page ids and
+	 * local depths), keeping the arrays as the in-memory copy; directory pages are
+	 * added to or freed from the end of the list as needed.
+	 */
+	protected void writeDirectory(int depth, int[] pids, byte[] depths) {
+		globalDepth = depth;
+		pageIds = pids;
+		this.depths = depths;
+
+		PageId pageno = new PageId(headId.pid);
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+		dirPage.setGlobalDepth((byte) depth);
+		for (int base = 0;; base += HashDirPage.MAX_ENTRIES) {
+			int count = Math.min(HashDirPage.MAX_ENTRIES, pids.length - base);
+			for (int i = 0; i < count; i++) {
+				dirPage.setPageId(i, new PageId(pids[base + i]));
+				dirPage.setDepth(i, depths[base + i]);
+			}
+			dirPage.setEntryCount((short) count);
+			PageId nextId = dirPage.getNextPage();
+
+			if (base + count == pids.length) { // the last page; free any after it
+				dirPage.setNextPage(new PageId(INVALID_PAGEID));
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+				while (nextId.pid != INVALID_PAGEID) {
+					pageno = nextId;
+					Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+					nextId = dirPage.getNextPage();
+					Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+					Minibase.BufferManager.freePage(pageno);
+				}
+				break;
+			}
+
+			HashDirPage nextPage = new HashDirPage();
+			if (nextId.pid == INVALID_PAGEID) {
+				nextId = Minibase.BufferManager.newPage(nextPage, 1);
+				dirPage.setNextPage(nextId);
+			} else {
+				Minibase.BufferManager.pinPage(nextId, nextPage, PIN_DISKIO);
+			}
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+			pageno = nextId;
+			dirPage = nextPage;
+		}
+
+	} // protected void writeDirectory(int depth, int[] pids, byte[] depths)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Gets the hash value that chooses a key's bits in a filter; its seed differs
+	 * from the index's, so that it is independent of the key's bucket.
+	 */
+	protected int getFilterHash(SearchKey key) {
+		return key.getHash(Integer.SIZE - 1, ~hashSeed);
+	}
+
+	/**
+	 * Gets the number of the given bucket's filter: its lowest directory index.
+	 */
+	protected static int getFilterNo(Bucket bucket) {
+		return bucket.index & ((1 << bucket.depth) - 1);
+	}
+
+	/**
+	 * Tests whether the given bucket might contain the given key, i.e. whether it
+	 * has no filter or its filter doesn't rule out the key.
+	 */
+	protected boolean mightContain(Bucket bucket, SearchKey key) {
+		return filters == null || HashFilterPage.mightContain(filters, getFilterNo(bucket), getFilterHash(key));
+	}
+
+	/**
+	 * Adds the given key (just inserted) to its bucket's filter, if any, writing
+	 * the filter if that sets new bits.
+	 */
+	protected void updateFilter(Bucket bucket, SearchKey key) {
+		if (addToFilter(getFilterNo(bucket), key)) {
+			writeFilter(getFilterNo(bucket));
+		}
+	}
+
+	/**
+	 * Counts a delete from the given bucket, rebuilding its filter (if any) once
+	 * there have been FILTER_REBUILD of them.
+	 */
+	protected void noteDelete(Bucket bucket) {
+		int filter = getFilterNo(bucket);
+		if (filters != null && ++filterDeletes[filter] >= FILTER_REBUILD) {
+			computeFilter(filter, bucket.pageno);
+			writeFilter(filter);
+		}
+	}
+
+	/**
+	 * Adds the given key to the given filter, in memory only.
+	 *
+	 * @return true if that set new bits (false if there are no filters)
+	 */
+	protected boolean addToFilter(int filter, SearchKey key) {
+		if (filters == null) {
+			return false;
+		}
+		ensureFilters(filter + 1);
+		return HashFilterPage.add(filters, filter, getFilterHash(key));
+	}
+
+	/**
+	 * Empties the given filter, if any, in memory only.
+	 */
+	protected void clearFilter(int filter) {
+		if (filters != null) {
+			ensureFilters(filter + 1);
+			Arrays.fill(filters, filter * HashFilterPage.FILTER_SIZE, (filter + 1) * HashFilterPage.FILTER_SIZE, (byte) 0);
+			filterDeletes[filter] = 0;
+		}
+	}
+
+	/**
+	 * Merges the second filter into the first, if any, and writes it; used when
+	 * merging their buckets.
+	 */
+	protected void mergeFilter(int filter, int other) {
+		if (filters != null) {
+			ensureFilters(Math.max(filter, other) + 1);
+			for (int i = 0; i < HashFilterPage.FILTER_SIZE; i++) {
+				filters[filter * HashFilterPage.FILTER_SIZE + i] |= filters[other * HashFilterPage.FILTER_SIZE + i];
+			}
+			filterDeletes[filter] += filterDeletes[other];
+			writeFilter(filter);
+		}
+	}
+
+	/**
+	 * Rebuilds the given filter (in memory only) from the keys in the bucket with
+	 * the given primary page id, which is pinned one page at a time.
+	 */
+	protected void computeFilter(int filter, PageId pageno) {
+		clearFilter(filter);
+		PageId pid = new PageId(pageno.pid);
+		SortedPage dataPage = new SortedPage();
+		while (pid.pid != INVALID_PAGEID) { // For all pages
+			Minibase.BufferManager.pinPage(pid, dataPage, PIN_DISKIO);
+			for (int i = 0; i < dataPage.getEntryCount(); i++) {
+				addToFilter(filter, dataPage.getKeyAt(i));
+			}
+			PageId nextId = dataPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+			pid = nextId;
+		}
+	} // protected void computeFilter(int filter, PageId pageno)
+
+	/**
+	 * Rebuilds every filter (if any) from the given entries, given each one's
+	 * filter number, and writes them all.
+	 */
+	protected void buildFilters(ArrayList<DataEntry> entries, int[] filterNos) {
+		if (filters == null) {
+			return;
+		}
+		ensureFilters(pageIds.length);
+		Arrays.fill(filters, (byte) 0);
+		Arrays.fill(filterDeletes, 0);
+		for (int i = 0; i < filterNos.length; i++) {
+			addToFilter(filterNos[i], entries.get(i).key);
+		}
+		writeFilters();
+	} // protected void buildFilters(ArrayList<DataEntry> entries, int[] filterNos)
+
+	/**
+	 * Makes room for at least the given number of filters, adding (empty) filter
+	 * pages to the end of the list as needed; the list never shrinks.
+	 */
+	protected void ensureFilters(int count) {
+		if (count * HashFilterPage.FILTER_SIZE <= filters.length) {
+			return;
+		}
+		int oldPages = filterPages.length;
+		int pages = Math.max(oldPages * 2, (count + HashFilterPage.MAX_FILTERS - 1) / HashFilterPage.MAX_FILTERS);
+		filters = Arrays.copyOf(filters, pages * HashFilterPage.MAX_FILTERS * HashFilterPage.FILTER_SIZE);
+		filterDeletes = Arrays.copyOf(filterDeletes, pages * HashFilterPage.MAX_FILTERS);
+		filterPages = Arrays.copyOf(filterPages, pages);
+
+		for (int i = oldPages; i < pages; i++) {
+			HashFilterPage filterPage = new HashFilterPage();
+			PageId pageno = Minibase.BufferManager.newPage(filterPage, 1);
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+			filterPages[i] = pageno.pid;
+
+			if (i == 0) { // link it from the directory, or the previous page
+				HashDirPage dirPage = new HashDirPage();
+				Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+				dirPage.setFilterPage(pageno);
+				Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+			} else {
+				PageId prevId = new PageId(filterPages[i - 1]);
+				Minibase.BufferManager.pinPage(prevId, filterPage, PIN_DISKIO);
+				filterPage.setNextPage(pageno);
+				Minibase.BufferManager.unpinPage(prevId, UNPIN_DIRTY);
+			}
+		}
+	} // protected void ensureFilters(int count)
+
+	/**
+	 * Writes the given filter (if any) to its filter page.
+	 */
+	protected void writeFilter(int filter) {
+		if (filters != null) {
+			PageId pageno = new PageId(filterPages[filter / HashFilterPage.MAX_FILTERS]);
+			HashFilterPage filterPage = new HashFilterPage();
+			Minibase.BufferManager.pinPage(pageno, filterPage, PIN_DISKIO);
+			filterPage.setFilter(filters, filter);
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		}
+	}
+
+	/**
+	 * Writes every filter to the filter pages.
+	 */
+	protected void writeFilters() {
+		HashFilterPage filterPage = new HashFilterPage();
+		for (int i = 0; i < filterPages.length; i++) {
+			PageId pageno = new PageId(filterPages[i]);
+			Minibase.BufferManager.pinPage(pageno, filterPage, PIN_DISKIO);
+			for (int j = 0; j < HashFilterPage.MAX_FILTERS; j++) {
+				filterPage.setFilter(filters, i * HashFilterPage.MAX_FILTERS + j);
+			}
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		}
+	} // protected void writeFilters()
+
+	/**
+	 * Reads the filters, if the index has them, into memory.
+	 */
+	protected void loadFilters() {
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		PageId pageno = dirPage.getFilterPage();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+
+		ArrayList<Integer> pids = new ArrayList<Integer>();
+		HashFilterPage filterPage = new HashFilterPage();
+		while (pageno.pid != INVALID_PAGEID) { // For all pages
+			pids.add(pageno.pid);
+			Minibase.BufferManager.pinPage(pageno, filterPage, PIN_DISKIO);
+			PageId nextId = filterPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = nextId;
+		}
+		if (pids.isEmpty()) {
+			return;
+		}
+
+		filterPages = new int[pids.size()];
+		filters = new byte[pids.size() * HashFilterPage.MAX_FILTERS * HashFilterPage.FILTER_SIZE];
+		filterDeletes = new int[pids.size() * HashFilterPage.MAX_FILTERS];
+		for (int i = 0; i < filterPages.length; i++) {
+			filterPages[i] = pids.get(i);
+			pageno.pid = filterPages[i];
+			Minibase.BufferManager.pinPage(pageno, filterPage, PIN_DISKIO);
+			filterPage.getFilters(filters, i * HashFilterPage.MAX_FILTERS);
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+		}
+	} // protected void loadFilters()
+
+	/**
+	 * Frees the list of filter pages starting with the given one.
+	 */
+	protected static void freeFilterPages(PageId pageno) {
+		HashFilterPage filterPage = new HashFilterPage();
+		while (pageno.pid != INVALID_PAGEID) { // For all pages
+			Minibase.BufferManager.pinPage(pageno, filterPage, PIN_DISKIO);
+			PageId nextId = filterPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			Minibase.BufferManager.freePage(pageno);
+			pageno = nextId;
+		}
+	} // protected static void freeFilterPages(PageId pageno)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Frees the pages of a temporary index after it leaks.
+	 */
+	protected static class TempIndex implements Runnable {
+
+		/** Page id of the directory. */
+		protected final PageId headId;
+
+		/**
+		 * Constructs the release action for the given index.
+		 */
+		protected TempIndex(PageId headId) {
+			this.headId = new PageId(headId.pid);
+		}
+
+		/**
+		 * Frees the index's pages.
+		 */
+		public void run() {
+			freePages(headId);
+		}
+
+	} // protected static class TempIndex implements Runnable
+
+	/**
+	 * A directory entry, i.e. a bucket, as found by a lookup.
+	 */
+	protected static class Bucket {
+
+		/** Index of the directory entry. */
+		protected final int index;
+
+		/** Local depth of the bucket. */
+		protected final int depth;
+
+		/** Global depth of the directory. */
+		protected final int globalDepth;
+
+		/** Id of the bucket's primary page, or INVALID_PAGEID. */
+		protected final PageId pageno;
+
+		/**
+		 * Constructs a bucket from its directory entry.
+		 */
+		protected Bucket(int index, int depth, int globalDepth, PageId pageno) {
+			this.index = index;
+			this.depth = depth;
+			this.globalDepth = globalDepth;
+			this.pageno = pageno;
+		}
+
+	} // protected static class Bucket
+
+} // public class HashIndex implements GlobalConst, AutoCloseable
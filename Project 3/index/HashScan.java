@@ -10,14 +10,17 @@ import global.GlobalConst;
 import global.Minibase;
 import global.PageId;
 import global.RID;
+import global.ResourceCleaner;
 import global.SearchKey;
 
 /**
  * A HashScan retrieves all records with a given key (via the RIDs of the
  * records). It is created only through the function openScan() in the HashIndex
- * class.
+ * class. A scan should be closed as soon as it is no longer needed; if it
+ * becomes unreachable while still open, its page is unpinned later and the leak
+ * is reported (see ResourceCleaner).
  */
-public class HashScan implements GlobalConst {
+public class HashScan implements GlobalConst, AutoCloseable {
 
 	/** The search key to scan for. */
 	protected SearchKey key;
@@ -31,55 +34,33 @@ public class HashScan implements GlobalConst {
 	/** Current slot to scan from. */
 	protected int curSlot;
 
+	/** Registration of the scan's pin with the resource cleaner. */
+	protected ResourceCleaner.Handle handle;
+
 	// --------------------------------------------------------------------------
 
 	/**
 	 * Constructs an equality scan by initializing the iterator state.
 	 */
 	protected HashScan(HashIndex index, SearchKey key) {
-		int hash = key.getHash(index.DEPTH);
-		this.key = new SearchKey(key);
-
-		PageId pageno = new PageId(index.headId.pid);
-		HashDirPage dirPage = new HashDirPage();
-
-		while (hash >= HashDirPage.MAX_ENTRIES) {
-			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
-			PageId nextId = dirPage.getNextPage();
-			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
-			pageno = nextId;
-			hash -= HashDirPage.MAX_ENTRIES;
-		}
-
-		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
-		curPageId = dirPage.getPageId(hash);
-		Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+		this.key = key; // (search keys are immutable)
+		HashIndex.Bucket bucket = index.findBucket(key);
+		curPageId = index.mightContain(bucket, key) ? bucket.pageno : new PageId(INVALID_PAGEID);
 		curPage = new HashBucketPage();
 
 		if (curPageId.pid != INVALID_PAGEID) {
 			Minibase.BufferManager.pinPage(curPageId, curPage, PIN_DISKIO);
 			curSlot = EMPTY_SLOT;
 		}
+		handle = ResourceCleaner.register(this, new Pin(curPageId), "HashScan");
 	} // protected HashScan(HashIndex index, SearchKey key)
 
-	/**
-	 * Called by the garbage collector when there are no more references to the
-	 * object; closes the scan if it's still open.
-	 */
-	protected void finalize() throws Throwable {
-		if (curPageId.pid != INVALID_PAGEID) {
-			close();
-		}
-	} // protected void finalize() throws Throwable
-
 	/**
 	 * Closes the index scan, releasing any pinned pages.
 	 */
 	public void close() {
-		if (curPageId.pid != INVALID_PAGEID) {
-			Minibase.BufferManager.unpinPage(curPageId, UNPIN_CLEAN);
-			curPageId.pid = INVALID_PAGEID;
-		}
+		handle.close();
+		new Pin(curPageId).run();
 	} // public void close()
 
 	/**
@@ -95,19 +76,50 @@ public class HashScan implements GlobalConst {
 			if (curSlot < 0) {
 				PageId nextId = curPage.getNextPage();
 				Minibase.BufferManager.unpinPage(curPageId, UNPIN_CLEAN); // unpin the old
-				curPageId = nextId;
+				curPageId.copyPageId(nextId); // (the same object, for the cleaner)
 				if (curPageId.pid != INVALID_PAGEID) {
 					Minibase.BufferManager.pinPage(curPageId, curPage, PIN_DISKIO); // pin the new
 				}
 			} else {
 				try {
-					return curPage.getEntryAt(curSlot).rid;
+					return curPage.getRidAt(curSlot);
 				} catch (Exception e) {
 					throw new IllegalStateException("No More Entries");
 				}
 			}
 		}
-		return null; // There is no next
+		handle.close(); // There is no next, and nothing left pinned
+		return null;
 	} // public RID getNext()
 
-} // public class HashScan implements GlobalConst
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Unpins the page a scan has pinned, if any; it shares the scan's current
+	 * page id, so that the page can be unpinned after the scan leaks.
+	 */
+	protected static class Pin implements Runnable {
+
+		/** Id of the pinned page, or INVALID_PAGEID. */
+		protected final PageId pageno;
+
+		/**
+		 * Constructs the release action for the given (current) page id.
+		 */
+		protected Pin(PageId pageno) {
+			this.pageno = pageno;
+		}
+
+		/**
+		 * Unpins the page.
+		 */
+		public void run() {
+			if (pageno.pid != INVALID_PAGEID) {
+				Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+				pageno.pid = INVALID_PAGEID;
+			}
+		}
+
+	} // protected static class Pin implements Runnable
+
+} // public class HashScan implements GlobalConst, AutoCloseable
@@ -0,0 +1,386 @@
+package index;
+
+import global.Minibase;
+import global.PageId;
+import global.RID;
+import global.SearchKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * <h3>Minibase Linear Hash Index</h3> This unclustered index implements linear
+ * hashing as described on pages 379 to 385 of the textbook (3rd edition). The
+ * directory lists every bucket; at depth d with split pointer p there are 2^d +
+ * p buckets. A key hashes to its low d bits, or to its low d + 1 bits if the
+ * former bucket (i.e. one below p) has already been split in this round.<br>
+ * <br>
+ * Instead of doubling the directory when one bucket overflows, the index grows
+ * by splitting the bucket at the split pointer whenever the load factor (the
+ * space used by entries over the space of the buckets' primary pages) exceeds
+ * MAX_LOAD, so the cost of growth is spread evenly over the inserts; until its
+ * turn comes, an overflowing bucket uses overflow pages. Likewise, the last
+ * bucket is merged back into its partner when the load factor falls below
+ * MIN_LOAD.
+ */
+public class LinearHashIndex extends HashIndex {
+
+	/** Load factor above which the next bucket is split. */
+	protected static final double MAX_LOAD = 0.75;
+
+	/** Load factor below which the last bucket is merged. */
+	protected static final double MIN_LOAD = 0.5;
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * Opens a linear hash index file given its name, or creates a new index file
+	 * if the name doesn't exist; a null name produces a temporary index file (see
+	 * HashIndex). The index initially has 128 buckets.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the named file is another kind of index
+	 */
+	public LinearHashIndex(String fileName) {
+		super(fileName);
+	}
+
+	/**
+	 * Inserts a new data entry into the index file, then splits the next bucket
+	 * if the index is too full.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the entry is too large
+	 */
+	public void insertEntry(SearchKey key, RID rid) {
+		DataEntry entry = new DataEntry(key, rid);
+
+		if (entry.getLength() > MAX_TUPSIZE) {
+			throw new IllegalArgumentException("Record is too large");
+		}
+
+		Bucket bucket = findBucket(key);
+		HashBucketPage dataPage = new HashBucketPage();
+
+		if (bucket.pageno.pid != INVALID_PAGEID) { // existing page
+			Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
+			dataPage.insertEntry(entry);
+			Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_DIRTY);
+		} else { // new page
+			PageId pid = Minibase.BufferManager.newPage(dataPage, 1);
+			setBucket(bucket.index, bucket.depth, pid);
+			dataPage.insertEntry(entry);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		updateFilter(bucket, key);
+
+		if (updateLoad(entry.getLength() + SortedPage.SLOT_SIZE) > MAX_LOAD) {
+			splitNext();
+		}
+	} // public void insertEntry(SearchKey key, RID rid)
+
+	/**
+	 * Deletes the specified data entry from the index file, then merges the last
+	 * bucket if the index is too empty.
+	 *
+	 * @throws IllegalArgumentException
+	 *           if the entry doesn't exist
+	 */
+	public void deleteEntry(SearchKey key, RID rid) {
+		DataEntry entry = new DataEntry(key, rid);
+
+		Bucket bucket = findBucket(key);
+		HashBucketPage dataPage = new HashBucketPage();
+
+		if (bucket.pageno.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
+		} else {
+			throw new IllegalArgumentException("entry doesn't exist");
+		}
+
+		try {
+			dataPage.deleteEntry(entry);
+			Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_DIRTY);
+		} catch (Exception e) {
+			Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_CLEAN);
+			throw e;
+		}
+		noteDelete(bucket);
+
+		if (updateLoad(-(entry.getLength() + SortedPage.SLOT_SIZE)) < MIN_LOAD) {
+			mergeLast();
+		}
+	} // public void deleteEntry(SearchKey key, RID rid)
+
+	// --------------------------------------------------------------------------
+
+	/**
+	 * The directory of a linear hash index has its own kind.
+	 */
+	protected byte getIndexKind() {
+		return HashDirPage.KIND_LINEAR;
+	}
+
+	/**
+	 * Finds the directory entry of the bucket for the given key.
+	 */
+	protected Bucket findBucket(SearchKey key) {
+		int index = getHash(key, globalDepth);
+		if (index < splitPtr) { // already split
+			index = getHash(key, globalDepth + 1);
+		}
+		return getBucket(index);
+	} // protected Bucket findBucket(SearchKey key)
+
+	/**
+	 * Builds the (empty) index from the given entries, with as many buckets as
+	 * keep the load factor within MAX_LOAD: 2^d + p buckets, as if the index had
+	 * grown to them by splitting.
+	 */
+	protected void build(ArrayList<DataEntry> entries) {
+		long used = 0;
+		for (DataEntry entry : entries) {
+			used += entry.getLength() + SortedPage.SLOT_SIZE;
+		}
+		int count = (int) Math.max(HashDirPage.INIT_SIZE, Math.ceil(used / (MAX_LOAD * BUCKET_SIZE)));
+		int depth = 31 - Integer.numberOfLeadingZeros(count);
+		int next = count - (1 << depth);
+
+		// find each entry's bucket, and write them
+		int[] bucketNos = new int[entries.size()];
+		for (int i = 0; i < bucketNos.length; i++) {
+			SearchKey key = entries.get(i).key;
+			bucketNos[i] = getHash(key, depth);
+			if (bucketNos[i] < next) { // already split
+				bucketNos[i] = getHash(key, depth + 1);
+			}
+		}
+		PageId[] pageIds = writeBuckets(entries, bucketNos, count);
+
+		// then the directory
+		int[] pids = new int[count];
+		byte[] depths = new byte[count];
+		for (int i = 0; i < count; i++) {
+			pids[i] = pageIds[i].pid;
+			depths[i] = (byte) (i < next || i >= 1 << depth ? depth + 1 : depth);
+		}
+		writeDirectory(depth, pids, depths);
+		buildFilters(entries, bucketNos);
+
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		dirPage.setSplitPtr(next);
+		dirPage.setUsedSpace((int) used);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		splitPtr = next;
+	} // protected void build(ArrayList<DataEntry> entries)
+
+	/**
+	 * Adds to the space used by entries.
+	 *
+	 * @return the new load factor
+	 */
+	protected double updateLoad(int delta) {
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		int used = dirPage.getUsedSpace() + delta;
+		dirPage.setUsedSpace(used);
+		int buckets = (1 << dirPage.getGlobalDepth()) + dirPage.getSplitPtr();
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		return (double) used / ((long) buckets * BUCKET_SIZE);
+	} // protected double updateLoad(int delta)
+
+	/**
+	 * Splits the bucket at the split pointer, moving the entries with the next
+	 * hash bit set to a new bucket at the end of the directory, and advances the
+	 * split pointer (to the next round, if the number of buckets doubled).
+	 */
+	protected void splitNext() {
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		int depth = dirPage.getGlobalDepth();
+		int next = dirPage.getSplitPtr();
+		if (++next == 1 << depth) {
+			dirPage.setGlobalDepth((byte) ++depth);
+			next = 0;
+		}
+		dirPage.setSplitPtr(next);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		globalDepth = depth;
+		splitPtr = next;
+
+		// append the new bucket, then redistribute the old one's entries (and
+		// rebuild both filters)
+		Bucket bucket = getBucket(next == 0 ? (1 << (depth - 1)) - 1 : next - 1);
+		int image = appendBucket(bucket.depth + 1);
+		setBucket(bucket.index, bucket.depth + 1, bucket.pageno);
+		clearFilter(bucket.index);
+		clearFilter(image);
+		if (bucket.pageno.pid == INVALID_PAGEID) {
+			writeFilter(bucket.index);
+			writeFilter(image);
+			return;
+		}
+
+		HashBucketPage dataPage = new HashBucketPage();
+		HashBucketPage newPage = null;
+		PageId newId = null;
+		Minibase.BufferManager.pinPage(bucket.pageno, dataPage, PIN_DISKIO);
+		for (DataEntry entry : dataPage.removeAll()) {
+			if (getHash(entry.key, bucket.depth + 1) == image) {
+				if (newPage == null) {
+					newPage = new HashBucketPage();
+					newId = Minibase.BufferManager.newPage(newPage, 1);
+				}
+				newPage.insertEntry(entry);
+				addToFilter(image, entry.key);
+			} else {
+				dataPage.insertEntry(entry);
+				addToFilter(bucket.index, entry.key);
+			}
+		}
+		Minibase.BufferManager.unpinPage(bucket.pageno, UNPIN_DIRTY);
+		if (newPage != null) {
+			Minibase.BufferManager.unpinPage(newId, UNPIN_DIRTY);
+			setBucket(image, bucket.depth + 1, newId);
+		}
+		writeFilter(bucket.index);
+		writeFilter(image);
+
+	} // protected void splitNext()
+
+	/**
+	 * Merges the last bucket back into its partner (the bucket it was split from),
+	 * and moves the split pointer back, unless the index is at its initial size.
+	 */
+	protected void mergeLast() {
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(headId, dirPage, PIN_DISKIO);
+		int depth = dirPage.getGlobalDepth();
+		int next = dirPage.getSplitPtr();
+		if (next == 0 && depth == HashDirPage.INIT_DEPTH) {
+			Minibase.BufferManager.unpinPage(headId, UNPIN_CLEAN);
+			return;
+		}
+		if (next-- == 0) {
+			dirPage.setGlobalDepth((byte) --depth);
+			next = (1 << depth) - 1;
+		}
+		dirPage.setSplitPtr(next);
+		Minibase.BufferManager.unpinPage(headId, UNPIN_DIRTY);
+		globalDepth = depth;
+		splitPtr = next;
+
+		// move the last bucket's entries into its partner
+		Bucket last = getBucket((1 << depth) + next);
+		Bucket bucket = getBucket(next);
+		removeLastBucket();
+		if (last.pageno.pid == INVALID_PAGEID) {
+			setBucket(bucket.index, depth, bucket.pageno);
+			return;
+		}
+
+		HashBucketPage lastPage = new HashBucketPage();
+		HashBucketPage dataPage = new HashBucketPage();
+		PageId pid = bucket.pageno;
+		Minibase.BufferManager.pinPage(last.pageno, lastPage, PIN_DISKIO);
+		if (pid.pid != INVALID_PAGEID) {
+			Minibase.BufferManager.pinPage(pid, dataPage, PIN_DISKIO);
+		} else {
+			pid = Minibase.BufferManager.newPage(dataPage, 1);
+		}
+		for (DataEntry entry : lastPage.removeAll()) {
+			dataPage.insertEntry(entry);
+		}
+		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		Minibase.BufferManager.unpinPage(last.pageno, UNPIN_CLEAN);
+		Minibase.BufferManager.freePage(last.pageno);
+		setBucket(bucket.index, depth, pid);
+		mergeFilter(bucket.index, last.index);
+
+	} // protected void mergeLast()
+
+	/**
+	 * Adds an empty bucket with the given depth to the end of the directory,
+	 * adding a directory page if necessary.
+	 *
+	 * @return the index of the new bucket
+	 */
+	protected int appendBucket(int depth) {
+		PageId pageno = new PageId(headId.pid);
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+		int base = 0;
+
+		while (dirPage.getNextPage().pid != INVALID_PAGEID) { // find the last page
+			PageId nextId = dirPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			pageno = nextId;
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+			base += HashDirPage.MAX_ENTRIES;
+		}
+
+		int count = dirPage.getEntryCount();
+		if (count == HashDirPage.MAX_ENTRIES) { // If the last page is full, add one
+			HashDirPage newPage = new HashDirPage();
+			PageId newId = Minibase.BufferManager.newPage(newPage, 1);
+			newPage.setEntryCount((short) 0);
+			dirPage.setNextPage(newId);
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+			pageno = newId;
+			dirPage = newPage;
+			base += HashDirPage.MAX_ENTRIES;
+			count = 0;
+		}
+
+		dirPage.setPageId(count, new PageId(INVALID_PAGEID));
+		dirPage.setDepth(count, (byte) depth);
+		dirPage.setEntryCount((short) (count + 1));
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+
+		if (base + count == pageIds.length) { // grow the in-memory copy
+			pageIds = Arrays.copyOf(pageIds, pageIds.length * 2);
+			depths = Arrays.copyOf(depths, depths.length * 2);
+		}
+		pageIds[base + count] = INVALID_PAGEID;
+		depths[base + count] = (byte) depth;
+		return base + count;
+
+	} // protected int appendBucket(int depth)
+
+	/**
+	 * Removes the last bucket's entry from the end of the directory, freeing the
+	 * last directory page if it becomes empty (but not its pages).
+	 */
+	protected void removeLastBucket() {
+		PageId pageno = new PageId(headId.pid);
+		PageId prevId = null;
+		HashDirPage dirPage = new HashDirPage();
+		Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+		int base = 0;
+
+		while (dirPage.getNextPage().pid != INVALID_PAGEID) { // find the last page
+			PageId nextId = dirPage.getNextPage();
+			Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+			prevId = pageno;
+			pageno = nextId;
+			Minibase.BufferManager.pinPage(pageno, dirPage, PIN_DISKIO);
+			base += HashDirPage.MAX_ENTRIES;
+		}
+
+		int count = dirPage.getEntryCount() - 1;
+		dirPage.setPageId(count, new PageId(INVALID_PAGEID));
+		dirPage.setEntryCount((short) count);
+		Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+		pageIds[base + count] = INVALID_PAGEID;
+
+		if (count == 0 && prevId != null) { // unlink and free the empty page
+			Minibase.BufferManager.freePage(pageno);
+			Minibase.BufferManager.pinPage(prevId, dirPage, PIN_DISKIO);
+			dirPage.setNextPage(new PageId(INVALID_PAGEID));
+			Minibase.BufferManager.unpinPage(prevId, UNPIN_DIRTY);
+		}
+
+	} // protected void removeLastBucket()
+
+} // public class LinearHashIndex extends HashIndex
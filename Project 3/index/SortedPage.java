@@ -2,6 +2,7 @@ package index;
 
 import global.Page;
 import global.PageId;
+import global.RID;
 import global.SearchKey;
 
 /**
@@ -10,8 +11,9 @@ import global.SearchKey;
  * slot directory, with the slots at the front and the records in the back, both
  * growing and shrinking into and from the free space in the middle of the page.
  * This structure is similar to HFPage except that rids can change; slots are
- * always in order of search key and all slots are always full. It will be used
- * for BTree internal index pages and leaf data entry pages.
+ * always in order of search key and all slots are always full, so they are
+ * binary searched, comparing the normalized keys in place (see SearchKey). It
+ * will be used for BTree internal index pages and leaf data entry pages.
  */
 class SortedPage extends Page {
 
@@ -146,6 +148,50 @@ class SortedPage extends Page {
 		return new SearchKey(data, getSlotOffset(slotno));
 	}
 
+	/**
+	 * Gets the RID from the data entry at the given slot number, without
+	 * constructing its search key.
+	 * 
+	 * @throws IllegalArgumentException
+	 *           if the slot number is invalid
+	 */
+	public RID getRidAt(int slotno) {
+		checkSlotno(slotno);
+		int offset = getSlotOffset(slotno);
+		return new RID(data, (short) (offset + SearchKey.getLength(data, offset)));
+	}
+
+	/**
+	 * Binary searches for the first slot whose key is not less than the given key
+	 * or, if after is true, greater than it.
+	 * 
+	 * @return the slot number, or the number of entries if there is no such slot
+	 */
+	protected int findSlot(SearchKey key, boolean after) {
+		int low = 0;
+		int high = getEntryCount();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = key.compareTo(data, getSlotOffset(mid));
+			if (cmp > 0 || (after && cmp == 0)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	} // protected int findSlot(SearchKey key, boolean after)
+
+	/**
+	 * Compares the given key with the key at the given slot, in place.
+	 * 
+	 * @return a negative integer, zero, or a positive integer as the given key is
+	 *         less than, equal to, or greater than the slot's key
+	 */
+	protected int compareKeyAt(SearchKey key, int slotno) {
+		return key.compareTo(data, getSlotOffset(slotno));
+	}
+
 	// --------------------------------------------------------------------------
 
 	/**
@@ -157,23 +203,28 @@ class SortedPage extends Page {
 	 */
 	public boolean insertEntry(DataEntry entry) {
 
+		// binary search for the first slot whose key comes after the new key
+		return insertEntryAt(entry, findSlot(entry.key, true));
+
+	} // public boolean insertEntry(DataEntry entry)
+
+	/**
+	 * Inserts a new record into the page at the given slot, which the caller
+	 * must choose so that the slots stay in order.
+	 * 
+	 * @return true if inserting made this page dirty, false otherwise
+	 * @throws IllegalStateException
+	 *           if insufficient space
+	 */
+	protected boolean insertEntryAt(DataEntry entry, int i) {
+
 		// first check for sufficient space
 		short reclen = entry.getLength();
 		short spaceNeeded = (short) (reclen + SLOT_SIZE);
 		if (spaceNeeded > getFreeSpace()) {
 			throw new IllegalStateException("insufficient space");
 		}
-
-		// linear search for the appropriate slot
-		short i, slotCnt = getEntryCount();
-		for (i = 0; i < slotCnt; i++) {
-
-			// if the slot's key comes after the new key
-			if (getKeyAt(i).compareTo(entry.key) > 0) {
-				break;
-			}
-
-		} // for
+		short slotCnt = getEntryCount();
 
 		// if inserting into the middle
 		int slotpos = HEADER_SIZE + i * SLOT_SIZE;
@@ -196,7 +247,7 @@ class SortedPage extends Page {
 		entry.writeData(data, usedPtr);
 		return true;
 
-	} // public boolean insertEntry(DataEntry entry)
+	} // protected boolean insertEntryAt(DataEntry entry, int i)
 
 	/**
 	 * Deletes a data entry from the page, compacting the free space (including the
@@ -208,12 +259,19 @@ class SortedPage extends Page {
 	 */
 	public boolean deleteEntry(DataEntry entry) {
 
-		// linear search for the entry's slot
-		short i, slotCnt = getEntryCount();
-		for (i = 0; i < slotCnt; i++) {
+		// binary search for the key, then check the rids of its entries
+		short slotCnt = getEntryCount();
+		int i;
+		for (i = findSlot(entry.key, false); i < slotCnt; i++) {
 
-			// if the slot's entry matches the entry
-			if (getEntryAt(i).equals(entry)) {
+			// if the slot's key is past the key, or its entry matches the entry
+			int offset = getSlotOffset(i);
+			if (entry.key.compareTo(data, offset) != 0) {
+				i = slotCnt;
+				break;
+			}
+			int ridpos = offset + SearchKey.getLength(data, offset);
+			if (getIntValue(ridpos) == entry.rid.pageno.pid && getIntValue(ridpos + 4) == entry.rid.slotno) {
 				break;
 			}
 
@@ -256,24 +314,24 @@ class SortedPage extends Page {
 
 	/**
 	 * Searches for the next entry that matches the given search key, and stored
-	 * after the given slot.
+	 * after the given slot. Matching entries are adjacent, so this binary
+	 * searches for the first one unless the given slot already matches.
 	 * 
 	 * @return the slot number of the entry, or -1 if not found
 	 */
 	public int nextEntry(SearchKey key, int slotno) {
 
-		// linear search for the entry's slot
+		// seek to the first matching slot, if not already there
 		int slotCnt = getEntryCount();
-		for (int i = slotno + 1; i < slotCnt; i++) {
-
-			// if the slot's entry matches the entry
-			if (getKeyAt(i).compareTo(key) == 0) {
-				return i;
-			}
-
-		} // for
+		int i = slotno + 1;
+		if (slotno < 0 || slotno >= slotCnt || key.compareTo(data, getSlotOffset(slotno)) != 0) {
+			i = Math.max(i, findSlot(key, false));
+		}
 
-		// otherwise not found
+		// and stop as soon as the keys exceed the search key
+		if (i < slotCnt && key.compareTo(data, getSlotOffset(i)) == 0) {
+			return i;
+		}
 		return -1;
 
 	} // public int nextEntry(SearchKey key, int slotno)
@@ -1,10 +1,16 @@
 package tests;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import global.PageId;
 import global.RID;
 import global.SearchKey;
+import index.BTreeIndex;
+import index.BTreeScan;
 import index.HashIndex;
 import index.HashScan;
+import index.LinearHashIndex;
 
 /**
  * Test suite for the index layer.
@@ -51,6 +57,26 @@ class IXTest extends TestDriver {
 		status &= hft.test4();
 		retval = true;
 		status &= hft.test5();
+		retval = true;
+		status &= hft.test6();
+		retval = true;
+		status &= hft.test7();
+		retval = true;
+		status &= hft.test8();
+		retval = true;
+		status &= hft.test9();
+		retval = true;
+		status &= hft.test10();
+		retval = true;
+		status &= hft.test11();
+		retval = true;
+		status &= hft.test12();
+		retval = true;
+		status &= hft.test13();
+		retval = true;
+		status &= hft.test14();
+		retval = true;
+		status &= hft.test15();
 
 		// display the final results
 		System.out.println();
@@ -95,7 +121,7 @@ class IXTest extends TestDriver {
 				}
 				rid2 = scan.getNext();
 			}
-			// don't close, to test finalize
+			// don't close, to test the resource cleaner
 
 			if (!found) {
 				System.out.println("  ERROR: Search key not found in scan!");
@@ -399,6 +425,853 @@ class IXTest extends TestDriver {
 
 	} // protected boolean test5()
 
+	/**
+	 * LinearHashIndex growing and shrinking.
+	 */
+	protected boolean test6() {
+
+		System.out.println();
+		System.out.println("Test 6: Linear hash index growing and shrinking");
+
+		int size = FILE_SIZE * 10;
+		for (int type = 1; type <= 2; type++) {
+
+			System.out.println("\n(type == " + type + ")");
+			initRandom();
+
+			System.out.println("\n  ~> building an index of " + size + (type == 1 ? " integers..." : " floats..."));
+			String fileName = "IX_Linear" + type;
+			HashIndex index = new LinearHashIndex(fileName);
+			for (int i = 0; i < size; i++) {
+
+				// insert a random entry
+				SearchKey key = randKey(type);
+				RID rid = new RID(new PageId(i), 0);
+				index.insertEntry(key, rid);
+
+			} // for
+
+			initRandom();
+
+			System.out.println("\n  ~> scanning and deleting every entry...");
+			RID rid2;
+			for (int i = 0; i < size; i++) {
+
+				// search for the random entry
+				SearchKey key = randKey(type);
+				RID rid = new RID(new PageId(i), 0);
+				HashScan scan = index.openScan(key);
+				found = false;
+				rid2 = scan.getNext();
+				while (rid2 != null) {
+					if (rid2.equals(rid)) {
+						found = true;
+					}
+					rid2 = scan.getNext();
+				}
+				scan.close();
+
+				if (!found) {
+					System.out.println("  ERROR: Search key not found in scan!");
+					retval = false;
+					found = true;
+				}
+				index.deleteEntry(key, rid);
+
+			} // for
+
+			System.out.println("\n  ~> scanning the empty index...");
+			initRandom();
+			HashScan scan = index.openScan(randKey(type));
+			if (scan.getNext() != null) {
+				System.out.println("  ERROR: found something in an empty index!");
+				retval = false;
+			}
+			scan.close();
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			index.deleteFile();
+
+		} // for type
+
+		return retval;
+
+	} // protected boolean test6()
+
+	/**
+	 * Rehashing an index with a new seed.
+	 */
+	protected boolean test7() {
+
+		System.out.println();
+		System.out.println("Test 7: Rehashing an index with a new seed");
+
+		for (int type = 1; type <= 3; type++) {
+
+			System.out.println("\n(type == " + type + ")");
+			initRandom();
+
+			System.out.println("\n  ~> building an index of " + FILE_SIZE + " keys...");
+			String fileName = "IX_Rehash" + type;
+			HashIndex index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			for (int i = 0; i < FILE_SIZE; i++) {
+				index.insertEntry(randKey(type), new RID(new PageId(i), 0));
+			}
+
+			System.out.println("\n  ~> rehashing the index...");
+			index.rehash(type);
+
+			System.out.println("\n  ~> scanning all entries...");
+			initRandom();
+			RID rid2;
+			for (int i = 0; i < FILE_SIZE; i++) {
+
+				// search for the random entry
+				SearchKey key = randKey(type);
+				RID rid = new RID(new PageId(i), 0);
+				HashScan scan = index.openScan(key);
+				found = false;
+				rid2 = scan.getNext();
+				while (rid2 != null) {
+					if (rid2.equals(rid)) {
+						found = true;
+					}
+					rid2 = scan.getNext();
+				}
+				scan.close();
+
+				if (!found) {
+					System.out.println("  ERROR: Search key not found in scan!");
+					retval = false;
+					found = true;
+				}
+
+			} // for
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			index.deleteFile();
+
+		} // for type
+
+		return retval;
+
+	} // protected boolean test7()
+
+	/**
+	 * BTreeIndex range scans.
+	 */
+	protected boolean test8() {
+
+		System.out.println();
+		System.out.println("Test 8: B+ tree index range scans");
+
+		int size = FILE_SIZE * 5;
+		int range = 1000; // (so that keys have duplicates)
+		int[] keys = new int[size];
+		int[] counts = new int[range];
+		initRandom();
+
+		System.out.println("\n  ~> building an index of " + size + " integers...");
+		BTreeIndex index = new BTreeIndex("IX_BTree");
+		for (int i = 0; i < size; i++) {
+			keys[i] = random.nextInt(range);
+			counts[keys[i]]++;
+			index.insertEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+		}
+
+		System.out.println("\n  ~> scanning random ranges...");
+		checkRanges(index, keys, counts);
+
+		System.out.println("\n  ~> deleting every other entry...");
+		for (int i = 0; i < size; i += 2) {
+			index.deleteEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+			counts[keys[i]]--;
+			keys[i] = -1;
+		}
+
+		System.out.println("\n  ~> scanning random ranges again...");
+		checkRanges(index, keys, counts);
+
+		// delete the file
+		System.out.println("\n  ~> deleting the index file...");
+		index.deleteFile();
+
+		return retval;
+
+	} // protected boolean test8()
+
+	/**
+	 * Checks random range scans of a B+ tree of integer keys against the number
+	 * of entries with each key; the RIDs' page ids index the keys.
+	 */
+	protected void checkRanges(BTreeIndex index, int[] keys, int[] counts) {
+		for (int n = 0; n < 100; n++) {
+
+			// pick a random range, sometimes open-ended
+			int lo = random.nextInt(counts.length);
+			int hi = lo + random.nextInt(counts.length / 4);
+			boolean loIncl = random.nextBoolean();
+			boolean hiIncl = random.nextBoolean();
+			SearchKey loKey = n % 10 == 0 ? null : new SearchKey(lo);
+			SearchKey hiKey = n % 10 == 5 ? null : new SearchKey(hi);
+
+			int expected = 0;
+			for (int k = 0; k < counts.length; k++) {
+				if ((loKey == null || k > lo || (loIncl && k == lo)) && (hiKey == null || k < hi || (hiIncl && k == hi))) {
+					expected += counts[k];
+				}
+			}
+
+			// scan it, checking that the keys are in order and in range
+			int actual = 0;
+			int last = Integer.MIN_VALUE;
+			BTreeScan scan = index.openRangeScan(loKey, loIncl, hiKey, hiIncl);
+			for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+				int key = keys[rid.pageno.pid];
+				if (key < last || key == -1) {
+					System.out.println("  ERROR: Scan out of order, or of a deleted entry!");
+					retval = false;
+				}
+				last = key;
+				actual++;
+			}
+			scan.close();
+
+			if (actual != expected) {
+				System.out.println("  ERROR: Range scan found " + actual + " entries, not " + expected + "!");
+				retval = false;
+			}
+
+		} // for
+	} // protected void checkRanges(BTreeIndex index, int[] keys, int[] counts)
+
+	/**
+	 * Bulk loading each kind of index.
+	 */
+	protected boolean test9() {
+
+		System.out.println();
+		System.out.println("Test 9: Bulk loading each kind of index");
+
+		int size = FILE_SIZE * 5;
+		for (int kind = 1; kind <= 3; kind++) {
+
+			System.out.println("\n(kind == " + kind + ")");
+			initRandom();
+
+			System.out.println("\n  ~> bulk loading an index of " + size + " strings...");
+			SearchKey[] keys = new SearchKey[size];
+			RID[] rids = new RID[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = randKey(3);
+				rids[i] = new RID(new PageId(i), 0);
+			}
+			String fileName = "IX_Bulk" + kind;
+			HashIndex hashIndex = null;
+			BTreeIndex treeIndex = null;
+			if (kind == 3) {
+				treeIndex = new BTreeIndex(fileName);
+				treeIndex.bulkLoad(keys, rids);
+			} else {
+				hashIndex = kind == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+				hashIndex.bulkLoad(keys, rids);
+			}
+
+			System.out.println("\n  ~> scanning and deleting every entry...");
+			for (int i = 0; i < size; i++) {
+
+				// search for the entry
+				found = false;
+				if (kind == 3) {
+					BTreeScan scan = treeIndex.openScan(keys[i]);
+					for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+						found |= rid.equals(rids[i]);
+					}
+					scan.close();
+				} else {
+					HashScan scan = hashIndex.openScan(keys[i]);
+					for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+						found |= rid.equals(rids[i]);
+					}
+					scan.close();
+				}
+
+				if (!found) {
+					System.out.println("  ERROR: Search key not found in scan!");
+					retval = false;
+				}
+				if (kind == 3) {
+					treeIndex.deleteEntry(keys[i], rids[i]);
+				} else {
+					hashIndex.deleteEntry(keys[i], rids[i]);
+				}
+
+			} // for
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			if (kind == 3) {
+				treeIndex.deleteFile();
+			} else {
+				hashIndex.deleteFile();
+			}
+
+		} // for kind
+
+		return retval;
+
+	} // protected boolean test9()
+
+	/**
+	 * Probing a hash index for many keys at once.
+	 */
+	protected boolean test10() {
+
+		System.out.println();
+		System.out.println("Test 10: Probing a hash index for many keys at once");
+
+		for (int type = 1; type <= 2; type++) {
+
+			System.out.println("\n(type == " + type + ")");
+			initRandom();
+
+			System.out.println("\n  ~> building an index of " + FILE_SIZE + " integers...");
+			HashIndex index = type == 2 ? new LinearHashIndex(null) : new HashIndex(null);
+			int range = FILE_SIZE * 2; // (so that half the probes miss, and some keys repeat)
+			int[] counts = new int[range];
+			for (int i = 0; i < FILE_SIZE; i++) {
+				int key = random.nextInt(range);
+				counts[key]++;
+				index.insertEntry(new SearchKey(key), new RID(new PageId(i), 0));
+			}
+
+			System.out.println("\n  ~> probing for every possible key...");
+			SearchKey[] keys = new SearchKey[range];
+			for (int i = 0; i < range; i++) {
+				keys[i] = new SearchKey(i);
+			}
+			int[] matches = new int[range];
+			index.probeAll(keys, (key, rid) -> matches[(Integer) key.getValue()]++);
+			for (int i = 0; i < range; i++) {
+				if (matches[i] != counts[i]) {
+					System.out.println("  ERROR: Probe found " + matches[i] + " entries for " + i + ", not " + counts[i] + "!");
+					retval = false;
+				}
+			}
+
+			index.close();
+
+		} // for type
+
+		return retval;
+
+	} // protected boolean test10()
+
+	/**
+	 * Hash index Bloom filters.
+	 */
+	protected boolean test11() {
+
+		System.out.println();
+		System.out.println("Test 11: Filtering hash index lookups");
+
+		for (int type = 1; type <= 2; type++) {
+
+			System.out.println("\n(type == " + type + ")");
+			initRandom();
+
+			System.out.println("\n  ~> building a filtered index of " + FILE_SIZE + " integers...");
+			String fileName = "IX_Filter" + type;
+			HashIndex index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			int range = FILE_SIZE * 2; // (so that half the scans miss)
+			int[] keys = new int[FILE_SIZE];
+			int[] counts = new int[range];
+			for (int i = 0; i < FILE_SIZE; i++) {
+				if (i == FILE_SIZE / 2) { // (so that both existing and new keys are added)
+					index.setFiltered(true);
+				}
+				keys[i] = random.nextInt(range);
+				counts[keys[i]]++;
+				index.insertEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+			}
+			checkScans(index, counts);
+
+			System.out.println("\n  ~> deleting every other entry...");
+			for (int i = 0; i < FILE_SIZE; i += 2) {
+				index.deleteEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+				counts[keys[i]]--;
+			}
+			checkScans(index, counts);
+
+			System.out.println("\n  ~> reopening the index, first as the other kind...");
+			index.close();
+			try {
+				HashIndex other = type == 2 ? new HashIndex(fileName) : new LinearHashIndex(fileName);
+				other.close();
+				System.out.println("  ERROR: Opened the index as the other kind!");
+				retval = false;
+			} catch (IllegalArgumentException exc) {
+				System.out.println("     *** failed as expected");
+			}
+			try {
+				new BTreeIndex(fileName).close();
+				System.out.println("  ERROR: Opened the index as a B+ tree!");
+				retval = false;
+			} catch (IllegalArgumentException exc) {
+				System.out.println("     *** failed as expected");
+			}
+			index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			checkScans(index, counts);
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			index.deleteFile();
+
+		} // for type
+
+		System.out.println("\n(B+ tree)");
+
+		System.out.println("\n  ~> opening a B+ tree index as either kind of hash index...");
+		BTreeIndex treeIndex = new BTreeIndex("IX_FilterTree");
+		treeIndex.insertEntry(new SearchKey(7), new RID(new PageId(7), 0));
+		treeIndex.close();
+		for (int type = 1; type <= 2; type++) {
+			try {
+				HashIndex other = type == 2 ? new LinearHashIndex("IX_FilterTree") : new HashIndex("IX_FilterTree");
+				other.close();
+				System.out.println("  ERROR: Opened the B+ tree as a hash index!");
+				retval = false;
+			} catch (IllegalArgumentException exc) {
+				System.out.println("     *** failed as expected");
+			}
+		}
+		treeIndex = new BTreeIndex("IX_FilterTree");
+		if (lookup(null, treeIndex, new SearchKey(7)).size() != 1) {
+			System.out.println("  ERROR: The reopened B+ tree lost its entry!");
+			retval = false;
+		}
+		treeIndex.deleteFile();
+
+		return retval;
+
+	} // protected boolean test11()
+
+	/**
+	 * Checks scans of a hash index of integer keys for every possible key against
+	 * the number of entries with each key.
+	 */
+	protected void checkScans(HashIndex index, int[] counts) {
+		System.out.println("\n  ~> scanning for every possible key...");
+		for (int i = 0; i < counts.length; i++) {
+			int count = 0;
+			HashScan scan = index.openScan(new SearchKey(i));
+			while (scan.getNext() != null) {
+				count++;
+			}
+			scan.close();
+
+			if (count != counts[i]) {
+				System.out.println("  ERROR: Scan found " + count + " entries for " + i + ", not " + counts[i] + "!");
+				retval = false;
+			}
+		}
+	} // protected void checkScans(HashIndex index, int[] counts)
+
+	/**
+	 * Many duplicates of a key, which share a bucket (or leaves).
+	 */
+	protected boolean test12() {
+
+		System.out.println();
+		System.out.println("Test 12: Many duplicates of a key in one bucket");
+
+		int size = 1800; // (a third with the key, the rest its neighbours)
+		SearchKey dup = new SearchKey(42);
+		for (int kind = 1; kind <= 3; kind++) {
+
+			System.out.println("\n(kind == " + kind + ")");
+
+			System.out.println("\n  ~> inserting " + size / 3 + " duplicates, between entries of the neighbouring keys...");
+			String fileName = "IX_Dups" + kind;
+			HashIndex hashIndex = kind == 3 ? null : kind == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			BTreeIndex treeIndex = kind == 3 ? new BTreeIndex(fileName) : null;
+			for (int i = 0; i < size; i++) {
+				insert(hashIndex, treeIndex, new SearchKey(41 + i % 3), new RID(new PageId(i), 0));
+			}
+			checkDups(hashIndex, treeIndex, size, 0);
+
+			System.out.println("\n  ~> deleting every other duplicate, and one twice...");
+			for (int i = 1; i < size; i += 6) {
+				delete(hashIndex, treeIndex, dup, new RID(new PageId(i), 0));
+			}
+			try {
+				delete(hashIndex, treeIndex, dup, new RID(new PageId(1), 0));
+				System.out.println("  ERROR: Deleted a duplicate twice!");
+				retval = false;
+			} catch (IllegalArgumentException exc) {
+				System.out.println("     *** failed as expected");
+			}
+			checkDups(hashIndex, treeIndex, size, 6);
+
+			System.out.println("\n  ~> deleting the rest of the duplicates...");
+			for (int i = 4; i < size; i += 6) {
+				delete(hashIndex, treeIndex, dup, new RID(new PageId(i), 0));
+			}
+			if (!lookup(hashIndex, treeIndex, dup).isEmpty()) {
+				System.out.println("  ERROR: Found a deleted duplicate!");
+				retval = false;
+			}
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			if (kind == 3) {
+				treeIndex.deleteFile();
+			} else {
+				hashIndex.deleteFile();
+			}
+
+		} // for kind
+
+		return retval;
+
+	} // protected boolean test12()
+
+	/**
+	 * Float keys of signed zeros and NaNs.
+	 */
+	protected boolean test13() {
+
+		System.out.println();
+		System.out.println("Test 13: Float keys of signed zeros and NaNs");
+
+		// (the last NaN has other bits, but still equals NaN)
+		float[] values = { -0.0f, 0.0f, -0.0f, Float.NaN, 0.0f, 1.0f, -0.0f, Float.NEGATIVE_INFINITY, 0.0f,
+				Float.intBitsToFloat(0x7FC00001), -1.0f, Float.POSITIVE_INFINITY, Float.NaN };
+		float[] probes = { -0.0f, 0.0f, Float.NaN, 1.0f, -1.0f, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY };
+
+		System.out.println("\n  ~> comparing and storing the keys...");
+		if (new SearchKey(-0.0f).compareTo(new SearchKey(0.0f)) >= 0
+				|| new SearchKey(Float.NaN).compareTo(new SearchKey(Float.POSITIVE_INFINITY)) <= 0
+				|| new SearchKey(Float.NaN).compareTo(new SearchKey(values[9])) != 0) {
+			System.out.println("  ERROR: Keys don't compare like Float.compare!");
+			retval = false;
+		}
+		for (float value : values) {
+			SearchKey key = new SearchKey(value);
+			byte[] data = new byte[key.getLength()];
+			key.writeData(data, (short) 0);
+			SearchKey stored = new SearchKey(data, (short) 0);
+			if (Float.compare((Float) stored.getValue(), value) != 0 || key.compareTo(data, 0) != 0) {
+				System.out.println("  ERROR: Key " + value + " was stored as " + stored + "!");
+				retval = false;
+			}
+		}
+
+		for (int kind = 1; kind <= 3; kind++) {
+
+			System.out.println("\n(kind == " + kind + ")");
+
+			System.out.println("\n  ~> inserting " + values.length + " zeros, NaNs and other floats...");
+			String fileName = "IX_Zeros" + kind;
+			HashIndex hashIndex = kind == 3 ? null : kind == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			BTreeIndex treeIndex = kind == 3 ? new BTreeIndex(fileName) : null;
+			for (int i = 0; i < values.length; i++) {
+				insert(hashIndex, treeIndex, new SearchKey(values[i]), new RID(new PageId(i), 0));
+			}
+
+			System.out.println("\n  ~> scanning for each value, which must not match the other zero...");
+			for (float probe : probes) {
+				int count = 0;
+				for (RID rid : lookup(hashIndex, treeIndex, new SearchKey(probe))) {
+					if (Float.compare(values[rid.pageno.pid], probe) != 0) {
+						System.out.println("  ERROR: Scan for " + probe + " found " + values[rid.pageno.pid] + "!");
+						retval = false;
+					}
+					count++;
+				}
+				int expected = 0;
+				for (float value : values) {
+					expected += Float.compare(value, probe) == 0 ? 1 : 0;
+				}
+				if (count != expected) {
+					System.out.println("  ERROR: Scan found " + count + " entries for " + probe + ", not " + expected + "!");
+					retval = false;
+				}
+			}
+
+			if (kind == 3) {
+				System.out.println("\n  ~> scanning the whole tree, and from -Infinity to Infinity...");
+				int count = 0;
+				float last = Float.NEGATIVE_INFINITY;
+				BTreeScan scan = treeIndex.openRangeScan(null, true, null, true);
+				for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+					if (Float.compare(values[rid.pageno.pid], last) < 0) {
+						System.out.println("  ERROR: Scan out of order, " + values[rid.pageno.pid] + " after " + last + "!");
+						retval = false;
+					}
+					last = values[rid.pageno.pid];
+					count++;
+				}
+				scan.close();
+				scan = treeIndex.openRangeScan(new SearchKey(Float.NEGATIVE_INFINITY), true,
+						new SearchKey(Float.POSITIVE_INFINITY), true);
+				int finite = 0;
+				while (scan.getNext() != null) {
+					finite++;
+				}
+				scan.close();
+				if (count != values.length || finite != values.length - 3) {
+					System.out.println("  ERROR: Range scans found " + count + " and " + finite + " entries!");
+					retval = false;
+				}
+			}
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			if (kind == 3) {
+				treeIndex.deleteFile();
+			} else {
+				hashIndex.deleteFile();
+			}
+
+		} // for kind
+
+		return retval;
+
+	} // protected boolean test13()
+
+	/**
+	 * Negative integer keys, and padded and non-ASCII string keys.
+	 */
+	protected boolean test14() {
+
+		System.out.println();
+		System.out.println("Test 14: Negative integer keys, and padded and non-ASCII strings");
+
+		Object[][] sets = {
+				{ -1, Integer.MIN_VALUE, 0, -100000, Integer.MAX_VALUE, 1, -1, -2, 100000, Integer.MIN_VALUE },
+				{ "abc", "abc ", " abc", "ab", "abd", "\u00e9", "e", "\u4e2d\u6587", "\u4e2d", "\ud83d\ude00", "\uffff",
+						"A", "abc", "\u00e9\u00e9" } };
+
+		for (int type = 1; type <= 2; type++) {
+
+			Object[] values = sets[type - 1];
+			System.out.println("\n  ~> storing the " + (type == 1 ? "integer" : "string") + " keys...");
+			for (Object value : values) {
+				SearchKey key = new SearchKey(value);
+				byte[] data = new byte[key.getLength()];
+				key.writeData(data, (short) 0);
+				if (!new SearchKey(data, (short) 0).getValue().equals(value) || key.compareTo(data, 0) != 0) {
+					System.out.println("  ERROR: Key '" + value + "' wasn't stored as is!");
+					retval = false;
+				}
+			}
+
+			for (int kind = 1; kind <= 3; kind++) {
+
+				System.out.println("\n(type == " + type + ", kind == " + kind + ")");
+
+				System.out.println("\n  ~> inserting " + values.length + " keys...");
+				String fileName = "IX_Keys" + type + kind;
+				HashIndex hashIndex = kind == 3 ? null : kind == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+				BTreeIndex treeIndex = kind == 3 ? new BTreeIndex(fileName) : null;
+				for (int i = 0; i < values.length; i++) {
+					insert(hashIndex, treeIndex, new SearchKey(values[i]), new RID(new PageId(i), 0));
+				}
+
+				System.out.println("\n  ~> scanning for each key, which must match it exactly...");
+				for (Object probe : values) {
+					int count = 0;
+					for (RID rid : lookup(hashIndex, treeIndex, new SearchKey(probe))) {
+						if (!values[rid.pageno.pid].equals(probe)) {
+							System.out.println("  ERROR: Scan for '" + probe + "' found '" + values[rid.pageno.pid] + "'!");
+							retval = false;
+						}
+						count++;
+					}
+					int expected = 0;
+					for (Object value : values) {
+						expected += value.equals(probe) ? 1 : 0;
+					}
+					if (count != expected) {
+						System.out.println("  ERROR: Scan found " + count + " entries for '" + probe + "', not " + expected + "!");
+						retval = false;
+					}
+				}
+
+				if (kind == 3) {
+					System.out.println("\n  ~> scanning the whole tree, in the order of the values...");
+					Object[] sorted = values.clone();
+					Arrays.sort(sorted);
+					int count = 0;
+					BTreeScan scan = treeIndex.openRangeScan(null, true, null, true);
+					for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+						if (count < sorted.length && !values[rid.pageno.pid].equals(sorted[count])) {
+							System.out.println("  ERROR: Scan found '" + values[rid.pageno.pid] + "', not '" + sorted[count] + "'!");
+							retval = false;
+						}
+						count++;
+					}
+					scan.close();
+					if (count != values.length) {
+						System.out.println("  ERROR: Scan found " + count + " entries, not " + values.length + "!");
+						retval = false;
+					}
+				}
+
+				// delete the file
+				System.out.println("\n  ~> deleting the index file...");
+				if (kind == 3) {
+					treeIndex.deleteFile();
+				} else {
+					hashIndex.deleteFile();
+				}
+
+			} // for kind
+
+		} // for type
+
+		return retval;
+
+	} // protected boolean test14()
+
+	/**
+	 * Reopening a hash index after its directory grows and shrinks.
+	 */
+	protected boolean test15() {
+
+		System.out.println();
+		System.out.println("Test 15: Reopening a hash index after splits and merges");
+
+		int size = 15000; // (so the directory takes several pages)
+		for (int type = 1; type <= 2; type++) {
+
+			System.out.println("\n(type == " + type + ")");
+			initRandom();
+
+			System.out.println("\n  ~> inserting " + size + " integers, splitting buckets...");
+			String fileName = "IX_Reopen" + type;
+			HashIndex index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			int range = size * 2;
+			int[] keys = new int[size];
+			int[] counts = new int[range];
+			for (int i = 0; i < size; i++) {
+				keys[i] = random.nextInt(range);
+				counts[keys[i]]++;
+				index.insertEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+			}
+
+			System.out.println("\n  ~> reopening the index...");
+			index.close();
+			index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			checkScans(index, counts);
+
+			System.out.println("\n  ~> deleting all but every tenth entry, merging buckets...");
+			for (int i = 0; i < size; i++) {
+				if (i % 10 != 0) {
+					index.deleteEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+					counts[keys[i]]--;
+				}
+			}
+
+			System.out.println("\n  ~> reopening the index...");
+			index.close();
+			index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			checkScans(index, counts);
+
+			System.out.println("\n  ~> inserting the deleted entries again, and reopening the index...");
+			for (int i = 0; i < size; i++) {
+				if (i % 10 != 0) {
+					index.insertEntry(new SearchKey(keys[i]), new RID(new PageId(i), 0));
+					counts[keys[i]]++;
+				}
+			}
+			index.close();
+			index = type == 2 ? new LinearHashIndex(fileName) : new HashIndex(fileName);
+			checkScans(index, counts);
+
+			// delete the file
+			System.out.println("\n  ~> deleting the index file...");
+			index.deleteFile();
+
+		} // for type
+
+		return retval;
+
+	} // protected boolean test15()
+
+	/**
+	 * Checks that the index has an entry for each of its first size page ids, with
+	 * the key 41 + i % 3, except for the deleted ones (page ids 1 mod step, if
+	 * step isn't 0).
+	 */
+	protected void checkDups(HashIndex hashIndex, BTreeIndex treeIndex, int size, int step) {
+		for (int k = 0; k < 3; k++) {
+			boolean[] seen = new boolean[size];
+			for (RID rid : lookup(hashIndex, treeIndex, new SearchKey(41 + k))) {
+				int i = rid.pageno.pid;
+				if (i < 0 || i >= size || i % 3 != k || seen[i] || (step > 0 && i % step == 1)) {
+					System.out.println("  ERROR: Found a wrong, repeated or deleted entry " + rid + "!");
+					retval = false;
+				} else {
+					seen[i] = true;
+				}
+			}
+			for (int i = k; i < size; i += 3) {
+				if (!seen[i] && (step == 0 || i % step != 1)) {
+					System.out.println("  ERROR: Entry " + i + " with key " + (41 + k) + " not found!");
+					retval = false;
+				}
+			}
+		}
+	} // protected void checkDups(HashIndex hashIndex, BTreeIndex treeIndex, int size, int step)
+
+	/**
+	 * Inserts an entry into whichever index is given.
+	 */
+	protected void insert(HashIndex hashIndex, BTreeIndex treeIndex, SearchKey key, RID rid) {
+		if (hashIndex != null) {
+			hashIndex.insertEntry(key, rid);
+		} else {
+			treeIndex.insertEntry(key, rid);
+		}
+	}
+
+	/**
+	 * Deletes an entry from whichever index is given.
+	 */
+	protected void delete(HashIndex hashIndex, BTreeIndex treeIndex, SearchKey key, RID rid) {
+		if (hashIndex != null) {
+			hashIndex.deleteEntry(key, rid);
+		} else {
+			treeIndex.deleteEntry(key, rid);
+		}
+	}
+
+	/**
+	 * Gets the rids of the entries with the given key, from whichever index is
+	 * given.
+	 */
+	protected ArrayList<RID> lookup(HashIndex hashIndex, BTreeIndex treeIndex, SearchKey key) {
+		ArrayList<RID> rids = new ArrayList<RID>();
+		if (hashIndex != null) {
+			HashScan scan = hashIndex.openScan(key);
+			for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+				rids.add(rid);
+			}
+			scan.close();
+		} else {
+			BTreeScan scan = treeIndex.openScan(key);
+			for (RID rid = scan.getNext(); rid != null; rid = scan.getNext()) {
+				rids.add(rid);
+			}
+			scan.close();
+		}
+		return rids;
+	} // protected ArrayList<RID> lookup(HashIndex hashIndex, BTreeIndex treeIndex, SearchKey key)
+
 	// --------------------------------------------------------------------------
 
 	/**